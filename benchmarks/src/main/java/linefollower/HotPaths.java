@@ -0,0 +1,118 @@
+package linefollower;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@code HotPaths} class measures the hot paths of the brick code with
+ * JMH: the control tick with the bang-bang and the PID steering and during
+ * the line search, the classifier and the text rendering of the LCD.
+ *
+ * The operations are the ones of the {@code Benchmarks} harness in
+ * {@code pc-code}. Its classes are in the default package, which JMH does not
+ * accept for benchmarks and a named package cannot import, so they are looked
+ * up by reflection once per trial. Run with {@code -prof gc} for the bytes
+ * allocated per operation.
+ *
+ * Usage: {@code java -jar target/benchmarks.jar -prof gc [name filter]}
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HotPaths {
+    private IntSupplier bangBang;
+    private IntSupplier pid;
+    private IntSupplier search;
+    private IntSupplier classify;
+    private IntSupplier displayShort;
+    private IntSupplier displayShortCentered;
+    private IntSupplier displayWrapped;
+    private IntSupplier displayWrappedCentered;
+    private IntSupplier displayWrappedUncached;
+    private IntSupplier append;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        Map<String, IntSupplier> operations = (Map<String, IntSupplier>) Class.forName("Benchmarks")
+                .getMethod("operations").invoke(null);
+        bangBang = operations.get("controlTick.bangBang");
+        pid = operations.get("controlTick.pid");
+        search = operations.get("controlTick.search");
+        classify = operations.get("classifier.classify");
+        displayShort = operations.get("screen.display.short");
+        displayShortCentered = operations.get("screen.display.short.centered");
+        displayWrapped = operations.get("screen.display.wrapped");
+        displayWrappedCentered = operations.get("screen.display.wrapped.centered");
+        displayWrappedUncached = operations.get("screen.display.wrapped.uncached");
+        append = operations.get("screen.append");
+    }
+
+    @Benchmark
+    public int controlTickBangBang() {
+        return bangBang.getAsInt();
+    }
+
+    @Benchmark
+    public int controlTickPid() {
+        return pid.getAsInt();
+    }
+
+    @Benchmark
+    public int controlTickSearch() {
+        return search.getAsInt();
+    }
+
+    @Benchmark
+    public int classifierClassify() {
+        return classify.getAsInt();
+    }
+
+    @Benchmark
+    public int screenDisplayShort() {
+        return displayShort.getAsInt();
+    }
+
+    @Benchmark
+    public int screenDisplayShortCentered() {
+        return displayShortCentered.getAsInt();
+    }
+
+    @Benchmark
+    public int screenDisplayWrapped() {
+        return displayWrapped.getAsInt();
+    }
+
+    @Benchmark
+    public int screenDisplayWrappedCentered() {
+        return displayWrappedCentered.getAsInt();
+    }
+
+    @Benchmark
+    public int screenDisplayWrappedUncached() {
+        return displayWrappedUncached.getAsInt();
+    }
+
+    @Benchmark
+    public int screenAppend() {
+        return append.getAsInt();
+    }
+}
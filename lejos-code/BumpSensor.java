@@ -0,0 +1,17 @@
+
+
+/**
+ * The {@code BumpSensor} interface describes the touch sensor at the front of
+ * the robot.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public interface BumpSensor {
+    /**
+     * Checks if the sensor is currently pressed.
+     *
+     * @return true if the robot touches an obstacle, false otherwise
+     */
+    boolean isPressed();
+}
@@ -0,0 +1,272 @@
+import lejos.nxt.Button;
+
+/**
+ * The {@code ButtonEvents} class turns the buttons of the brick into
+ * debounced events. A low priority thread polls the buttons a few times per
+ * tenth of a second and accepts a change only after it was stable for a
+ * number of polls, so contact bounce does not cause extra presses.
+ *
+ * Actions can be registered for the press, the release and the hold of a
+ * single button or of a chord of buttons. They run on the polling thread, so
+ * they must be short. Threads that wait for a button sleep until the
+ * debounced state changes, so waiting costs no CPU.
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public class ButtonEvents implements Runnable {
+    // Events
+    public static final int EVENT_PRESS = 0;
+    public static final int EVENT_RELEASE = 1;
+    public static final int EVENT_HOLD = 2;
+
+    /**
+     * Largest number of registered actions.
+     */
+    public static final int MAX_ACTIONS = 8;
+
+    private final Clock clock;
+    private final long pollInterval;
+    private final int debouncePolls;
+
+    private final int[] actionButtons = new int[MAX_ACTIONS];
+    private final int[] actionEvents = new int[MAX_ACTIONS];
+    private final long[] actionHoldTimes = new long[MAX_ACTIONS];
+    private final Runnable[] actions = new Runnable[MAX_ACTIONS];
+    private final long[] downSince = new long[MAX_ACTIONS];
+    private final boolean[] fired = new boolean[MAX_ACTIONS];
+
+    // Guarded by the lock, the actions below the count are complete
+    private final Object lock = new Object();
+    private int actionCount;
+    private int buttons;
+    private long changeTime;
+    private long changes;
+
+    private int raw;
+    private int stablePolls;
+    private volatile boolean running = false;
+
+    /**
+     * Constructs a button event service.
+     *
+     * @param clock         the time source
+     * @param pollInterval  the time between two polls in milliseconds
+     * @param debouncePolls the number of polls a change must be stable for
+     */
+    public ButtonEvents(Clock clock, long pollInterval, int debouncePolls) {
+        if (pollInterval <= 0) {
+            throw new IllegalArgumentException("pollInterval must be positive");
+        }
+        this.clock = clock;
+        this.pollInterval = pollInterval;
+        this.debouncePolls = Math.max(1, debouncePolls);
+    }
+
+    /**
+     * Starts the polling thread. It runs as a daemon with minimal priority.
+     */
+    public void start() {
+        raw = Button.readButtons();
+        synchronized (lock) {
+            buttons = raw;
+            changeTime = clock.currentTimeMillis();
+        }
+        running = true;
+        Thread thread = new Thread(this);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Stops the polling thread after its current poll.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            poll(Button.readButtons(), clock.currentTimeMillis());
+            clock.sleep(pollInterval);
+        }
+    }
+
+    /**
+     * Debounces one reading of the buttons and runs the actions of the
+     * events it causes.
+     */
+    private void poll(int reading, long now) {
+        if (reading != raw) {
+            raw = reading;
+            stablePolls = 1;
+        } else if (stablePolls < debouncePolls) {
+            stablePolls++;
+        }
+
+        int previous;
+        int current;
+        int count;
+        synchronized (lock) {
+            // Reading the count under the lock also publishes the actions
+            // registered before it
+            count = actionCount;
+            previous = buttons;
+            if (stablePolls == debouncePolls && raw != buttons) {
+                buttons = raw;
+                changeTime = now;
+                changes++;
+                lock.notifyAll();
+            }
+            current = buttons;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int chord = actionButtons[i];
+            boolean down = (current & chord) == chord;
+            boolean wasDown = (previous & chord) == chord;
+            if (down && !wasDown) {
+                downSince[i] = now;
+                fired[i] = false;
+            }
+            switch (actionEvents[i]) {
+                case EVENT_PRESS:
+                    if (down && !wasDown) {
+                        actions[i].run();
+                    }
+                    break;
+                case EVENT_RELEASE:
+                    if (!down && wasDown) {
+                        actions[i].run();
+                    }
+                    break;
+                default:
+                    if (down && !fired[i] && now - downSince[i] >= actionHoldTimes[i]) {
+                        fired[i] = true;
+                        actions[i].run();
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Registers an action for an event of a button or a chord of buttons. A
+     * chord is pressed when all of its buttons are down and released when
+     * one of them goes up. A hold action runs once per press, when the chord
+     * was down for the hold time.
+     *
+     * @param buttons  the button ids, for example
+     *                 {@code Button.ID_LEFT | Button.ID_RIGHT}
+     * @param event    one of the {@code EVENT_} constants
+     * @param holdTime the hold time in milliseconds, only used for
+     *                 {@link #EVENT_HOLD}
+     * @param action   the action to run on the polling thread
+     */
+    public void addAction(int buttons, int event, long holdTime, Runnable action) {
+        synchronized (lock) {
+            if (actionCount == MAX_ACTIONS) {
+                throw new IllegalStateException("Too many button actions");
+            }
+            actionButtons[actionCount] = buttons;
+            actionEvents[actionCount] = event;
+            actionHoldTimes[actionCount] = holdTime;
+            actions[actionCount] = action;
+            actionCount++;
+        }
+    }
+
+    /**
+     * Returns the debounced state of the buttons.
+     *
+     * @return the ids of the buttons that are down
+     */
+    public int getButtons() {
+        synchronized (lock) {
+            return buttons;
+        }
+    }
+
+    /**
+     * Returns how long the buttons have had their current debounced state.
+     *
+     * @return the time in milliseconds
+     */
+    public long getStateAge() {
+        synchronized (lock) {
+            return clock.currentTimeMillis() - changeTime;
+        }
+    }
+
+    /**
+     * Sleeps until the debounced state of the buttons changes or the timeout
+     * passes.
+     *
+     * @param timeout the longest time to wait in milliseconds, 0 to wait
+     *                without a limit
+     * @return the ids of the buttons that are down
+     */
+    public int awaitChange(long timeout) {
+        synchronized (lock) {
+            waitForChange(changes, timeout);
+            return buttons;
+        }
+    }
+
+    /**
+     * Sleeps until one of the given buttons is pressed.
+     *
+     * @param mask the ids of the buttons to wait for
+     * @return the ids of the pressed buttons among them
+     */
+    public int awaitPress(int mask) {
+        synchronized (lock) {
+            int previous = buttons;
+            while (true) {
+                waitForChange(changes, 0);
+                int pressed = buttons & ~previous & mask;
+                if (pressed != 0) {
+                    return pressed;
+                }
+                previous = buttons;
+            }
+        }
+    }
+
+    /**
+     * Sleeps until all of the given buttons are released.
+     *
+     * @param mask the ids of the buttons
+     */
+    public void awaitRelease(int mask) {
+        synchronized (lock) {
+            while ((buttons & mask) != 0) {
+                waitForChange(changes, 0);
+            }
+        }
+    }
+
+    /**
+     * Waits on the lock until the number of changes differs from the seen
+     * one or the timeout passes. Must be called with the lock held.
+     */
+    private void waitForChange(long seen, long timeout) {
+        long end = clock.currentTimeMillis() + timeout;
+        while (changes == seen) {
+            long remaining = 0;
+            if (timeout > 0) {
+                remaining = end - clock.currentTimeMillis();
+                if (remaining <= 0) {
+                    return;
+                }
+            }
+            try {
+                lock.wait(remaining);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
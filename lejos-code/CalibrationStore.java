@@ -0,0 +1,183 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * The {@code CalibrationStore} class saves the calibration of the light
+ * sensors to a file on the brick and loads it again, so the sensors do not
+ * have to be calibrated by hand after every start.
+ * 
+ * The file holds a magic number, a version, the low and high values of every
+ * sensor and a checksum. Values are the normalized raw readings of the
+ * sensors.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public class CalibrationStore {
+    private static final int MAGIC = 0x43414C42; // "CALB"
+    private static final int VERSION = 1;
+
+    /**
+     * Smallest difference between the low and high value of a sensor that is
+     * considered a valid calibration.
+     */
+    private static final int MIN_SPAN = 20;
+
+    /**
+     * Part of the span a reading may lie outside of the calibrated range in
+     * percent before the calibration counts as stale.
+     */
+    private static final int TOLERANCE_PERCENT = 15;
+
+    private final File file;
+
+    private int[] lows;
+    private int[] highs;
+
+    /**
+     * Constructs a store for the given file.
+     *
+     * @param file the calibration file
+     */
+    public CalibrationStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Sets the calibration values.
+     *
+     * @param lows  the values over black, one per sensor
+     * @param highs the values over white, one per sensor
+     */
+    public void set(int[] lows, int[] highs) {
+        if (lows.length != highs.length) {
+            throw new IllegalArgumentException("lows and highs must have the same length");
+        }
+        this.lows = lows;
+        this.highs = highs;
+    }
+
+    public int[] getLows() {
+        return lows;
+    }
+
+    public int[] getHighs() {
+        return highs;
+    }
+
+    /**
+     * Writes the calibration values to the file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void save() throws IOException {
+        if (lows == null) {
+            throw new IllegalStateException("No calibration to save");
+        }
+        if (file.exists()) {
+            file.delete();
+        }
+
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(lows.length);
+            for (int i = 0; i < lows.length; i++) {
+                out.writeInt(lows[i]);
+                out.writeInt(highs[i]);
+            }
+            out.writeInt(checksum(lows, highs));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the calibration values from the file.
+     *
+     * @param sensorCount the expected number of sensors
+     * @return true if a valid calibration was read, false otherwise
+     */
+    public boolean load(int sensorCount) {
+        if (!file.exists()) {
+            return false;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != sensorCount) {
+                    return false;
+                }
+
+                int[] readLows = new int[sensorCount];
+                int[] readHighs = new int[sensorCount];
+                for (int i = 0; i < sensorCount; i++) {
+                    readLows[i] = in.readInt();
+                    readHighs[i] = in.readInt();
+                }
+                if (in.readInt() != checksum(readLows, readHighs) || !isValid(readLows, readHighs)) {
+                    return false;
+                }
+
+                lows = readLows;
+                highs = readHighs;
+                return true;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks if current readings fit the calibration. A reading far outside
+     * the calibrated range means the lighting changed since the calibration.
+     * At least one sensor has to see white, which is the case whenever the
+     * robot stands on the track.
+     *
+     * @param readings the current normalized readings, one per sensor
+     * @return true if the calibration still fits, false if it is stale
+     */
+    public boolean selfTest(int[] readings) {
+        if (lows == null || readings.length != lows.length) {
+            return false;
+        }
+
+        boolean seesWhite = false;
+        for (int i = 0; i < readings.length; i++) {
+            int tolerance = (highs[i] - lows[i]) * TOLERANCE_PERCENT / 100;
+            if (readings[i] < lows[i] - tolerance || readings[i] > highs[i] + tolerance) {
+                return false;
+            }
+            if (readings[i] >= highs[i] - tolerance) {
+                seesWhite = true;
+            }
+        }
+        return seesWhite;
+    }
+
+    private static boolean isValid(int[] lows, int[] highs) {
+        for (int i = 0; i < lows.length; i++) {
+            if (lows[i] < 0 || highs[i] - lows[i] < MIN_SPAN) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int checksum(int[] lows, int[] highs) {
+        int checksum = MAGIC;
+        for (int i = 0; i < lows.length; i++) {
+            checksum = checksum * 31 + lows[i];
+            checksum = checksum * 31 + highs[i];
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,34 @@
+
+
+/**
+ * The {@code Clock} interface is the time source used by the control logic.
+ * On the brick it is backed by the system clock, in the simulator it is backed
+ * by the simulated world time.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public interface Clock {
+    /**
+     * Returns the current time.
+     *
+     * @return the current time in milliseconds
+     */
+    long currentTimeMillis();
+
+    /**
+     * Returns a high resolution time for measuring how long code runs. The
+     * value has no relation to {@link #currentTimeMillis()} and only
+     * differences of two values are meaningful.
+     *
+     * @return the time in nanoseconds
+     */
+    long nanoTime();
+
+    /**
+     * Blocks the calling thread for the given duration.
+     *
+     * @param duration the duration to wait in milliseconds
+     */
+    void sleep(long duration);
+}
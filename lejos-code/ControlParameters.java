@@ -0,0 +1,278 @@
+
+
+/**
+ * The {@code ControlParameters} class holds the tuning knobs of the
+ * {@link LineFollower}. The defaults are the values the robot was tuned with
+ * on the floor.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public class ControlParameters {
+    /**
+     * Steers with full left, straight or full right turns.
+     */
+    public static final int STEERING_BANG_BANG = 0;
+
+    /**
+     * Steers continuously with a {@link PidController} on the line position.
+     */
+    public static final int STEERING_PID = 1;
+
+    /**
+     * Control ticks per second.
+     */
+    public int executionFrequency = 5;
+
+    /**
+     * Light value below which all sensors count as black.
+     */
+    public int blackThreshold = 30;
+
+    /**
+     * Slack when comparing a sensor against its neighbours.
+     */
+    public int fluctuationBuffer = 5;
+
+    /**
+     * Largest difference between the sensors that still counts as equal.
+     */
+    public int maxDifference = 15; // TODO: Adjust
+
+    /**
+     * Motor speed when driving in degrees per second.
+     */
+    public int defaultSpeed = 200;
+
+    /**
+     * Motor speed when rotating and backing off in degrees per second.
+     */
+    public int rotationSpeed = 150;
+
+    /**
+     * Largest increase of a wheel speed in degrees per second squared, 0
+     * switches the ramp off.
+     */
+    public int acceleration = 1500;
+
+    /**
+     * Largest decrease of a wheel speed in degrees per second squared, 0
+     * switches the ramp off.
+     */
+    public int deceleration = 3000;
+
+    /**
+     * Time the robot backs off after a bump in milliseconds.
+     */
+    public int backoffDuration = 1500;
+
+    /**
+     * Time the robot rotates to turn around after backing off in
+     * milliseconds.
+     */
+    public int turnAroundDuration = 5000;
+
+    /**
+     * Angle the line search sweeps to each side before the search legs in
+     * degrees.
+     */
+    public int searchSweepAngle = 30;
+
+    /**
+     * Lateral step of the search legs across the last line heading in
+     * millimeters, the n-th leg ends n steps to the side.
+     */
+    public int searchLegStep = 150;
+
+    /**
+     * Largest lateral distance of the search legs in millimeters.
+     */
+    public int searchDistance = 600;
+
+    /**
+     * Motor speed on the search legs in degrees per second.
+     */
+    public int searchSpeed = 300;
+
+    /**
+     * Time the line may be lost while following before the line search
+     * starts in milliseconds, 0 keeps turning towards the side the line was
+     * last seen on.
+     */
+    public int lostLineTimeout = 0;
+
+    /**
+     * The steering strategy, {@link #STEERING_BANG_BANG} or
+     * {@link #STEERING_PID}.
+     */
+    public int steering = STEERING_BANG_BANG;
+
+    /**
+     * Base motor speed of the PID steering in degrees per second.
+     */
+    public int pidSpeed = 400;
+
+    /**
+     * Proportional gain of the PID steering in thousandths.
+     */
+    public int pidKp = 350;
+
+    /**
+     * Integral gain of the PID steering in thousandths.
+     */
+    public int pidKi = 0;
+
+    /**
+     * Derivative gain of the PID steering in thousandths.
+     */
+    public int pidKd = 600;
+
+    /**
+     * Largest absolute error sum of the PID steering.
+     */
+    public int pidIntegralLimit = 20000;
+
+    /**
+     * Distance ahead of the sensor bar in millimeters at which the PID
+     * steering aims at the line estimated by the {@link LineEstimator}, 0
+     * steers on the raw readings.
+     */
+    public int estimatorLookahead = 0;
+
+    /**
+     * Diameter of the wheels in millimeters.
+     */
+    public int wheelDiameter = 56;
+
+    /**
+     * Distance between the wheels in millimeters.
+     */
+    public int wheelBase = 120;
+
+    /**
+     * Distance of the light sensors in front of the wheel axle in
+     * millimeters.
+     */
+    public int sensorForward = 70;
+
+    /**
+     * Distance between two neighbouring light sensors in millimeters.
+     */
+    public int sensorSpacing = 25;
+
+    /**
+     * Speed on the straights of a learned track in degrees per second, 0
+     * drives every lap at the base speed. See {@link TrackMap}.
+     */
+    public int profileMaxSpeed = 0;
+
+    /**
+     * Curve radius in millimeters at and below which the speed profile drops
+     * to the base speed.
+     */
+    public int profileCurveRadius = 400;
+
+    /**
+     * Deceleration the speed profile plans with before curves in degrees per
+     * second squared, lower than {@link #deceleration} to leave the steering
+     * some margin.
+     */
+    public int profileDeceleration = 1500;
+
+    /**
+     * Whether the black and white levels of the light sensors are estimated
+     * while driving, see {@link LightLevels}. The black thresholds then move
+     * along with the estimated levels of each sensor.
+     */
+    public boolean adaptiveLevels = false;
+
+    /**
+     * Light value over black the thresholds were tuned with.
+     */
+    public int referenceBlack = 28;
+
+    /**
+     * Light value over white the thresholds were tuned with.
+     */
+    public int referenceWhite = 56;
+
+    /**
+     * Share of the distance to a brighter reading that the white level of a
+     * sensor moves up by, in thousandths.
+     */
+    public int levelWeight = 100;
+
+    /**
+     * Light value the white level of a sensor decays by with every darker
+     * reading, in thousandths.
+     */
+    public int levelDecay = 50;
+
+    /**
+     * Whether markers across the track are recognized, see
+     * {@link MarkerRecognizer}.
+     */
+    public boolean recognizeMarkers = false;
+
+    /**
+     * Speed in a slow zone in percent of the base speed.
+     */
+    public int slowZoneSpeed = 50;
+
+    /**
+     * Angle of the lift motor between the down and the up position in
+     * degrees, see {@link Lift}.
+     */
+    public int liftAngle = 120;
+
+    /**
+     * Speed of the lift motor in degrees per second.
+     */
+    public int liftSpeed = 300;
+
+    /**
+     * Longest time of a lift move in milliseconds. A move that takes longer
+     * is stopped, the lift is probably blocked.
+     */
+    public int liftTimeout = 2000;
+
+    /**
+     * Widest bar in millimeters that is read as a junction of the track
+     * network, see {@link JunctionDetector}.
+     */
+    public int junctionMaxWidth = 40;
+
+    /**
+     * Distance before and behind a junction without another bar in
+     * millimeters. Longer than the gaps of the markers.
+     */
+    public int junctionClearance = 60;
+
+    /**
+     * Cost of turning at a junction in millimeters of straight line, see
+     * {@link TrackGraph#plan(int, int)}.
+     */
+    public int routeTurnPenalty = 200;
+
+    /**
+     * Largest angle the robot spins at a junction in degrees before it
+     * searches the line instead.
+     */
+    public int junctionSpinAngle = 150;
+
+    /**
+     * Creates the parameters for the PID steering with the given base speed
+     * and a matching control rate.
+     *
+     * @param speed the base motor speed in degrees per second
+     * @return the parameters
+     */
+    public static ControlParameters pid(int speed) {
+        ControlParameters parameters = new ControlParameters();
+        parameters.steering = STEERING_PID;
+        parameters.executionFrequency = 50;
+        parameters.pidSpeed = speed;
+        parameters.estimatorLookahead = 30;
+        return parameters;
+    }
+}
@@ -0,0 +1,198 @@
+
+
+/**
+ * The {@code ControlScheduler} class runs the control loop at a fixed rate.
+ * Instead of spinning until the next execution time it sleeps until the next
+ * deadline, so other threads get the CPU in between.
+ * 
+ * Deadlines are computed from the tick index, so rates that do not divide
+ * 1000 ms evenly keep their average rate. A tick that starts after the
+ * deadline of the following tick has passed counts as an overrun and is
+ * handled according to the {@link OverrunPolicy}.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public class ControlScheduler {
+    /**
+     * Defines what happens after a tick took longer than one period.
+     */
+    public enum OverrunPolicy {
+        /**
+         * Drops the missed ticks and only runs the most recent one.
+         */
+        SKIP,
+
+        /**
+         * Runs the missed ticks back to back until the schedule is met again.
+         */
+        CATCH_UP
+    }
+
+    private final Clock clock;
+    private final int frequency;
+    private final OverrunPolicy policy;
+
+    private long startTime;
+    private long tickIndex;
+    private boolean started = false;
+
+    private long ticks;
+    private long overruns;
+    private long skippedTicks;
+    private long minLateness;
+    private long maxLateness;
+    private long latenessSum;
+    private long lastLateness;
+
+    /**
+     * Constructs a scheduler.
+     *
+     * @param clock     the time source
+     * @param frequency the tick rate in Hz, at most 1000
+     * @param policy    the overrun policy
+     */
+    public ControlScheduler(Clock clock, int frequency, OverrunPolicy policy) {
+        if (frequency <= 0 || frequency > 1000) {
+            throw new IllegalArgumentException("frequency must be between 1 and 1000 Hz");
+        }
+        this.clock = clock;
+        this.frequency = frequency;
+        this.policy = policy;
+        resetStatistics();
+    }
+
+    /**
+     * Sleeps until the deadline of the next tick. The first call returns
+     * immediately and starts the schedule.
+     */
+    public void awaitNextTick() {
+        long now = clock.currentTimeMillis();
+        if (!started) {
+            started = true;
+            startTime = now;
+            tickIndex = 0;
+        } else {
+            tickIndex++;
+            if (now >= deadline(tickIndex + 1)) {
+                overruns++;
+                if (policy == OverrunPolicy.SKIP) {
+                    long latest = (now - startTime) * frequency / 1000;
+                    skippedTicks += latest - tickIndex;
+                    tickIndex = latest;
+                }
+            }
+        }
+
+        long deadline = deadline(tickIndex);
+        if (now < deadline) {
+            clock.sleep(deadline - now);
+            now = clock.currentTimeMillis();
+        }
+
+        long lateness = now - deadline;
+        lastLateness = lateness;
+        ticks++;
+        latenessSum += lateness;
+        minLateness = Math.min(minLateness, lateness);
+        maxLateness = Math.max(maxLateness, lateness);
+    }
+
+    /**
+     * Restarts the schedule. The next call of {@link #awaitNextTick()} returns
+     * immediately. Use this after the control loop was paused.
+     */
+    public void restart() {
+        started = false;
+    }
+
+    private long deadline(long index) {
+        return startTime + index * 1000 / frequency;
+    }
+
+    /**
+     * Resets the tick, overrun and jitter statistics.
+     */
+    public void resetStatistics() {
+        ticks = 0;
+        overruns = 0;
+        skippedTicks = 0;
+        minLateness = Long.MAX_VALUE;
+        maxLateness = 0;
+        latenessSum = 0;
+    }
+
+    /**
+     * Returns how late the most recent tick started.
+     *
+     * @return the lateness in milliseconds
+     */
+    public long getLastLateness() {
+        return lastLateness;
+    }
+
+    public int getFrequency() {
+        return frequency;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns the number of ticks that started after the deadline of the
+     * following tick.
+     *
+     * @return the number of overruns
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * Returns the number of ticks dropped by the {@link OverrunPolicy#SKIP}
+     * policy.
+     *
+     * @return the number of skipped ticks
+     */
+    public long getSkippedTicks() {
+        return skippedTicks;
+    }
+
+    /**
+     * Returns the smallest delay between a deadline and the start of its tick.
+     *
+     * @return the minimum lateness in milliseconds, 0 before the first tick
+     */
+    public long getMinLateness() {
+        return ticks == 0 ? 0 : minLateness;
+    }
+
+    /**
+     * Returns the largest delay between a deadline and the start of its tick.
+     *
+     * @return the maximum lateness in milliseconds
+     */
+    public long getMaxLateness() {
+        return maxLateness;
+    }
+
+    /**
+     * Returns the mean delay between a deadline and the start of its tick.
+     *
+     * @return the mean lateness in milliseconds, 0 before the first tick
+     */
+    public double getMeanLateness() {
+        return ticks == 0 ? 0 : latenessSum / (double) ticks;
+    }
+
+    /**
+     * Returns a short summary of the statistics for the LCD.
+     *
+     * @return the summary
+     */
+    public String debugDescription() {
+        return "Hz: " + frequency + "\nTicks: " + ticks + "\nOver: " + overruns + "\nSkip: " + skippedTicks
+                + "\nLate: " + getMinLateness() + "-" + maxLateness;
+    }
+}
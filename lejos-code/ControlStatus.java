@@ -0,0 +1,92 @@
+
+
+/**
+ * The {@code ControlStatus} class is a snapshot of the state of the control
+ * loop that is shown on the display. It only holds primitive values, so the
+ * control loop can fill and copy it without allocating.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public class ControlStatus {
+    // Actions of the control loop
+    public static final int ACTION_NONE = 0;
+    public static final int ACTION_FORWARD = 1;
+    public static final int ACTION_LEFT = 2;
+    public static final int ACTION_RIGHT = 3;
+    public static final int ACTION_KEEP_TURNING = 4;
+    public static final int ACTION_SEARCH = 5;
+    public static final int ACTION_BACK_OFF = 6;
+    public static final int ACTION_TURN_AROUND = 7;
+
+    public int left;
+    public int right;
+    public int center;
+    public int action = ACTION_NONE;
+
+    /**
+     * The state code of the {@link LineClassifier}.
+     */
+    public int state = LineClassifier.LOST;
+
+    /**
+     * Whether the line search found the line, only meaningful for
+     * {@link #ACTION_SEARCH}.
+     */
+    public boolean lineFound;
+
+    /**
+     * Time of the snapshot in milliseconds.
+     */
+    public long timestamp;
+
+    /**
+     * Copies all values of another snapshot into this one.
+     *
+     * @param other the snapshot to copy
+     */
+    public void copyFrom(ControlStatus other) {
+        left = other.left;
+        right = other.right;
+        center = other.center;
+        action = other.action;
+        state = other.state;
+        lineFound = other.lineFound;
+        timestamp = other.timestamp;
+    }
+
+    /**
+     * Returns a string representation of the sensor readings.
+     * 
+     * @return a string representation of the sensor readings
+     */
+    public String debugDescription() {
+        return "L: " + left + "\nR: " + right + "\nC: " + center;
+    }
+
+    /**
+     * Returns the label of the current action.
+     *
+     * @return the label, or null without an action
+     */
+    public String actionLabel() {
+        switch (action) {
+            case ACTION_FORWARD:
+                return "FORWARD";
+            case ACTION_LEFT:
+                return "LEFT";
+            case ACTION_RIGHT:
+                return "RIGHT";
+            case ACTION_KEEP_TURNING:
+                return "FORWARD LIKE GOD SAYS";
+            case ACTION_SEARCH:
+                return lineFound ? "ALB: true" : "ALB: false";
+            case ACTION_BACK_OFF:
+                return "BACK OFF";
+            case ACTION_TURN_AROUND:
+                return "TURN AROUND";
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * The {@code DifferentialLightSensor} class cancels the ambient light from
+ * the readings of a {@link FloodlightSensor}. It switches the lamp after
+ * every reading, so the readings alternate between lamp on and lamp off, and
+ * returns the latest reading with the lamp on minus the ambient light of the
+ * readings with the lamp off. The ambient light changes slowly, so the
+ * readings with the lamp off are smoothed, which keeps the noise of the
+ * difference close to that of a single reading. Every reading gives a new
+ * difference, as fast as a sensor read without switching.
+ *
+ * The difference is moved by an ambient level, measured with
+ * {@link #calibrateAmbient(int)} when the thresholds are calibrated, so it
+ * reads like the lamp on reading under the lighting of the calibration and
+ * the thresholds tuned without switching still apply.
+ *
+ * The lamp needs a moment to settle after a switch. A reading within the
+ * settle time returns the last difference and does not switch. When the
+ * {@link SensorSampler} reads the three sensors one after the other, each
+ * lamp settles while the other ports are read and during the sample
+ * interval, so no reading is wasted.
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public class DifferentialLightSensor implements LineSensor {
+    /**
+     * Weight of a reading with the lamp off in the smoothed ambient light.
+     */
+    private static final double DARK_WEIGHT = 0.25;
+
+    private final FloodlightSensor sensor;
+    private final Clock clock;
+    private final long settleTime;
+
+    private boolean lampOn = true;
+    private long switchTime;
+    private int litReading;
+    private int darkReading;
+    private double darkLevel;
+    private int ambientLevel;
+    private int value;
+    private boolean paired = false;
+
+    /**
+     * Constructs a differential sensor and switches its lamp on.
+     *
+     * @param sensor     the sensor
+     * @param clock      the time source
+     * @param settleTime the time the lamp needs to settle after a switch in
+     *                   milliseconds
+     */
+    public DifferentialLightSensor(FloodlightSensor sensor, Clock clock, long settleTime) {
+        this.sensor = sensor;
+        this.clock = clock;
+        this.settleTime = settleTime;
+        sensor.setFloodlight(true);
+        switchTime = clock.currentTimeMillis();
+    }
+
+    /**
+     * Measures the ambient level as the mean of a number of readings with
+     * the lamp off, then switches the lamp on again.
+     *
+     * @param samples the number of readings
+     */
+    public void calibrateAmbient(int samples) {
+        sensor.setFloodlight(false);
+        clock.sleep(settleTime);
+        int sum = 0;
+        for (int i = 0; i < samples; i++) {
+            sum += sensor.getLightValue();
+        }
+        ambientLevel = Math.round(sum / (float) Math.max(1, samples));
+        sensor.setFloodlight(true);
+        lampOn = true;
+        switchTime = clock.currentTimeMillis();
+        clock.sleep(settleTime);
+        paired = false;
+    }
+
+    @Override
+    public int getLightValue() {
+        long now = clock.currentTimeMillis();
+        if (now - switchTime < settleTime) {
+            return value;
+        }
+
+        int reading = sensor.getLightValue();
+        if (lampOn) {
+            litReading = reading;
+        } else if (paired) {
+            darkReading = reading;
+            darkLevel += DARK_WEIGHT * (reading - darkLevel);
+        } else {
+            darkReading = reading;
+            darkLevel = reading;
+            paired = true;
+        }
+        lampOn = !lampOn;
+        sensor.setFloodlight(lampOn);
+        switchTime = now;
+
+        // Until the first pair is complete the lamp on reading stands alone
+        value = paired ? (int) Math.round(litReading - darkLevel) + ambientLevel : litReading;
+        return value;
+    }
+
+    /**
+     * Sets the ambient level, the reading with the lamp off under the
+     * lighting the thresholds were tuned in.
+     *
+     * @param level the light value
+     */
+    public void setAmbientLevel(int level) {
+        ambientLevel = level;
+    }
+
+    /**
+     * Returns the ambient level.
+     *
+     * @return the light value with the lamp off
+     */
+    public int getAmbientLevel() {
+        return ambientLevel;
+    }
+
+    /**
+     * Returns the latest reading with the lamp off.
+     *
+     * @return the light value
+     */
+    public int getDarkReading() {
+        return darkReading;
+    }
+}
@@ -0,0 +1,179 @@
+
+
+/**
+ * The {@code DisplayService} class shows the status of the control loop on a
+ * {@link TextScreen} from its own low priority thread. The control loop only
+ * copies a snapshot into the service, so display I/O never adds to its
+ * latency.
+ * 
+ * Snapshots published faster than the refresh rate are coalesced, the screen
+ * always shows the latest one.
+ * 
+ * @author leonweimann
+ * @version 1.1
+ */
+public class DisplayService implements StatusDisplay, Runnable {
+    private final TextScreen screen;
+    private final Clock clock;
+    private final long refreshInterval;
+
+    private final ControlStatus pending = new ControlStatus();
+    private final ControlStatus rendered = new ControlStatus();
+    private boolean hasPending = false;
+    private volatile boolean running = false;
+    private Thread thread;
+
+    private LoopProfiler profiler;
+    private volatile boolean showProfile = false;
+    private boolean profileShown = false;
+
+    private long published;
+    private long renders;
+
+    /**
+     * Constructs a display service.
+     *
+     * @param screen      the screen to render to
+     * @param clock       the time source
+     * @param refreshRate the maximum number of screen updates per second
+     */
+    public DisplayService(TextScreen screen, Clock clock, int refreshRate) {
+        if (refreshRate <= 0) {
+            throw new IllegalArgumentException("refreshRate must be positive");
+        }
+        this.screen = screen;
+        this.clock = clock;
+        this.refreshInterval = 1000 / refreshRate;
+    }
+
+    /**
+     * Starts the render thread. It runs as a daemon with minimal priority.
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(this);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Stops the render thread and waits until its current update is done, so
+     * the caller can draw on the screen afterwards.
+     */
+    public void stop() {
+        synchronized (pending) {
+            running = false;
+            pending.notifyAll();
+        }
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        thread = null;
+    }
+
+    @Override
+    public void publish(ControlStatus status) {
+        synchronized (pending) {
+            pending.copyFrom(status);
+            published++;
+            if (!hasPending) {
+                hasPending = true;
+                pending.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            synchronized (pending) {
+                while (running && !hasPending) {
+                    try {
+                        pending.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                rendered.copyFrom(pending);
+                hasPending = false;
+            }
+
+            long start = clock.currentTimeMillis();
+            render(rendered);
+            renders++;
+
+            long remaining = start + refreshInterval - clock.currentTimeMillis();
+            if (remaining > 0) {
+                clock.sleep(remaining);
+            }
+        }
+    }
+
+    /**
+     * Sets the profiler whose page {@link #toggleProfile()} shows.
+     *
+     * @param profiler the profiler of the control loop
+     */
+    public void setProfiler(LoopProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Switches between the status and the page of the profiler.
+     */
+    public void toggleProfile() {
+        showProfile = !showProfile;
+    }
+
+    /**
+     * Draws a snapshot. Lines that did not change are not redrawn.
+     *
+     * @param status the snapshot to draw
+     */
+    protected void render(ControlStatus status) {
+        boolean profile = showProfile && profiler != null;
+        if (profile != profileShown) {
+            screen.clear();
+            profileShown = profile;
+        }
+        if (profile) {
+            screen.display(profiler.page(), false);
+            return;
+        }
+
+        screen.resetAppendedItems();
+        screen.append(status.debugDescription(), false, 1);
+        String label = status.actionLabel();
+        if (label != null) {
+            screen.append(label, status.action != ControlStatus.ACTION_SEARCH, 2);
+        }
+        screen.finishAppendedItems();
+    }
+
+    /**
+     * Returns the number of published snapshots.
+     *
+     * @return the number of snapshots
+     */
+    public long getPublished() {
+        return published;
+    }
+
+    /**
+     * Returns the number of screen updates. The difference to
+     * {@link #getPublished()} is the number of coalesced snapshots.
+     *
+     * @return the number of screen updates
+     */
+    public long getRenders() {
+        return renders;
+    }
+}
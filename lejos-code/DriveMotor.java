@@ -0,0 +1,45 @@
+
+
+/**
+ * The {@code DriveMotor} interface describes a regulated wheel motor. The
+ * method names follow {@code NXTRegulatedMotor}, so the NXT implementation is
+ * a plain delegation.
+ * 
+ * The methods are called from the control tick and must not block. In
+ * particular {@link #stop()} only starts braking and returns at once, like
+ * {@code NXTRegulatedMotor.stop(true)}.
+ * 
+ * @author leonweimann
+ * @version 1.1
+ */
+public interface DriveMotor {
+    /**
+     * Sets the motor speed.
+     *
+     * @param speed the speed in degrees per second
+     */
+    void setSpeed(int speed);
+
+    /**
+     * Starts rotating the motor forward.
+     */
+    void forward();
+
+    /**
+     * Starts rotating the motor backward.
+     */
+    void backward();
+
+    /**
+     * Starts braking the motor and returns without waiting until it stands
+     * still.
+     */
+    void stop();
+
+    /**
+     * Returns the angle the motor turned since the start.
+     *
+     * @return the tacho count in degrees, positive when rotating forward
+     */
+    int getTachoCount();
+}
@@ -0,0 +1,243 @@
+/**
+ * The {@code Drivetrain} class commands the two wheel motors. It remembers
+ * the last speed and direction sent to every motor and only sends commands
+ * that change something, because every call is a round trip to the motor
+ * regulator. Speed changes can be ramped to avoid wheel slip.
+ * 
+ * Speeds are given in degrees per second of the wheel, positive values drive
+ * the robot forward. Targets take effect in {@link #update()}, which is
+ * called once per control tick.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public class Drivetrain {
+    // Directions sent to a motor
+    private static final int STOPPED = 0;
+    private static final int FORWARD = 1;
+    private static final int BACKWARD = -1;
+
+    /**
+     * Direction and speed value meaning that nothing was sent yet.
+     */
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private final DriveMotor leftMotor;
+    private final DriveMotor rightMotor;
+    private final boolean reversed;
+    private final Clock clock;
+    private final int acceleration;
+    private final int deceleration;
+
+    private int leftTarget;
+    private int rightTarget;
+    private int leftVelocity;
+    private int rightVelocity;
+
+    private int leftSpeed = UNKNOWN;
+    private int rightSpeed = UNKNOWN;
+    private int leftDirection = UNKNOWN;
+    private int rightDirection = UNKNOWN;
+
+    private long lastUpdate = -1;
+    private long issuedCommands;
+    private long suppressedCommands;
+
+    /**
+     * Constructs a drivetrain.
+     *
+     * @param leftMotor    the left wheel motor
+     * @param rightMotor   the right wheel motor
+     * @param reversed     true if the motors are mounted so that running
+     *                     backward drives the robot forward
+     * @param clock        the time source for the ramps
+     * @param acceleration the largest increase of a wheel speed in degrees per
+     *                     second squared, 0 for no ramp
+     * @param deceleration the largest decrease of a wheel speed in degrees per
+     *                     second squared, 0 for no ramp
+     */
+    public Drivetrain(DriveMotor leftMotor, DriveMotor rightMotor, boolean reversed, Clock clock, int acceleration,
+            int deceleration) {
+        this.leftMotor = leftMotor;
+        this.rightMotor = rightMotor;
+        this.reversed = reversed;
+        this.clock = clock;
+        this.acceleration = acceleration;
+        this.deceleration = deceleration;
+    }
+
+    /**
+     * Sets the target speeds of both wheels.
+     *
+     * @param left  the speed of the left wheel, negative drives backward
+     * @param right the speed of the right wheel, negative drives backward
+     */
+    public void drive(int left, int right) {
+        leftTarget = left;
+        rightTarget = right;
+    }
+
+    /**
+     * Ramps both wheels down to a stop.
+     */
+    public void stop() {
+        drive(0, 0);
+    }
+
+    /**
+     * Stops both wheels right away without a ramp.
+     */
+    public void stopNow() {
+        drive(0, 0);
+        leftVelocity = 0;
+        rightVelocity = 0;
+        apply();
+    }
+
+    /**
+     * Moves the wheel speeds towards their targets as far as the ramps allow
+     * and sends the changes to the motors.
+     */
+    public void update() {
+        long now = clock.currentTimeMillis();
+        long elapsed = lastUpdate < 0 ? 0 : now - lastUpdate;
+        lastUpdate = now;
+
+        leftVelocity = ramp(leftVelocity, leftTarget, elapsed);
+        rightVelocity = ramp(rightVelocity, rightTarget, elapsed);
+        apply();
+    }
+
+    private int ramp(int velocity, int target, long elapsed) {
+        if (velocity == target) {
+            return velocity;
+        }
+
+        // Slowing down or reversing first brakes towards 0
+        boolean slowingDown = (velocity > 0 && target < velocity) || (velocity < 0 && target > velocity);
+        int rate = slowingDown ? deceleration : acceleration;
+        if (rate <= 0) {
+            return target;
+        }
+
+        int step = (int) Math.max(1, rate * elapsed / 1000);
+        int limit = target;
+        if (slowingDown && (target > 0) != (velocity > 0)) {
+            limit = 0;
+        }
+        if (target > velocity) {
+            return Math.min(velocity + step, limit);
+        }
+        return Math.max(velocity - step, limit);
+    }
+
+    private void apply() {
+        int newLeftSpeed = Math.abs(leftVelocity);
+        if (newLeftSpeed != leftSpeed) {
+            leftMotor.setSpeed(newLeftSpeed);
+            leftSpeed = newLeftSpeed;
+            issuedCommands++;
+        } else {
+            suppressedCommands++;
+        }
+
+        int newRightSpeed = Math.abs(rightVelocity);
+        if (newRightSpeed != rightSpeed) {
+            rightMotor.setSpeed(newRightSpeed);
+            rightSpeed = newRightSpeed;
+            issuedCommands++;
+        } else {
+            suppressedCommands++;
+        }
+
+        int newLeftDirection = direction(leftVelocity);
+        if (newLeftDirection != leftDirection) {
+            run(leftMotor, newLeftDirection);
+            leftDirection = newLeftDirection;
+            issuedCommands++;
+        } else {
+            suppressedCommands++;
+        }
+
+        int newRightDirection = direction(rightVelocity);
+        if (newRightDirection != rightDirection) {
+            run(rightMotor, newRightDirection);
+            rightDirection = newRightDirection;
+            issuedCommands++;
+        } else {
+            suppressedCommands++;
+        }
+    }
+
+    private int direction(int velocity) {
+        if (velocity == 0) {
+            return STOPPED;
+        }
+        return (velocity > 0) != reversed ? FORWARD : BACKWARD;
+    }
+
+    private static void run(DriveMotor motor, int direction) {
+        if (direction == FORWARD) {
+            motor.forward();
+        } else if (direction == BACKWARD) {
+            motor.backward();
+        } else {
+            motor.stop();
+        }
+    }
+
+    /**
+     * Returns the current speed of the left wheel.
+     *
+     * @return the speed in degrees per second, negative when driving backward
+     */
+    public int getLeftVelocity() {
+        return leftVelocity;
+    }
+
+    /**
+     * Returns the current speed of the right wheel.
+     *
+     * @return the speed in degrees per second, negative when driving backward
+     */
+    public int getRightVelocity() {
+        return rightVelocity;
+    }
+
+    /**
+     * Returns the angle the left wheel turned since the start.
+     *
+     * @return the angle in degrees, positive when driving forward
+     */
+    public int getLeftAngle() {
+        return reversed ? -leftMotor.getTachoCount() : leftMotor.getTachoCount();
+    }
+
+    /**
+     * Returns the angle the right wheel turned since the start.
+     *
+     * @return the angle in degrees, positive when driving forward
+     */
+    public int getRightAngle() {
+        return reversed ? -rightMotor.getTachoCount() : rightMotor.getTachoCount();
+    }
+
+    /**
+     * Returns the number of commands sent to the motors.
+     *
+     * @return the number of issued commands
+     */
+    public long getIssuedCommands() {
+        return issuedCommands;
+    }
+
+    /**
+     * Returns the number of commands that were not sent because they would
+     * not have changed anything.
+     *
+     * @return the number of suppressed commands
+     */
+    public long getSuppressedCommands() {
+        return suppressedCommands;
+    }
+}
@@ -0,0 +1,47 @@
+
+
+/**
+ * The {@code EmaFilter} class is an exponential moving average. Every new
+ * value moves the output by a fixed fraction towards it. The state is kept in
+ * fixed point with 8 fractional bits, so small weights still converge.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public class EmaFilter implements SampleFilter {
+    private static final int FRACTION_BITS = 8;
+
+    private final int weight;
+    private int state;
+    private boolean initialized = false;
+
+    /**
+     * Constructs an exponential moving average.
+     *
+     * @param weight the weight of a new value in thousandths, 1000 passes
+     *               values through unchanged
+     */
+    public EmaFilter(int weight) {
+        if (weight <= 0 || weight > 1000) {
+            throw new IllegalArgumentException("weight must be between 1 and 1000");
+        }
+        this.weight = weight;
+    }
+
+    @Override
+    public int filter(int value) {
+        int scaled = value << FRACTION_BITS;
+        if (!initialized) {
+            state = scaled;
+            initialized = true;
+        } else {
+            state += (scaled - state) * weight / 1000;
+        }
+        return (state + (1 << (FRACTION_BITS - 1))) >> FRACTION_BITS;
+    }
+
+    @Override
+    public void reset() {
+        initialized = false;
+    }
+}
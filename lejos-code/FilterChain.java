@@ -0,0 +1,37 @@
+
+
+/**
+ * The {@code FilterChain} class runs a value through several
+ * {@link SampleFilter} stages, the output of a stage is the input of the next
+ * one.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public class FilterChain implements SampleFilter {
+    private final SampleFilter[] stages;
+
+    /**
+     * Constructs a chain of the given stages.
+     *
+     * @param stages the stages in the order they are applied
+     */
+    public FilterChain(SampleFilter... stages) {
+        this.stages = stages;
+    }
+
+    @Override
+    public int filter(int value) {
+        for (int i = 0; i < stages.length; i++) {
+            value = stages[i].filter(value);
+        }
+        return value;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i].reset();
+        }
+    }
+}
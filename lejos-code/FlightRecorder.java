@@ -0,0 +1,282 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The {@code FlightRecorder} class records one fixed-size binary record per
+ * control tick, so a run can be analysed after the fact. Records are written
+ * into a preallocated ring buffer by the control thread and flushed to a
+ * stream by a low priority writer thread, so recording neither allocates nor
+ * waits for file I/O.
+ *
+ * If the writer falls behind and the ring buffer is full, new records are
+ * dropped. Every record carries a sequence number, so a decoder can detect
+ * the gaps.
+ *
+ * The stream starts with a header of the magic number, the version, the
+ * record size and the tick rate. All values are big endian like
+ * {@link java.io.DataOutputStream} writes them. A record holds:
+ *
+ * <pre>
+ * offset size
+ *      0    4  sequence number
+ *      4    4  time since the first record in milliseconds
+ *      8    2  left reading
+ *     10    2  right reading
+ *     12    2  center reading
+ *     14    1  state of the LineClassifier
+ *     15    1  mode of the LineFollower
+ *     16    1  action of the ControlStatus
+ *     17    1  flags, see FLAG_TOUCHED and FLAG_LINE_FOUND
+ *     18    2  left wheel speed in degrees per second
+ *     20    2  right wheel speed in degrees per second
+ *     22    2  lateness of the tick in milliseconds
+ *     24    2  duration of the tick in milliseconds
+ *     26    4  angle of the left wheel in degrees
+ *     30    4  angle of the right wheel in degrees
+ * </pre>
+ *
+ * Version 1 records end after the duration.
+ *
+ * @author leonweimann
+ * @version 1.1
+ */
+public class FlightRecorder implements Runnable {
+    public static final int MAGIC = 0x464C5452; // "FLTR"
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 10;
+    public static final int RECORD_SIZE = 34;
+
+    // Bits of the flags byte
+    public static final int FLAG_TOUCHED = 1;
+    public static final int FLAG_LINE_FOUND = 2;
+
+    private final OutputStream out;
+    private final Clock clock;
+    private final int frequency;
+    private final int capacity;
+    private final byte[] ring;
+    private final long flushInterval;
+
+    // Written by the control thread only
+    private volatile long head;
+    private long startTime = -1;
+    private long sequence;
+    private long dropped;
+
+    // Written by the writer thread only
+    private volatile long tail;
+    private boolean headerWritten = false;
+    private IOException error;
+
+    private final Object writeLock = new Object();
+    private volatile boolean running = false;
+
+    /**
+     * Constructs a recorder.
+     *
+     * @param out           the stream to write to
+     * @param clock         the time source
+     * @param frequency     the tick rate of the control loop in Hz, stored in
+     *                      the header
+     * @param capacity      the number of records the ring buffer holds
+     * @param flushInterval the time between two flushes of the writer thread
+     *                      in milliseconds
+     */
+    public FlightRecorder(OutputStream out, Clock clock, int frequency, int capacity, long flushInterval) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.out = out;
+        this.clock = clock;
+        this.frequency = frequency;
+        this.capacity = capacity;
+        this.ring = new byte[capacity * RECORD_SIZE];
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Starts the writer thread. It runs as a daemon with minimal priority.
+     * Without the thread records are only written by {@link #flush()} and
+     * {@link #close()}.
+     */
+    public void start() {
+        running = true;
+        Thread thread = new Thread(this);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                flush();
+            } catch (IOException e) {
+                return;
+            }
+            clock.sleep(flushInterval);
+        }
+    }
+
+    /**
+     * Records one control tick. Called from the control thread, it does not
+     * allocate and does not block.
+     *
+     * @param status        the status of the tick
+     * @param mode          the mode of the line follower
+     * @param touched       whether the touch sensor was pressed
+     * @param leftVelocity  the speed of the left wheel
+     * @param rightVelocity the speed of the right wheel
+     * @param lateness      the lateness of the tick in milliseconds
+     * @param duration      the duration of the tick in milliseconds
+     * @param leftAngle     the angle of the left wheel in degrees
+     * @param rightAngle    the angle of the right wheel in degrees
+     */
+    public void record(ControlStatus status, int mode, boolean touched, int leftVelocity, int rightVelocity,
+            long lateness, long duration, int leftAngle, int rightAngle) {
+        long number = sequence++;
+        if (startTime < 0) {
+            startTime = status.timestamp;
+        }
+
+        long position = head;
+        if (position - tail >= capacity) {
+            dropped++;
+            return;
+        }
+
+        encode(ring, (int) (position % capacity) * RECORD_SIZE, (int) number, (int) (status.timestamp - startTime),
+                status, mode, touched, leftVelocity, rightVelocity, lateness, duration, leftAngle, rightAngle);
+
+        // Publishes the record to the writer thread
+        head = position + 1;
+    }
+
+    /**
+     * Encodes one record in the layout described above. Shared with the
+     * {@link TelemetryStreamer}, so both produce the same records.
+     *
+     * @return the offset behind the record
+     */
+    static int encode(byte[] buffer, int offset, int sequence, int time, ControlStatus status, int mode,
+            boolean touched, int leftVelocity, int rightVelocity, long lateness, long duration, int leftAngle,
+            int rightAngle) {
+        offset = putInt(buffer, offset, sequence);
+        offset = putInt(buffer, offset, time);
+        offset = putShort(buffer, offset, status.left);
+        offset = putShort(buffer, offset, status.right);
+        offset = putShort(buffer, offset, status.center);
+        buffer[offset++] = (byte) status.state;
+        buffer[offset++] = (byte) mode;
+        buffer[offset++] = (byte) status.action;
+        buffer[offset++] = (byte) ((touched ? FLAG_TOUCHED : 0) | (status.lineFound ? FLAG_LINE_FOUND : 0));
+        offset = putShort(buffer, offset, leftVelocity);
+        offset = putShort(buffer, offset, rightVelocity);
+        offset = putShort(buffer, offset, (int) Math.min(lateness, Short.MAX_VALUE));
+        offset = putShort(buffer, offset, (int) Math.min(duration, Short.MAX_VALUE));
+        offset = putInt(buffer, offset, leftAngle);
+        return putInt(buffer, offset, rightAngle);
+    }
+
+    private static int putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+        return offset + 4;
+    }
+
+    private static int putShort(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 8);
+        buffer[offset + 1] = (byte) value;
+        return offset + 2;
+    }
+
+    /**
+     * Writes all pending records to the stream.
+     *
+     * @throws IOException if the stream cannot be written
+     */
+    public void flush() throws IOException {
+        synchronized (writeLock) {
+            if (error != null) {
+                throw error;
+            }
+            try {
+                if (!headerWritten) {
+                    writeHeader(out, frequency);
+                    headerWritten = true;
+                }
+
+                long end = head;
+                while (tail < end) {
+                    int index = (int) (tail % capacity);
+                    int count = (int) Math.min(end - tail, capacity - index);
+                    out.write(ring, index * RECORD_SIZE, count * RECORD_SIZE);
+                    tail += count;
+                }
+                out.flush();
+            } catch (IOException e) {
+                error = e;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Writes the header of a flight log.
+     *
+     * @param out       the stream
+     * @param frequency the tick rate of the control loop in Hz
+     * @throws IOException if the stream cannot be written
+     */
+    static void writeHeader(OutputStream out, int frequency) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        header[0] = (byte) (MAGIC >>> 24);
+        header[1] = (byte) (MAGIC >>> 16);
+        header[2] = (byte) (MAGIC >>> 8);
+        header[3] = (byte) MAGIC;
+        header[4] = (byte) (VERSION >>> 8);
+        header[5] = (byte) VERSION;
+        header[6] = (byte) (RECORD_SIZE >>> 8);
+        header[7] = (byte) RECORD_SIZE;
+        header[8] = (byte) (frequency >>> 8);
+        header[9] = (byte) frequency;
+        out.write(header);
+    }
+
+    /**
+     * Stops the writer thread, writes the pending records and closes the
+     * stream.
+     *
+     * @throws IOException if the stream cannot be written
+     */
+    public void close() throws IOException {
+        running = false;
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the number of recorded ticks, including the dropped ones.
+     *
+     * @return the number of ticks
+     */
+    public long getRecorded() {
+        return sequence;
+    }
+
+    /**
+     * Returns the number of records that were dropped because the ring buffer
+     * was full.
+     *
+     * @return the number of dropped records
+     */
+    public long getDropped() {
+        return dropped;
+    }
+}
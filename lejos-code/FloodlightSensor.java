@@ -0,0 +1,16 @@
+/**
+ * The {@code FloodlightSensor} interface describes a light sensor whose lamp
+ * can be switched. With the lamp on it reads the reflected light of the lamp
+ * plus the ambient light, with the lamp off the ambient light only.
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public interface FloodlightSensor extends LineSensor {
+    /**
+     * Switches the lamp of the sensor.
+     *
+     * @param on true to switch the lamp on
+     */
+    void setFloodlight(boolean on);
+}
@@ -0,0 +1,129 @@
+/**
+ * The {@code JunctionDetector} class tells the junctions of a track network
+ * from the bars of the track markers. Three sensors in a row only see a
+ * junction where a line crosses the whole row, so a junction reads like a
+ * single narrow bar: it is confirmed when a bar no wider than the largest
+ * junction width is followed and preceded by a clearance without any other
+ * bar. The bars of a marker are closer together, so they never count as a
+ * junction.
+ *
+ * A sample is part of a bar when even the brightest of the three readings
+ * is below a level a little above the black threshold. A narrow line blurs
+ * in the light spots of the sensors and rarely reads fully black, so this
+ * finds junctions the classifier does not see as a crossing. A bar ends
+ * after two samples above the level in a row, so a single noisy sample does
+ * not split it. The bars are measured with the odometry, so the detection
+ * reads the same at every speed.
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public class JunctionDetector {
+    /**
+     * Number of samples in a row above the level that end a bar.
+     */
+    private static final int END_SAMPLES = 2;
+
+    private final double maxWidth;
+    private final double clearance;
+    private int level;
+
+    private boolean onBar = false;
+    private int brightSamples;
+    private double candidateEnd;
+    private double barStart;
+    private double barEnd = Double.NEGATIVE_INFINITY;
+    private boolean pending = false;
+    private double center;
+    private int junctions;
+
+    /**
+     * Constructs a detector.
+     *
+     * @param maxWidth  the widest bar that can be a junction in millimeters
+     * @param clearance the distance before and behind a junction without
+     *                  another bar in millimeters
+     */
+    public JunctionDetector(double maxWidth, double clearance) {
+        this.maxWidth = maxWidth;
+        this.clearance = clearance;
+    }
+
+    /**
+     * Sets the level below which the brightest reading is part of a bar.
+     *
+     * @param level the light value
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    /**
+     * Forgets the bars seen so far, for example when the robot leaves the
+     * line.
+     */
+    public void reset() {
+        onBar = false;
+        brightSamples = 0;
+        barEnd = Double.NEGATIVE_INFINITY;
+        pending = false;
+    }
+
+    /**
+     * Feeds one sample.
+     *
+     * @param brightest the brightest of the three readings
+     * @param distance  the travelled distance of the odometry in millimeters
+     * @return true if a junction was confirmed with this sample, its center
+     *         is returned by {@link #getCenter()}
+     */
+    public boolean update(int brightest, double distance) {
+        if (brightest < level) {
+            brightSamples = 0;
+            if (!onBar) {
+                onBar = true;
+                // Another bar within the clearance is part of a marker
+                pending = false;
+                barStart = distance;
+            }
+            return false;
+        }
+        if (onBar) {
+            // The bar ended where the first bright sample was seen
+            if (brightSamples == 0) {
+                candidateEnd = distance;
+            }
+            if (++brightSamples < END_SAMPLES) {
+                return false;
+            }
+            onBar = false;
+            pending = barStart - barEnd >= clearance && candidateEnd - barStart <= maxWidth;
+            barEnd = candidateEnd;
+        }
+        if (pending && distance - barEnd >= clearance) {
+            pending = false;
+            center = (barStart + barEnd) / 2;
+            junctions++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns where the sensors crossed the center of the last junction.
+     *
+     * @return the travelled distance of the odometry in millimeters
+     */
+    public double getCenter() {
+        return center;
+    }
+
+    /**
+     * Returns the number of detected junctions.
+     *
+     * @return the number of junctions
+     */
+    public int getJunctions() {
+        return junctions;
+    }
+}
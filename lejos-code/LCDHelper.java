@@ -1,9 +1,5 @@
 
 
-import java.util.StringTokenizer;
-import java.util.HashSet;
-import java.util.Set;
-
 import lejos.nxt.LCD;
 
 /**
@@ -11,8 +7,11 @@ import lejos.nxt.LCD;
  * LCD screen. It supports displaying messages with optional centering and
  * handles word wrapping.
  * 
+ * All output goes through a {@link TextScreen} back buffer, so only the
+ * characters that changed since the last update are drawn.
+ * 
  * @author leonweimann
- * @version 1.5
+ * @version 1.6
  */
 public class LCDHelper {
     /**
@@ -24,11 +23,15 @@ public class LCDHelper {
     }
 
     /**
-     * A static variable to hold the current string displayed or processed by the
-     * LCDHelper.
+     * The back buffer of the LCD.
      */
-    private static String currentString = "";
-    private static Set<Integer> appendedItems = new HashSet<>();
+    private static final TextScreen screen = new TextScreen(LCD.DISPLAY_CHAR_WIDTH, LCD.DISPLAY_CHAR_DEPTH,
+            new TextScreen.Output() {
+                @Override
+                public void drawChar(char c, int x, int y) {
+                    LCD.drawChar(c, x, y);
+                }
+            });
 
     /**
      * Displays a message on the LCD screen. Handles overflow by wrapping words to
@@ -51,84 +54,59 @@ public class LCDHelper {
      *                screen.
      */
     public static void display(String message, boolean center) {
-        int width = LCD.DISPLAY_CHAR_WIDTH;
-        int height = LCD.DISPLAY_CHAR_DEPTH;
-        int lineCount = 0;
-
-        clear();
-        StringTokenizer tokenizer = new StringTokenizer(message, "\n");
-        while (tokenizer.hasMoreTokens() && lineCount < height) {
-            String msgLine = tokenizer.nextToken();
-            while (msgLine.length() > 0 && lineCount < height) {
-                int endIndex = Math.min(width, msgLine.length());
-                String line = msgLine.substring(0, endIndex);
-
-                // Check if the line ends in the middle of a word
-                if (endIndex < msgLine.length() && msgLine.charAt(endIndex) != ' '
-                        && msgLine.charAt(endIndex - 1) != ' ') {
-                    int lastSpace = line.lastIndexOf(' ');
-                    if (lastSpace != -1) {
-                        line = line.substring(0, lastSpace);
-                        endIndex = lastSpace + 1;
-                    }
-                }
-
-                // Center the line if isCentered is true
-                if (center) {
-                    int padding = (width - line.length()) / 2;
-                    StringBuilder paddedLine = new StringBuilder();
-                    for (int i = 0; i < padding; i++) {
-                        paddedLine.append(' ');
-                    }
-                    paddedLine.append(line);
-                    line = paddedLine.toString();
-                }
-
-                LCD.drawString(line, 0, lineCount);
-                msgLine = msgLine.substring(endIndex).trim();
-                lineCount++;
-            }
-        }
+        screen.display(message, center);
     }
 
     /**
-     * Appends a message to the current display string and updates the display.
+     * Appends a message below the previously appended messages and updates the
+     * display.
      *
      * @param message the message to be added to the display
      * @param center  if true, the message will be centered on the display
      * @param itemNumber the item number to be appended
      */
     public static void appendingToDisplay(String message, boolean center, int itemNumber) {
-        if (!isAllowedToAppend() || appendedItems.contains(itemNumber)) {
-            return;
-        }
+        screen.append(message, center, itemNumber);
+    }
 
-        appendedItems.add(itemNumber);
-        String newMessage = currentString + "\n" + message;
-        display(newMessage, center);
-        currentString = newMessage;
+    /**
+     * Ends a set of appended items and blanks the lines an earlier, longer
+     * set left on the display.
+     */
+    public static void finishAppendedItems() {
+        screen.finishAppendedItems();
     }
 
+    /**
+     * Starts a new set of appended items. Lines that are appended again with
+     * the same content are not redrawn.
+     */
     public static void resetAppendedItems() {
-        appendedItems.clear();
-        clear();
+        screen.resetAppendedItems();
     }
 
     /**
-     * Checks if the current string is allowed to be appended.
+     * Returns the back buffer of the LCD, for example to render from another
+     * thread.
      *
-     * @return true if the current string is not empty, false otherwise.
+     * @return the screen
      */
-    private static boolean isAllowedToAppend() {
-        return currentString != "";
+    public static TextScreen getScreen() {
+        return screen;
     }
 
     /**
      * Clears the LCD display.
-     * This method calls the LCD.clear() method to clear the display.
      */
     public static void clear() {
-        LCD.clear();
-        currentString = "";
+        screen.clear();
+    }
+
+    /**
+     * Forces a full redraw on the next update. Call this after drawing on the
+     * LCD without this class.
+     */
+    public static void invalidate() {
+        screen.invalidate();
     }
 }
@@ -0,0 +1,131 @@
+/**
+ * The {@code LatencyHistogram} class counts durations in buckets of powers of
+ * two microseconds. Recording a value does not allocate, so it can be used in
+ * every control tick.
+ *
+ * Bucket 0 holds durations below 1 us, bucket i holds durations from
+ * 2^(i-1) up to 2^i us and the last bucket holds all longer durations.
+ * Percentiles are therefore estimates that are at most twice the real value.
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public class LatencyHistogram {
+    /**
+     * Number of buckets. The last regular bucket ends at 2^16 us, about 65 ms.
+     */
+    public static final int BUCKETS = 18;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long min;
+    private long max;
+
+    /**
+     * Constructs an empty histogram.
+     */
+    public LatencyHistogram() {
+        reset();
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param micros the duration in microseconds
+     */
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        counts[bucket(micros)]++;
+        count++;
+        sum += micros;
+        if (micros < min) {
+            min = micros;
+        }
+        if (micros > max) {
+            max = micros;
+        }
+    }
+
+    private static int bucket(long micros) {
+        int bucket = 0;
+        while (micros > 0 && bucket < BUCKETS - 1) {
+            micros >>>= 1;
+            bucket++;
+        }
+        return bucket;
+    }
+
+    /**
+     * Removes all recorded durations.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * Estimates a percentile as the upper limit of the bucket that contains
+     * it, but not more than the largest recorded duration.
+     *
+     * @param permille the percentile in thousandths, 500 for the median
+     * @return the estimate in microseconds, 0 without recorded durations
+     */
+    public long percentile(int permille) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (count * permille + 999) / 1000;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return Math.min(upperLimit(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the exclusive upper limit of a bucket.
+     *
+     * @param bucket the bucket index
+     * @return the limit in microseconds, {@code Long.MAX_VALUE} for the last
+     *         bucket
+     */
+    public static long upperLimit(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    public long getCount(int bucket) {
+        return counts[bucket];
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the mean duration.
+     *
+     * @return the mean in microseconds, 0 without recorded durations
+     */
+    public long getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * The {@code Lift} class moves the lift mechanism as a cooperative
+ * {@link Task}, so loads are picked up and dropped while the robot keeps
+ * driving. A move is started with {@link #raise()}, {@link #lower()} or
+ * {@link #toggle()} and each step of the task only checks the tacho count:
+ * the motor is stopped when the target angle is reached, or when the move
+ * takes longer than the timeout, for example because the lift is blocked.
+ *
+ * The down position is the angle of the motor at construction. Stopping
+ * the motor only starts braking and returns at once, see
+ * {@link DriveMotor#stop()}, so a step never waits for the lift and the
+ * drive task keeps its ticks.
+ *
+ * @author leonweimann
+ * @version 1.1
+ */
+public class Lift implements Task {
+    /**
+     * Distance to the target angle in degrees at which a move is finished.
+     */
+    private static final int TOLERANCE = 3;
+
+    private final DriveMotor motor;
+    private final int upAngle;
+    private final int speed;
+    private final long timeout;
+    private final int downCount;
+
+    // Requests from other threads, taken over by the next step
+    private volatile boolean upRequested = false;
+    private volatile boolean requested = false;
+
+    private boolean up = false;
+    private boolean moving = false;
+    private int direction;
+    private long moveStart = -1;
+    private boolean stalled = false;
+    private int moves;
+
+    /**
+     * Constructs a lift in the down position.
+     *
+     * @param motor      the lift motor, turning forward lifts
+     * @param parameters the parameters with the lift angle, speed and timeout
+     */
+    public Lift(DriveMotor motor, ControlParameters parameters) {
+        this.motor = motor;
+        this.upAngle = parameters.liftAngle;
+        this.speed = parameters.liftSpeed;
+        this.timeout = parameters.liftTimeout;
+        this.downCount = motor.getTachoCount();
+    }
+
+    /**
+     * Starts raising the lift. May be called from any thread.
+     */
+    public void raise() {
+        upRequested = true;
+        requested = true;
+    }
+
+    /**
+     * Starts lowering the lift. May be called from any thread.
+     */
+    public void lower() {
+        upRequested = false;
+        requested = true;
+    }
+
+    /**
+     * Starts moving the lift to the other position, for example to drop a
+     * load at the marker where the next one is picked up.
+     */
+    public void toggle() {
+        if (requested ? upRequested : up) {
+            lower();
+        } else {
+            raise();
+        }
+    }
+
+    @Override
+    public boolean step(long now) {
+        if (requested) {
+            requested = false;
+            up = upRequested;
+            direction = up ? 1 : -1;
+            moving = true;
+            stalled = false;
+            moveStart = now;
+            moves++;
+            motor.setSpeed(speed);
+            if (up) {
+                motor.forward();
+            } else {
+                motor.backward();
+            }
+        }
+        if (!moving) {
+            return true;
+        }
+
+        int target = downCount + (up ? upAngle : 0);
+        int remaining = (target - motor.getTachoCount()) * direction;
+        if (remaining <= TOLERANCE) {
+            finishMove();
+        } else if (now - moveStart > timeout) {
+            stalled = true;
+            finishMove();
+        }
+        return true;
+    }
+
+    private void finishMove() {
+        // Returns at once, the motor brakes while the next tasks run
+        motor.stop();
+        moving = false;
+    }
+
+    /**
+     * Stops the lift motor at once, for example when the run ends.
+     */
+    public void stop() {
+        requested = false;
+        if (moving) {
+            finishMove();
+        }
+    }
+
+    /**
+     * Checks if the lift is moving.
+     *
+     * @return true while a move is in progress
+     */
+    public boolean isMoving() {
+        return moving;
+    }
+
+    /**
+     * Checks if the lift is up or on the way up.
+     *
+     * @return true if the last move went up
+     */
+    public boolean isUp() {
+        return up;
+    }
+
+    /**
+     * Checks if the last move timed out before reaching its target.
+     *
+     * @return true if the lift may be blocked
+     */
+    public boolean isStalled() {
+        return stalled;
+    }
+
+    /**
+     * Returns the number of started moves.
+     *
+     * @return the number of moves
+     */
+    public int getMoves() {
+        return moves;
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * The {@code LightLevels} class estimates the black and the white level of
+ * every light sensor while the robot drives. Ambient light adds to the light
+ * a sensor reads from its own lamp, so changes of the lighting along the
+ * track and over the day shift both levels of a sensor alike, and a sensor
+ * with a weaker lamp reads a smaller span between the levels. Every sensor
+ * keeps its own levels, and the {@link LineFollower} maps the black
+ * thresholds of the {@link LineClassifier} and of the marker bars from the
+ * reference levels they were tuned with onto the span of each sensor. The
+ * comparisons between the sensors use differences of readings, which the
+ * shift does not change.
+ *
+ * A sensor is on white when it reads about as bright as the brightest
+ * sensor while another one sees the line. Its white level then moves up
+ * quickly towards brighter readings and decays slowly with darker readings
+ * close to it, every error is clipped, and the black level moves along. On
+ * a crossing or a marker bar every sensor is on black, and the black level
+ * alone moves in small steps towards the median of the readings, which
+ * learns the span of the sensor. Other readings, over the blurred edges of
+ * the line, are skipped.
+ *
+ * The outer sensors see the white floor beside the line most of the time.
+ * The center sensor rides on the line and is only counted on white while an
+ * outer sensor reads black. Between these readings it follows the shift of
+ * the outer sensors, which are a few centimeters away under the same light.
+ *
+ * The estimates run every control tick, so they are kept as integers in
+ * thousandths of a light value, like the weights in the
+ * {@link ControlParameters}.
+ *
+ * @author leonweimann
+ * @version 1.1
+ */
+public class LightLevels {
+    public static final int SENSORS = 3;
+    public static final int LEFT = 0;
+    public static final int RIGHT = 1;
+    public static final int CENTER = 2;
+
+    /**
+     * Scale of the levels, and of the shares and weights.
+     */
+    private static final int SCALE = 1000;
+
+    /**
+     * Share of the span within which a reading is still on the white floor
+     * or on the line, in thousandths.
+     */
+    private static final int BAND = 250;
+
+    /**
+     * Largest error of a single observation, 2 light values.
+     */
+    private static final int CLIP = 2 * SCALE;
+
+    /**
+     * Distance between a level and its last step at which the thresholds
+     * move, 1 light value.
+     */
+    private static final int STEP = SCALE;
+
+    /**
+     * Smallest span, 4 light values, so noise cannot collapse the levels.
+     */
+    private static final int MIN_SPAN = 4 * SCALE;
+
+    /**
+     * Step of the black level per reading on black, 0.01 light values.
+     */
+    private static final int BLACK_STEP = 10;
+
+    /**
+     * Share of the steps of the outer sensors that the own readings of the
+     * center sensor move its levels by, in thousandths.
+     */
+    private static final int CENTER_SHARE = 200;
+
+    private final int referenceBlack;
+    private final int referenceWhite;
+    private final int weight;
+    private final int decay;
+    private final int fluctuationBuffer;
+    private final int maxDifference;
+
+    // Levels in thousandths of a light value, steps in light values
+    private final int[] whites = new int[SENSORS];
+    private final int[] blacks = new int[SENSORS];
+    private final int[] whiteSteps = new int[SENSORS];
+    private final int[] blackSteps = new int[SENSORS];
+
+    /**
+     * Constructs an estimator that starts at the reference levels.
+     *
+     * @param parameters the parameters with the reference levels and the
+     *                   adaptation weight
+     */
+    public LightLevels(ControlParameters parameters) {
+        this.referenceBlack = parameters.referenceBlack;
+        this.referenceWhite = parameters.referenceWhite;
+        this.weight = parameters.levelWeight;
+        this.decay = parameters.levelDecay;
+        this.fluctuationBuffer = parameters.fluctuationBuffer;
+        this.maxDifference = parameters.maxDifference;
+        reset();
+    }
+
+    /**
+     * Forgets the estimates and starts again at the reference levels.
+     */
+    public void reset() {
+        for (int i = 0; i < SENSORS; i++) {
+            whites[i] = referenceWhite * SCALE;
+            blacks[i] = referenceBlack * SCALE;
+            whiteSteps[i] = referenceWhite;
+            blackSteps[i] = referenceBlack;
+        }
+    }
+
+    /**
+     * Updates the estimates with the readings of all sensors.
+     *
+     * The state of the classifier tells if the sensors are on a crossing.
+     *
+     * @param leftReading   the reading of the left sensor
+     * @param rightReading  the reading of the right sensor
+     * @param centerReading the reading of the center sensor
+     * @param state         the state of the {@link LineClassifier}
+     */
+    public void update(int leftReading, int rightReading, int centerReading, int state) {
+        int brightest = Math.max(leftReading, Math.max(rightReading, centerReading));
+        int darkest = Math.min(leftReading, Math.min(rightReading, centerReading));
+        boolean onBlack = state == LineClassifier.CROSSING;
+        // Readings as bright as the brightest one are on white, as long as
+        // another sensor is on the line and the brightest one is not on grey
+        int white = onBlack || brightest - darkest < maxDifference ? Integer.MAX_VALUE
+                : brightest - fluctuationBuffer;
+        int outerWhites = whites[LEFT] + whites[RIGHT];
+        observe(LEFT, leftReading, onBlack, leftReading >= white, SCALE);
+        observe(RIGHT, rightReading, onBlack, rightReading >= white, SCALE);
+
+        // Between its own readings the center sensor follows the outer ones
+        int shift = (whites[LEFT] + whites[RIGHT] - outerWhites) / 2;
+        whites[CENTER] += shift;
+        blacks[CENTER] += shift;
+        boolean centerOnWhite = centerReading >= white
+                && (isOnLine(LEFT, leftReading) || isOnLine(RIGHT, rightReading));
+        observe(CENTER, centerReading, onBlack, centerOnWhite, CENTER_SHARE);
+
+        for (int i = 0; i < SENSORS; i++) {
+            if (Math.abs(whites[i] - whiteSteps[i] * SCALE) >= STEP) {
+                whiteSteps[i] = roundDiv(whites[i], SCALE);
+            }
+            if (Math.abs(blacks[i] - blackSteps[i] * SCALE) >= STEP) {
+                blackSteps[i] = roundDiv(blacks[i], SCALE);
+            }
+        }
+    }
+
+    /**
+     * Checks if a reading is close to the black level of its sensor.
+     */
+    private boolean isOnLine(int sensor, int reading) {
+        return reading * SCALE < blacks[sensor] + BAND * (whites[sensor] - blacks[sensor]) / SCALE;
+    }
+
+    /**
+     * Moves the white level of a sensor quickly up towards a brighter
+     * reading on white and slowly down with a darker one close to it, and
+     * the black level along with it. A reading on black moves the black
+     * level alone, in small steps towards the median, which sets the span.
+     *
+     * @param share the share of the step in thousandths
+     */
+    private void observe(int sensor, int reading, boolean onBlack, boolean onWhite, int share) {
+        int level = reading * SCALE;
+        if (onBlack) {
+            int step = level > blacks[sensor] ? BLACK_STEP : level < blacks[sensor] ? -BLACK_STEP : 0;
+            blacks[sensor] = Math.min(blacks[sensor] + share * step / SCALE, whites[sensor] - MIN_SPAN);
+        } else if (onWhite) {
+            int error = level - whites[sensor];
+            int step = 0;
+            if (error > 0) {
+                step = weight * Math.min(CLIP, error) / SCALE;
+            } else if (error > -BAND * (whites[sensor] - blacks[sensor]) / SCALE) {
+                step = -decay;
+            }
+            whites[sensor] += share * step / SCALE;
+            blacks[sensor] += share * step / SCALE;
+        }
+    }
+
+    /**
+     * Divides and rounds half up like {@code Math.round}, also for negative
+     * values.
+     */
+    private static int roundDiv(int dividend, int divisor) {
+        int twice = 2 * dividend + divisor;
+        int twiceDivisor = 2 * divisor;
+        return twice >= 0 ? twice / twiceDivisor : -((twiceDivisor - 1 - twice) / twiceDivisor);
+    }
+
+    /**
+     * Converts a threshold on the reference levels into the light values a
+     * sensor currently reads, for example the black threshold of the
+     * classifier. The threshold keeps its place between the black and the
+     * white level. The levels move in whole steps, only when an estimate is
+     * a full light value away from the last step, so the noise of the
+     * estimate does not make the thresholds flicker.
+     *
+     * @param sensor    the sensor, one of {@link #LEFT}, {@link #RIGHT} and
+     *                  {@link #CENTER}
+     * @param threshold the threshold on the reference levels
+     * @return the threshold for the readings of the sensor
+     */
+    public int toSensor(int sensor, int threshold) {
+        int black = blackSteps[sensor];
+        return black + roundDiv((threshold - referenceBlack) * (whiteSteps[sensor] - black),
+                referenceWhite - referenceBlack);
+    }
+
+    /**
+     * Returns the estimated black level of a sensor.
+     *
+     * @param sensor the sensor
+     * @return the light value over black
+     */
+    public double getBlack(int sensor) {
+        return (double) blacks[sensor] / SCALE;
+    }
+
+    /**
+     * Returns the estimated white level of a sensor.
+     *
+     * @param sensor the sensor
+     * @return the light value over white
+     */
+    public double getWhite(int sensor) {
+        return (double) whites[sensor] / SCALE;
+    }
+
+    /**
+     * Describes the estimated levels in one line.
+     *
+     * @return the levels
+     */
+    public String summary() {
+        return "Light levels: left " + format(LEFT) + ", right " + format(RIGHT) + ", center " + format(CENTER);
+    }
+
+    private String format(int sensor) {
+        return Math.round(getBlack(sensor)) + ".." + Math.round(getWhite(sensor));
+    }
+}
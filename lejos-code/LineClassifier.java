@@ -0,0 +1,239 @@
+
+
+/**
+ * The {@code LineClassifier} class turns the three light readings into a
+ * single state code that all decisions of the control logic share.
+ * 
+ * Every reading is quantised once into a level by how much darker it is than
+ * the brightest of the three readings: {@link #LEVEL_SAME} up to the
+ * fluctuation buffer, {@link #LEVEL_GREY} up to the maximum difference and
+ * {@link #LEVEL_DARK} beyond. Sensors on the same darkest level are told
+ * apart by their readings: only the darkest reading keeps the level, the
+ * others drop one level. The three levels index a precomputed table of
+ * states. Readings that are all below the black threshold and close to each
+ * other are a crossing.
+ * 
+ * The rules live in the table, so they can be changed with
+ * {@link #setRule(int, int, int, int)} without touching the code.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public class LineClassifier {
+    // States
+    public static final int LOST = 0;
+    public static final int CENTERED = 1;
+    public static final int LINE_LEFT = 2;
+    public static final int LINE_RIGHT = 3;
+    public static final int CROSSING = 4;
+    public static final int AMBIGUOUS = 5;
+
+    // Levels of a single reading
+    public static final int LEVEL_SAME = 0;
+    public static final int LEVEL_GREY = 1;
+    public static final int LEVEL_DARK = 2;
+
+    private static final int LEVELS = 3;
+
+    /**
+     * Index of the crossing entry behind the level combinations.
+     */
+    private static final int CROSSING_INDEX = LEVELS * LEVELS * LEVELS;
+
+    private final byte[] table = new byte[CROSSING_INDEX + 1];
+
+    private int fluctuationBuffer;
+    private int maxDifference;
+    private int leftBlackThreshold;
+    private int rightBlackThreshold;
+    private int centerBlackThreshold;
+
+    /**
+     * Constructs a classifier with the thresholds and default rules of the
+     * given parameters.
+     *
+     * @param parameters the parameters providing the fluctuation buffer, the
+     *                   maximum difference and the black threshold
+     */
+    public LineClassifier(ControlParameters parameters) {
+        setThresholds(parameters.fluctuationBuffer, parameters.maxDifference, parameters.blackThreshold);
+
+        for (int left = 0; left < LEVELS; left++) {
+            for (int center = 0; center < LEVELS; center++) {
+                for (int right = 0; right < LEVELS; right++) {
+                    setRule(left, center, right, defaultRule(left, center, right));
+                }
+            }
+        }
+        table[CROSSING_INDEX] = CROSSING;
+    }
+
+    /**
+     * Derives the default state of a level combination: the line is lost
+     * until a sensor is dark, then it is below the darkest sensor, two
+     * adjacent darkest sensors count as centered and the two outer ones as
+     * ambiguous.
+     */
+    private static int defaultRule(int left, int center, int right) {
+        int darkest = Math.max(left, Math.max(center, right));
+        if (darkest == LEVEL_SAME) {
+            return LOST;
+        }
+
+        boolean leftDarkest = left == darkest;
+        boolean centerDarkest = center == darkest;
+        boolean rightDarkest = right == darkest;
+        if (leftDarkest && rightDarkest) {
+            return centerDarkest ? LOST : AMBIGUOUS;
+        } else if (leftDarkest && !centerDarkest) {
+            return LINE_LEFT;
+        } else if (rightDarkest && !centerDarkest) {
+            return LINE_RIGHT;
+        }
+        return CENTERED;
+    }
+
+    /**
+     * Sets the thresholds of the quantisation.
+     *
+     * @param fluctuationBuffer the largest difference to the brightest reading
+     *                          that counts as the same
+     * @param maxDifference     the smallest difference to the brightest
+     *                          reading that counts as dark
+     * @param blackThreshold    the light value below which all sensors count
+     *                          as black
+     */
+    public void setThresholds(int fluctuationBuffer, int maxDifference, int blackThreshold) {
+        this.fluctuationBuffer = fluctuationBuffer;
+        this.maxDifference = maxDifference;
+        setBlackThresholds(blackThreshold, blackThreshold, blackThreshold);
+    }
+
+    /**
+     * Sets a black threshold for every sensor, for sensors that read black at
+     * different light values. A crossing needs every reading below its
+     * threshold.
+     *
+     * @param left   the threshold of the left sensor
+     * @param right  the threshold of the right sensor
+     * @param center the threshold of the center sensor
+     */
+    public void setBlackThresholds(int left, int right, int center) {
+        this.leftBlackThreshold = left;
+        this.rightBlackThreshold = right;
+        this.centerBlackThreshold = center;
+    }
+
+    /**
+     * Sets the state of a level combination.
+     *
+     * @param left   the level of the left reading
+     * @param center the level of the center reading
+     * @param right  the level of the right reading
+     * @param state  the state
+     */
+    public void setRule(int left, int center, int right, int state) {
+        table[index(left, center, right)] = (byte) state;
+    }
+
+    /**
+     * Returns the state of a level combination.
+     *
+     * @param left   the level of the left reading
+     * @param center the level of the center reading
+     * @param right  the level of the right reading
+     * @return the state
+     */
+    public int getRule(int left, int center, int right) {
+        return table[index(left, center, right)];
+    }
+
+    private static int index(int left, int center, int right) {
+        return (left * LEVELS + center) * LEVELS + right;
+    }
+
+    /**
+     * Classifies a set of readings.
+     *
+     * @param left   the left reading
+     * @param right  the right reading
+     * @param center the center reading
+     * @return the state
+     */
+    public int classify(int left, int right, int center) {
+        int brightest = Math.max(left, Math.max(right, center));
+        int leftLevel = quantize(brightest - left);
+        int centerLevel = quantize(brightest - center);
+        int rightLevel = quantize(brightest - right);
+
+        if (left < leftBlackThreshold && right < rightBlackThreshold && center < centerBlackThreshold
+                && leftLevel != LEVEL_DARK && centerLevel != LEVEL_DARK && rightLevel != LEVEL_DARK) {
+            return table[CROSSING_INDEX];
+        }
+
+        // Sensors that share the darkest level are told apart by their
+        // readings, only the darkest reading keeps the level
+        int darkestLevel = Math.max(leftLevel, Math.max(centerLevel, rightLevel));
+        if (darkestLevel != LEVEL_SAME) {
+            int darkest = Math.min(left, Math.min(right, center));
+            if (leftLevel == darkestLevel && left != darkest) {
+                leftLevel--;
+            }
+            if (centerLevel == darkestLevel && center != darkest) {
+                centerLevel--;
+            }
+            if (rightLevel == darkestLevel && right != darkest) {
+                rightLevel--;
+            }
+        }
+        return table[index(leftLevel, centerLevel, rightLevel)];
+    }
+
+    /**
+     * Quantises how much darker a reading is than the brightest reading.
+     *
+     * @param darkness the difference to the brightest reading
+     * @return the level
+     */
+    public int quantize(int darkness) {
+        if (darkness <= fluctuationBuffer) {
+            return LEVEL_SAME;
+        }
+        return darkness < maxDifference ? LEVEL_GREY : LEVEL_DARK;
+    }
+
+    /**
+     * Checks if a state means that the robot sees the line.
+     *
+     * @param state the state
+     * @return true for centered, line left, line right and crossing
+     */
+    public static boolean seesLine(int state) {
+        return state == CENTERED || state == LINE_LEFT || state == LINE_RIGHT || state == CROSSING;
+    }
+
+    /**
+     * Returns a short name of a state for the display.
+     *
+     * @param state the state
+     * @return the name
+     */
+    public static String stateName(int state) {
+        switch (state) {
+            case LOST:
+                return "LOST";
+            case CENTERED:
+                return "CENTERED";
+            case LINE_LEFT:
+                return "LINE LEFT";
+            case LINE_RIGHT:
+                return "LINE RIGHT";
+            case CROSSING:
+                return "CROSSING";
+            case AMBIGUOUS:
+                return "AMBIGUOUS";
+            default:
+                return "?";
+        }
+    }
+}
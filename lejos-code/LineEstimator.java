@@ -0,0 +1,186 @@
+/**
+ * The {@code LineEstimator} class tracks the line relative to the sensor bar
+ * with a Kalman filter. Its state is the lateral offset of the line from the
+ * center sensor and the angle of the line relative to the heading of the
+ * robot. Between readings the state is predicted from the odometry, each
+ * reading that sees the line corrects the offset and, through the
+ * covariance, the angle.
+ *
+ * Positive offsets and angles point to the right of the robot. The line is
+ * assumed to be straight, curves enter as process noise of the angle.
+ *
+ * The filter works with integers only, like the {@link PidController},
+ * because the ARM7 of the NXT has no floating point unit. Offsets are kept in
+ * micrometers and angles in microradians, the covariances in longs of the
+ * products of these units. The angle of the line stays within a few degrees
+ * while following, so the sine of the angle is taken as the angle and the
+ * cosine as 1.
+ *
+ * @author leonweimann
+ * @version 1.1
+ */
+public class LineEstimator {
+    /**
+     * Micrometers per millimeter.
+     */
+    public static final int MICROMETERS = 1000;
+
+    /**
+     * Microradians per radian.
+     */
+    public static final int MICRORADIANS = 1000000;
+
+    /**
+     * Scale of the Kalman gains.
+     */
+    private static final int GAIN_SHIFT = 16;
+    private static final long GAIN_ONE = 1L << GAIN_SHIFT;
+
+    /**
+     * Variance of a measured offset, 40 square millimeters.
+     */
+    private static final long MEASUREMENT_VARIANCE = 40000000L;
+
+    /**
+     * Growth of the offset variance per micrometer driven, 0.05 square
+     * millimeters per millimeter.
+     */
+    private static final long OFFSET_NOISE = 50;
+
+    /**
+     * Growth of the angle variance per micrometer driven, 0.0004 square
+     * radians per millimeter. Covers the curvature of the track.
+     */
+    private static final long ANGLE_NOISE = 400000;
+
+    /**
+     * Variance of the angle after a reset, about 0.5 rad squared. The angle
+     * variance does not grow beyond it.
+     */
+    private static final long INITIAL_ANGLE_VARIANCE = 250000000000L;
+
+    /**
+     * Largest variance of the offset, a standard deviation of 1 m. Beyond it
+     * the estimate is meaningless and the covariance is restarted, which
+     * keeps the products of the filter within a long.
+     */
+    private static final long MAX_OFFSET_VARIANCE = 1000000000000L;
+
+    private final int sensorForward;
+
+    private int offset;
+    private int angle;
+
+    // Covariance of offset and angle
+    private long pOffset;
+    private long pCross;
+    private long pAngle;
+
+    /**
+     * Constructs an estimator.
+     *
+     * @param sensorForward the distance of the sensor bar in front of the
+     *                      wheel axle in millimeters
+     */
+    public LineEstimator(int sensorForward) {
+        this.sensorForward = sensorForward;
+        reset(0);
+    }
+
+    /**
+     * Forgets the angle and sets the offset, for example after the line was
+     * found again.
+     *
+     * @param newOffset the offset in micrometers
+     */
+    public void reset(int newOffset) {
+        offset = newOffset;
+        angle = 0;
+        pOffset = MEASUREMENT_VARIANCE;
+        pCross = 0;
+        pAngle = INITIAL_ANGLE_VARIANCE;
+    }
+
+    /**
+     * Moves the estimate along with the robot.
+     *
+     * @param distance the distance driven in micrometers
+     * @param turn     the turn in microradians, positive when turning left
+     */
+    public void predict(int distance, int turn) {
+        // Turning left rotates the line and swings the sensor bar to the left
+        angle += turn;
+        offset += (int) (((long) distance * angle + (long) sensorForward * MICROMETERS * turn) / MICRORADIANS);
+
+        long travelled = Math.abs(distance);
+        long slopeCross = distance * pCross / MICRORADIANS;
+        long slopeAngle = distance * pAngle / MICRORADIANS;
+        pOffset += 2 * slopeCross + distance * slopeAngle / MICRORADIANS + OFFSET_NOISE * travelled;
+        pCross += slopeAngle;
+        pAngle = Math.min(INITIAL_ANGLE_VARIANCE, pAngle + ANGLE_NOISE * travelled);
+        if (pOffset > MAX_OFFSET_VARIANCE) {
+            pOffset = MAX_OFFSET_VARIANCE;
+            pCross = 0;
+        }
+    }
+
+    /**
+     * Corrects the estimate with a measured offset.
+     *
+     * @param measured the offset of the line in micrometers
+     */
+    public void correct(int measured) {
+        long innovation = measured - offset;
+        long s = pOffset + MEASUREMENT_VARIANCE;
+        long gainOffset = (pOffset << GAIN_SHIFT) / s;
+        long gainAngle = (pCross << GAIN_SHIFT) / s;
+
+        offset += (int) (gainOffset * innovation >> GAIN_SHIFT);
+        angle += (int) (gainAngle * innovation >> GAIN_SHIFT);
+
+        pAngle -= gainAngle * pCross >> GAIN_SHIFT;
+        pCross = (GAIN_ONE - gainOffset) * pCross >> GAIN_SHIFT;
+        pOffset = (GAIN_ONE - gainOffset) * pOffset >> GAIN_SHIFT;
+    }
+
+    /**
+     * Tells the estimator that no sensor sees the line. The offset is moved
+     * out to at least the given distance on the side the line was estimated.
+     *
+     * @param minimumOffset the smallest possible offset in micrometers
+     */
+    public void outside(int minimumOffset) {
+        if (Math.abs(offset) < minimumOffset) {
+            offset = offset < 0 ? -minimumOffset : minimumOffset;
+        }
+    }
+
+    /**
+     * Returns the offset of the line after driving the given distance on the
+     * current heading.
+     *
+     * @param distance the distance in millimeters
+     * @return the offset in micrometers
+     */
+    public int offsetAhead(int distance) {
+        return offset + (int) ((long) distance * MICROMETERS * angle / MICRORADIANS);
+    }
+
+    /**
+     * Returns the offset of the line.
+     *
+     * @return the offset in micrometers
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the angle of the line.
+     *
+     * @return the angle in microradians, positive to the right
+     */
+    public int getAngle() {
+        return angle;
+    }
+}
@@ -0,0 +1,1005 @@
+
+
+/**
+ * The {@code LineFollower} class contains the control logic of the robot. It
+ * only talks to the hardware interfaces, so the same code runs on the brick and
+ * in the simulator.
+ * 
+ * @author leonweimann
+ * @version 1.1
+ */
+public class LineFollower implements Task {
+    /**
+     * Number of samples kept for history-based decisions.
+     */
+    private static final int HISTORY_SIZE = 16;
+
+    // Directions of the last turn
+    private static final int TURNED_LEFT = -1;
+    private static final int NOT_TURNED = 0;
+    private static final int TURNED_RIGHT = 1;
+
+    /**
+     * Line position when the line is directly below the left or right sensor.
+     */
+    private static final int SENSOR_POSITION = 1000;
+
+    /**
+     * Line position assumed when the line is lost, beyond the outer sensor on
+     * the side it was last seen.
+     */
+    private static final int LOST_POSITION = 1500;
+
+    /**
+     * Line position beyond which the PID steering reports a turn.
+     */
+    private static final int TURN_LABEL_POSITION = 300;
+
+    /**
+     * Highest motor speed the steering commands in degrees per second.
+     */
+    private static final int MAX_SPEED = 900;
+
+    // Modes of the control loop
+    public static final int MODE_FOLLOWING = 0;
+    public static final int MODE_BACKING_OFF = 1;
+    public static final int MODE_TURNING_AROUND = 2;
+    public static final int MODE_SWEEP_RIGHT = 3;
+    public static final int MODE_SWEEP_LEFT = 4;
+    public static final int MODE_REALIGN = 5;
+    public static final int MODE_SEARCH_FORWARD = 6;
+    public static final int MODE_FINISHED = 7;
+    public static final int MODE_SEARCH_BACKWARD = 8;
+    public static final int MODE_JUNCTION_TURN = 9;
+
+    private final LineSensor leftSensor;
+    private final LineSensor rightSensor;
+    private final LineSensor centerSensor;
+
+    private final BumpSensor touchSensor;
+
+    private final Clock clock;
+    private final StatusDisplay display;
+    private final ControlParameters parameters;
+    private final ControlScheduler scheduler;
+    private final Drivetrain drivetrain;
+    private final Odometry odometry;
+    private final LineEstimator estimator;
+    private final TrackMap trackMap = new TrackMap();
+    private final LineSearch lineSearch;
+    private final LightLevels lightLevels;
+    private final MarkerRecognizer markers;
+    private MarkerListener markerListener;
+    private final JunctionDetector junctions;
+    private Navigator navigator;
+    private boolean inSlowZone = false;
+    private volatile boolean abortRequested = false;
+    private SensorSampler sampler;
+    private FlightRecorder recorder;
+    private TelemetryStreamer telemetry;
+    private LoopProfiler profiler;
+
+    // Wheel angles read with the current samples
+    private int leftAngle;
+    private int rightAngle;
+    private final PidController pid;
+    private final LineClassifier classifier;
+
+    private final SampleBuffer samples = new SampleBuffer(HISTORY_SIZE);
+    private final ControlStatus status = new ControlStatus();
+
+    private int lineState = LineClassifier.LOST;
+    private int lastTurn = NOT_TURNED;
+    private int lastPosition = 0;
+    private boolean madeRotatingTask = false;
+
+    private int mode = MODE_FOLLOWING;
+    private long modeStartTime = 0;
+    private boolean lostLineInMode = false;
+    private long lostSince = -1;
+    private boolean lineSeenLeft = false;
+    private double lineSeenHeading = 0;
+
+    // Turn at a junction of the track network
+    private int junctionTurn;
+    private double junctionCenter;
+    private boolean spinning = false;
+    private double spinHeading;
+
+    /**
+     * Constructs a LineFollower on top of the given hardware with the default
+     * parameters.
+     *
+     * @param leftSensor   the left light sensor
+     * @param rightSensor  the right light sensor
+     * @param centerSensor the center light sensor
+     * @param leftMotor    the left wheel motor
+     * @param rightMotor   the right wheel motor
+     * @param touchSensor  the front touch sensor
+     * @param clock        the time source
+     * @param display      the display for status snapshots
+     */
+    public LineFollower(LineSensor leftSensor, LineSensor rightSensor, LineSensor centerSensor,
+            DriveMotor leftMotor, DriveMotor rightMotor, BumpSensor touchSensor, Clock clock,
+            StatusDisplay display) {
+        this(leftSensor, rightSensor, centerSensor, leftMotor, rightMotor, touchSensor, clock, display,
+                new ControlParameters());
+    }
+
+    /**
+     * Constructs a LineFollower on top of the given hardware.
+     *
+     * @param leftSensor   the left light sensor
+     * @param rightSensor  the right light sensor
+     * @param centerSensor the center light sensor
+     * @param leftMotor    the left wheel motor
+     * @param rightMotor   the right wheel motor
+     * @param touchSensor  the front touch sensor
+     * @param clock        the time source
+     * @param display      the display for status snapshots
+     * @param parameters   the tuning parameters
+     */
+    public LineFollower(LineSensor leftSensor, LineSensor rightSensor, LineSensor centerSensor,
+            DriveMotor leftMotor, DriveMotor rightMotor, BumpSensor touchSensor, Clock clock,
+            StatusDisplay display, ControlParameters parameters) {
+        this.leftSensor = leftSensor;
+        this.rightSensor = rightSensor;
+        this.centerSensor = centerSensor;
+        this.touchSensor = touchSensor;
+        this.clock = clock;
+        this.display = display;
+        this.parameters = parameters;
+        this.scheduler = new ControlScheduler(clock, parameters.executionFrequency,
+                ControlScheduler.OverrunPolicy.SKIP);
+        this.pid = new PidController(parameters.pidKp, parameters.pidKi, parameters.pidKd,
+                parameters.pidIntegralLimit);
+        this.classifier = new LineClassifier(parameters);
+        // The motors are mounted reversed, running backward drives forward
+        this.drivetrain = new Drivetrain(leftMotor, rightMotor, true, clock, parameters.acceleration,
+                parameters.deceleration);
+        this.odometry = new Odometry(parameters.wheelDiameter, parameters.wheelBase);
+        // Only the line search needs the position, see startSearch()
+        odometry.setTrackingPosition(false);
+        this.estimator = new LineEstimator(parameters.sensorForward);
+        this.lineSearch = new LineSearch(parameters);
+        this.lightLevels = new LightLevels(parameters);
+        this.markers = new MarkerRecognizer();
+        markers.setHoldLevel(parameters.blackThreshold + parameters.fluctuationBuffer);
+        markers.setHoldDistance(parameters.sensorSpacing);
+        this.junctions = new JunctionDetector(parameters.junctionMaxWidth, parameters.junctionClearance);
+        junctions.setLevel(parameters.blackThreshold + parameters.fluctuationBuffer);
+    }
+
+    /**
+     * Runs the control loop until the robot touches an obstacle for the second
+     * time or the run is aborted.
+     */
+    public void run() {
+        if (isFinished()) {
+            drivetrain.stopNow();
+            return;
+        }
+        do {
+            scheduler.awaitNextTick();
+        } while (step(clock.currentTimeMillis()));
+    }
+
+    /**
+     * Runs one control tick as a task of a {@link TaskExecutor} driven by
+     * the scheduler of this line follower, see {@link #getScheduler()}.
+     *
+     * @param now the start time of the tick in milliseconds
+     * @return false when the run is finished and the robot stopped
+     */
+    @Override
+    public boolean step(long now) {
+        if (abortRequested) {
+            enterMode(MODE_FINISHED);
+        } else {
+            controlTick();
+        }
+        if (isFinished()) {
+            drivetrain.stopNow();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Asks the control loop to stop the robot and return from {@link #run()}
+     * at its next tick. May be called from any thread, for example from a
+     * button action.
+     */
+    public void abort() {
+        abortRequested = true;
+    }
+
+    /**
+     * Samples the sensors, steers the robot and publishes the status. A
+     * control tick runs without allocating any objects.
+     * 
+     * Recovery maneuvers after a bump and the line search are steps of a state
+     * machine that advances once per tick, so the sensors are sampled during
+     * the whole maneuver and it ends as soon as the line is seen again.
+     */
+    public void controlTick() {
+        if (profiler != null) {
+            profiler.beginTick(scheduler.getLastLateness());
+        }
+        readSamples();
+        int marker = MarkerRecognizer.NO_MARKER;
+        boolean junction = false;
+        if (mode == MODE_FOLLOWING) {
+            marker = readMarkers();
+            junction = detectJunction();
+        }
+        publishSamples();
+        rememberLine();
+
+        boolean touched = false;
+        if (mode == MODE_FOLLOWING) {
+            touched = isTouching();
+            if (touched) {
+                if (madeRotatingTask) {
+                    enterMode(MODE_FINISHED);
+                    stop();
+                } else {
+                    madeRotatingTask = true;
+                    enterMode(MODE_BACKING_OFF);
+                    moveBackward();
+                }
+            } else if (lostTooLong()) {
+                startSearch();
+            } else {
+                learnTrack();
+                if (junction) {
+                    passJunction(junctions.getCenter());
+                }
+                actOnMarker(marker);
+                if (mode == MODE_FOLLOWING) {
+                    followLine();
+                }
+            }
+        } else if (mode != MODE_FINISHED) {
+            recover();
+        }
+        endPhase(LoopProfiler.PHASE_DECIDE);
+
+        drivetrain.update();
+        endPhase(LoopProfiler.PHASE_ACTUATE);
+
+        display.publish(status);
+        if (recorder != null || telemetry != null) {
+            int leftVelocity = drivetrain.getLeftVelocity();
+            int rightVelocity = drivetrain.getRightVelocity();
+            long lateness = scheduler.getLastLateness();
+            long duration = clock.currentTimeMillis() - status.timestamp;
+            if (recorder != null) {
+                recorder.record(status, mode, touched, leftVelocity, rightVelocity, lateness, duration, leftAngle,
+                        rightAngle);
+            }
+            if (telemetry != null) {
+                telemetry.record(status, mode, touched, leftVelocity, rightVelocity, lateness, duration, leftAngle,
+                        rightAngle);
+            }
+        }
+        if (profiler != null) {
+            profiler.endPhase(LoopProfiler.PHASE_DISPLAY);
+            profiler.endTick();
+        }
+    }
+
+    private void endPhase(int phase) {
+        if (profiler != null) {
+            profiler.endPhase(phase);
+        }
+    }
+
+    /**
+     * Sets the profiler that measures the phases of every control tick.
+     *
+     * @param profiler the profiler, or null to stop profiling
+     */
+    public void setProfiler(LoopProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Returns a short name of a mode for logs.
+     *
+     * @param mode the mode
+     * @return the name
+     */
+    public static String modeName(int mode) {
+        switch (mode) {
+            case MODE_FOLLOWING:
+                return "FOLLOWING";
+            case MODE_BACKING_OFF:
+                return "BACKING OFF";
+            case MODE_TURNING_AROUND:
+                return "TURNING AROUND";
+            case MODE_SWEEP_RIGHT:
+                return "SWEEP RIGHT";
+            case MODE_SWEEP_LEFT:
+                return "SWEEP LEFT";
+            case MODE_REALIGN:
+                return "REALIGN";
+            case MODE_SEARCH_FORWARD:
+                return "SEARCH FORWARD";
+            case MODE_FINISHED:
+                return "FINISHED";
+            case MODE_SEARCH_BACKWARD:
+                return "SEARCH BACKWARD";
+            case MODE_JUNCTION_TURN:
+                return "JUNCTION TURN";
+            default:
+                return "?";
+        }
+    }
+
+    /**
+     * Sets the sampler the light sensors read from. Every tick latches a
+     * snapshot of its latest round before the sensors are read, so the
+     * readings of a tick belong to the same round.
+     *
+     * @param sampler the sampler, or null if the sensors are read directly
+     */
+    public void setSampler(SensorSampler sampler) {
+        this.sampler = sampler;
+    }
+
+    /**
+     * Sets the flight recorder that records every control tick.
+     *
+     * @param recorder the recorder, or null to stop recording
+     */
+    public void setRecorder(FlightRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Sets the streamer that sends every control tick to a PC.
+     *
+     * @param telemetry the streamer, or null to stop streaming
+     */
+    public void setTelemetry(TelemetryStreamer telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * Returns the current mode of the control loop.
+     *
+     * @return one of the {@code MODE_} constants
+     */
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * Checks if the run is over.
+     *
+     * @return true after the second bump, false otherwise
+     */
+    public boolean isFinished() {
+        return mode == MODE_FINISHED;
+    }
+
+    /**
+     * Returns the history of the sensor readings.
+     *
+     * @return the sample buffer
+     */
+    public SampleBuffer getSamples() {
+        return samples;
+    }
+
+    /**
+     * Returns the odometry of the robot. Its position only moves during the
+     * line search.
+     *
+     * @return the odometry
+     */
+    public Odometry getOdometry() {
+        return odometry;
+    }
+
+    /**
+     * Returns the drivetrain for inspecting its command counters.
+     *
+     * @return the drivetrain
+     */
+    public Drivetrain getDrivetrain() {
+        return drivetrain;
+    }
+
+    /**
+     * Returns the scheduler of the control loop for inspecting its statistics.
+     *
+     * @return the scheduler
+     */
+    public ControlScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Returns the planner of the line search with its time-to-reacquire
+     * statistics.
+     *
+     * @return the line search
+     */
+    public LineSearch getLineSearch() {
+        return lineSearch;
+    }
+
+    /**
+     * Returns the estimator of the light levels, for example to inspect the
+     * estimated black and white levels.
+     *
+     * @return the light level estimator
+     */
+    public LightLevels getLightLevels() {
+        return lightLevels;
+    }
+
+    /**
+     * Returns the recognizer of the track markers, for example to change the
+     * marker codes.
+     *
+     * @return the marker recognizer
+     */
+    public MarkerRecognizer getMarkers() {
+        return markers;
+    }
+
+    /**
+     * Sets the listener that is told about every recognized marker.
+     *
+     * @param listener the listener, or null
+     */
+    public void setMarkerListener(MarkerListener listener) {
+        this.markerListener = listener;
+    }
+
+    /**
+     * Sets the track network the robot drives in and the target it drives
+     * to. At every junction the robot takes the turn of the fastest route
+     * and it stops at the target.
+     *
+     * @param graph     the layout of the network
+     * @param startNode the node the robot starts behind
+     * @param startPort the port of the start node the robot starts on
+     * @param target    the target node
+     */
+    public void setRoute(TrackGraph graph, int startNode, int startPort, int target) {
+        graph.plan(target, parameters.routeTurnPenalty);
+        navigator = new Navigator(graph);
+        navigator.start(startNode, startPort, odometry.getDistance());
+    }
+
+    /**
+     * Returns the navigator of the route, for example to see the nodes
+     * passed so far.
+     *
+     * @return the navigator, or null without a route
+     */
+    public Navigator getNavigator() {
+        return navigator;
+    }
+
+    /**
+     * Returns the detector of the junctions of the track network.
+     *
+     * @return the junction detector
+     */
+    public JunctionDetector getJunctions() {
+        return junctions;
+    }
+
+    /**
+     * Returns the learned map of the track.
+     *
+     * @return the track map
+     */
+    public TrackMap getTrackMap() {
+        return trackMap;
+    }
+
+    /**
+     * Returns the speed the line following currently drives with, taken from
+     * the speed profile once the track is learned.
+     *
+     * @return the speed in degrees per second
+     */
+    private int baseSpeed() {
+        int speed = configuredSpeed();
+        if (parameters.profileMaxSpeed > 0) {
+            int profiled = trackMap.speedAt(odometry.getDistance());
+            if (profiled > 0) {
+                speed = profiled;
+            }
+        }
+        return inSlowZone ? speed * parameters.slowZoneSpeed / 100 : speed;
+    }
+
+    /**
+     * Feeds the sample into the marker recognizer. On a bar and right behind
+     * it the robot drives straight like over a crossing, even if the readings
+     * are too noisy for the classifier to see one, so the line state becomes
+     * a crossing before it is published. The bars of a route count as well.
+     *
+     * @return the recognized marker, or {@link MarkerRecognizer#NO_MARKER}
+     *         without marker recognition
+     */
+    private int readMarkers() {
+        if (!parameters.recognizeMarkers && navigator == null) {
+            return MarkerRecognizer.NO_MARKER;
+        }
+        double distance = odometry.getDistance();
+        int marker = markers.update(lineState, brightestReading(), distance);
+        if (markers.isNearBar(distance) && lineState == LineClassifier.LOST) {
+            lineState = LineClassifier.CROSSING;
+        }
+        return parameters.recognizeMarkers ? marker : MarkerRecognizer.NO_MARKER;
+    }
+
+    /**
+     * Feeds the sample into the junction detector while the robot follows a
+     * route.
+     *
+     * @return true if a junction was confirmed, its center is returned by
+     *         {@link JunctionDetector#getCenter()}
+     */
+    private boolean detectJunction() {
+        return navigator != null && junctions.update(brightestReading(), odometry.getDistance());
+    }
+
+    private int brightestReading() {
+        return Math.max(samples.left(0), Math.max(samples.right(0), samples.center(0)));
+    }
+
+    /**
+     * Acts on a recognized marker: a stop marker ends the run, a slow zone
+     * marker toggles the slow zone.
+     */
+    private void actOnMarker(int marker) {
+        if (marker == MarkerRecognizer.NO_MARKER) {
+            return;
+        }
+        if (marker == MarkerRecognizer.MARKER_STOP) {
+            enterMode(MODE_FINISHED);
+            stop();
+        } else if (marker == MarkerRecognizer.MARKER_SLOW_ZONE) {
+            inSlowZone = !inSlowZone;
+        }
+        if (markerListener != null) {
+            markerListener.markerRecognized(marker);
+        }
+    }
+
+    /**
+     * Acts on the turn the navigator chose at a junction: the robot drives
+     * straight over it like over any crossing, starts a turn or stops at the
+     * target.
+     *
+     * @param center the travelled distance at the center of the junction
+     */
+    private void passJunction(double center) {
+        int turn = navigator.junction(center);
+        if (turn == Navigator.ARRIVED || turn == Navigator.NO_ROUTE) {
+            enterMode(MODE_FINISHED);
+            stop();
+        } else if (turn == TrackGraph.TURN_LEFT || turn == TrackGraph.TURN_RIGHT) {
+            junctionTurn = turn;
+            junctionCenter = center;
+            spinning = false;
+            enterMode(MODE_JUNCTION_TURN);
+            moveForward();
+        }
+    }
+
+    private int configuredSpeed() {
+        return parameters.steering == ControlParameters.STEERING_PID ? parameters.pidSpeed : parameters.defaultSpeed;
+    }
+
+    /**
+     * Follows the robot along the track map and builds the speed profile when
+     * the first lap is complete.
+     */
+    private void learnTrack() {
+        if (parameters.profileMaxSpeed <= 0) {
+            return;
+        }
+        boolean learning = trackMap.isLearning();
+        if (trackMap.update(odometry.getDistance(), odometry.getHeading()) && learning) {
+            trackMap.buildProfile(configuredSpeed(), parameters.profileMaxSpeed, parameters.profileCurveRadius,
+                    parameters.profileDeceleration, Math.PI * parameters.wheelDiameter / 360.0);
+        }
+    }
+
+    private void move(int amount) {
+        int speed = baseSpeed();
+        int leftSpeed;
+        int rightSpeed;
+
+        amount = Math.max(-100, Math.min(100, amount));
+
+        if (amount < 0) { // Turn left
+            leftSpeed = speed * (100 + amount) / 100;
+            rightSpeed = speed;
+            lastTurn = TURNED_LEFT;
+        } else if (amount > 0) { // Turn right
+            leftSpeed = speed;
+            rightSpeed = speed * (100 - amount) / 100;
+            lastTurn = TURNED_RIGHT;
+        } else { // Move straight
+            leftSpeed = speed;
+            rightSpeed = speed;
+            lastTurn = NOT_TURNED;
+        }
+
+        drivetrain.drive(leftSpeed, rightSpeed);
+    }
+
+    private void moveForward() {
+        drivetrain.drive(parameters.rotationSpeed, parameters.rotationSpeed);
+    }
+
+    private void moveBackward() {
+        drivetrain.drive(-parameters.rotationSpeed, -parameters.rotationSpeed);
+    }
+
+    private void stop() {
+        drivetrain.stop();
+    }
+
+    private void rotate(boolean clockwise) {
+        int speed = parameters.rotationSpeed;
+        if (clockwise) {
+            drivetrain.drive(speed, -speed);
+        } else {
+            drivetrain.drive(-speed, speed);
+        }
+    }
+
+    private boolean isTouching() {
+        return touchSensor.isPressed();
+    }
+
+    private void readSamples() {
+        if (sampler != null) {
+            sampler.latch();
+        }
+        int leftReading = leftSensor.getLightValue();
+        int rightReading = rightSensor.getLightValue();
+        int centerReading = centerSensor.getLightValue();
+        long timestamp = clock.currentTimeMillis();
+        samples.add(leftReading, rightReading, centerReading, timestamp);
+        leftAngle = drivetrain.getLeftAngle();
+        rightAngle = drivetrain.getRightAngle();
+        odometry.update(leftAngle, rightAngle);
+        if (parameters.estimatorLookahead > 0) {
+            estimator.predict((int) Math.round(odometry.getDistanceDelta() * LineEstimator.MICROMETERS),
+                    (int) Math.round(odometry.getHeadingDelta() * LineEstimator.MICRORADIANS));
+        }
+        endPhase(LoopProfiler.PHASE_SAMPLE);
+
+        lineState = classifier.classify(leftReading, rightReading, centerReading);
+        if (parameters.adaptiveLevels) {
+            adaptThresholds(leftReading, rightReading, centerReading);
+        }
+        endPhase(LoopProfiler.PHASE_CLASSIFY);
+    }
+
+    /**
+     * Fills the status with the current sample and the final line state.
+     */
+    private void publishSamples() {
+        status.left = samples.left(0);
+        status.right = samples.right(0);
+        status.center = samples.center(0);
+        status.timestamp = samples.timestamp(0);
+        status.state = lineState;
+    }
+
+    /**
+     * Updates the light level estimates and moves the black thresholds of the
+     * classifier, of the marker bars and of the junctions along with them.
+     */
+    private void adaptThresholds(int leftReading, int rightReading, int centerReading) {
+        lightLevels.update(leftReading, rightReading, centerReading, lineState);
+
+        int threshold = parameters.blackThreshold;
+        int leftThreshold = lightLevels.toSensor(LightLevels.LEFT, threshold);
+        int rightThreshold = lightLevels.toSensor(LightLevels.RIGHT, threshold);
+        int centerThreshold = lightLevels.toSensor(LightLevels.CENTER, threshold);
+        classifier.setBlackThresholds(leftThreshold, rightThreshold, centerThreshold);
+        int level = Math.max(leftThreshold, Math.max(rightThreshold, centerThreshold)) + parameters.fluctuationBuffer;
+        markers.setHoldLevel(level);
+        junctions.setLevel(level);
+    }
+
+    private void followLine() {
+        if (parameters.steering == ControlParameters.STEERING_PID) {
+            followLineContinuously();
+            return;
+        }
+
+        switch (lineState) {
+            case LineClassifier.LOST:
+                status.action = ControlStatus.ACTION_KEEP_TURNING;
+                if (lastTurn != NOT_TURNED) {
+                    move(lastTurn == TURNED_LEFT ? -100 : 100);
+                } else {
+                    move(0);
+                }
+                break;
+            case LineClassifier.LINE_LEFT:
+                status.action = ControlStatus.ACTION_LEFT;
+                move(-100);
+                break;
+            case LineClassifier.LINE_RIGHT:
+                status.action = ControlStatus.ACTION_RIGHT;
+                move(100);
+                break;
+            default:
+                status.action = ControlStatus.ACTION_FORWARD;
+                move(0);
+                break;
+        }
+    }
+
+    private void followLineContinuously() {
+        int left = samples.left(0);
+        int right = samples.right(0);
+        int center = samples.center(0);
+
+        if (lineState == LineClassifier.CROSSING) {
+            // Crossing, drive straight over it
+            status.action = ControlStatus.ACTION_FORWARD;
+            int speed = baseSpeed();
+            drive(speed, speed);
+            return;
+        }
+
+        int position = lineState == LineClassifier.LOST ? (lastPosition < 0 ? -LOST_POSITION : LOST_POSITION)
+                : linePosition(left, right, center);
+        if (parameters.estimatorLookahead > 0) {
+            position = estimatedPosition(position);
+        }
+        if (lineState == LineClassifier.LOST) {
+            status.action = ControlStatus.ACTION_KEEP_TURNING;
+        } else if (position < -TURN_LABEL_POSITION) {
+            status.action = ControlStatus.ACTION_LEFT;
+        } else if (position > TURN_LABEL_POSITION) {
+            status.action = ControlStatus.ACTION_RIGHT;
+        } else {
+            status.action = ControlStatus.ACTION_FORWARD;
+        }
+        lastPosition = position;
+        lastTurn = position < 0 ? TURNED_LEFT : position > 0 ? TURNED_RIGHT : NOT_TURNED;
+
+        int turn = pid.update(position);
+        int speed = baseSpeed();
+        drive(speed + turn, speed - turn);
+    }
+
+    /**
+     * Feeds a measured position into the line estimator and returns the
+     * position of the line at the lookahead distance. While the line is lost,
+     * the estimate keeps following the odometry instead of saturating.
+     *
+     * @param measured the measured position, or the signed
+     *                 {@link #LOST_POSITION} while the line is lost
+     * @return the estimated position, clamped to the range of
+     *         {@link #LOST_POSITION}
+     */
+    private int estimatedPosition(int measured) {
+        int spacing = parameters.sensorSpacing * LineEstimator.MICROMETERS;
+        if (lineState == LineClassifier.LOST) {
+            estimator.outside(spacing);
+        } else {
+            estimator.correct(measured * spacing / SENSOR_POSITION);
+        }
+        long position = (long) estimator.offsetAhead(parameters.estimatorLookahead) * SENSOR_POSITION / spacing;
+        return (int) Math.max(-LOST_POSITION, Math.min(LOST_POSITION, position));
+    }
+
+    /**
+     * Estimates where the line is relative to the center sensor. Every sensor
+     * is weighted with how much darker it is than the brightest sensor, so no
+     * calibration of absolute values is needed.
+     *
+     * @return the position between -{@link #SENSOR_POSITION} (below the left
+     *         sensor) and {@link #SENSOR_POSITION} (below the right sensor)
+     */
+    private int linePosition(int left, int right, int center) {
+        int brightest = Math.max(left, Math.max(right, center));
+        int leftDarkness = brightest - left;
+        int rightDarkness = brightest - right;
+        int darkness = leftDarkness + rightDarkness + brightest - center;
+        if (darkness == 0) {
+            return 0;
+        }
+        return (rightDarkness - leftDarkness) * SENSOR_POSITION / darkness;
+    }
+
+    private void drive(int leftSpeed, int rightSpeed) {
+        drivetrain.drive(Math.max(0, Math.min(MAX_SPEED, leftSpeed)), Math.max(0, Math.min(MAX_SPEED, rightSpeed)));
+    }
+
+    /**
+     * Checks if the line is lost for longer than the lost line timeout while
+     * following.
+     */
+    private boolean lostTooLong() {
+        if (lineState != LineClassifier.LOST) {
+            lostSince = -1;
+            return false;
+        }
+        long now = clock.currentTimeMillis();
+        if (lostSince < 0) {
+            lostSince = now;
+        }
+        return parameters.lostLineTimeout > 0 && now - lostSince >= parameters.lostLineTimeout;
+    }
+
+    /**
+     * Remembers the side and the heading the line was last seen at, the line
+     * search starts towards them.
+     */
+    private void rememberLine() {
+        if (!LineClassifier.seesLine(lineState)) {
+            return;
+        }
+        lineSeenHeading = odometry.getHeading();
+        if (lineState == LineClassifier.LINE_LEFT) {
+            lineSeenLeft = true;
+        } else if (lineState == LineClassifier.LINE_RIGHT) {
+            lineSeenLeft = false;
+        }
+    }
+
+    private void startSearch() {
+        odometry.setTrackingPosition(true);
+        lineSearch.start(clock.currentTimeMillis(), odometry.getHeading(), lineSeenLeft, lineSeenHeading);
+        enterMode(searchMode(lineSearch.update(odometry.getX(), odometry.getY(), odometry.getHeading())));
+        drivetrain.drive(lineSearch.getLeftSpeed(), lineSearch.getRightSpeed());
+    }
+
+    private static int searchMode(int phase) {
+        switch (phase) {
+            case LineSearch.PHASE_SWEEP_LEFT:
+                return MODE_SWEEP_LEFT;
+            case LineSearch.PHASE_SWEEP_RIGHT:
+                return MODE_SWEEP_RIGHT;
+            case LineSearch.PHASE_REALIGN:
+                return MODE_REALIGN;
+            case LineSearch.PHASE_FORWARD:
+                return MODE_SEARCH_FORWARD;
+            default:
+                return MODE_SEARCH_BACKWARD;
+        }
+    }
+
+    private void enterMode(int newMode) {
+        if (newMode != MODE_FOLLOWING) {
+            // Maneuvers turn the robot around, the map no longer fits
+            trackMap.reset();
+            markers.reset();
+            junctions.reset();
+        }
+        mode = newMode;
+        modeStartTime = clock.currentTimeMillis();
+        lostLineInMode = false;
+    }
+
+    /**
+     * Advances the recovery maneuver by one tick. Backing off and turning
+     * around end early when the line is below the center sensor again after it
+     * was lost, the search phases end as soon as any sensor sees the line.
+     */
+    private void recover() {
+        long elapsed = clock.currentTimeMillis() - modeStartTime;
+        boolean seesLine = LineClassifier.seesLine(lineState);
+        boolean centered = lineState == LineClassifier.CENTERED || lineState == LineClassifier.CROSSING;
+        if (!seesLine) {
+            lostLineInMode = true;
+        }
+
+        switch (mode) {
+            case MODE_BACKING_OFF:
+                status.action = ControlStatus.ACTION_BACK_OFF;
+                if (centered && lostLineInMode) {
+                    resumeFollowing();
+                } else if (elapsed >= parameters.backoffDuration) {
+                    enterMode(MODE_TURNING_AROUND);
+                    rotate(true);
+                }
+                break;
+            case MODE_TURNING_AROUND:
+                status.action = ControlStatus.ACTION_TURN_AROUND;
+                if (centered && lostLineInMode) {
+                    resumeFollowing();
+                } else if (elapsed >= parameters.turnAroundDuration) {
+                    startSearch();
+                }
+                break;
+            case MODE_JUNCTION_TURN:
+                turnAtJunction(centered);
+                break;
+            default:
+                searchLine(seesLine);
+                break;
+        }
+    }
+
+    /**
+     * Advances the turn at a junction. The sensors are ahead of the wheels,
+     * so the robot first drives on until its axle is over the junction, then
+     * spins in place towards the exit until the center sensor left the line
+     * it came on and finds the exit line. If the spin goes too far, the line
+     * search takes over.
+     */
+    private void turnAtJunction(boolean centered) {
+        boolean left = junctionTurn == TrackGraph.TURN_LEFT;
+        status.action = left ? ControlStatus.ACTION_LEFT : ControlStatus.ACTION_RIGHT;
+        if (!spinning) {
+            if (odometry.getDistance() < junctionCenter + parameters.sensorForward) {
+                moveForward();
+                return;
+            }
+            spinning = true;
+            spinHeading = odometry.getHeading();
+            lostLineInMode = false;
+            rotate(!left);
+            return;
+        }
+
+        if (centered && lostLineInMode) {
+            resumeFollowing();
+        } else if (Math.abs(odometry.getHeading() - spinHeading) > Math.toRadians(parameters.junctionSpinAngle)) {
+            startSearch();
+        }
+    }
+
+    /**
+     * Advances the line search planned by the {@link LineSearch} until the
+     * line is seen.
+     */
+    private void searchLine(boolean seesLine) {
+        status.action = ControlStatus.ACTION_SEARCH;
+        status.lineFound = seesLine;
+        if (seesLine) {
+            lineSearch.found(clock.currentTimeMillis());
+            resumeFollowing();
+            return;
+        }
+
+        int newMode = searchMode(lineSearch.update(odometry.getX(), odometry.getY(), odometry.getHeading()));
+        if (newMode != mode) {
+            enterMode(newMode);
+        }
+        drivetrain.drive(lineSearch.getLeftSpeed(), lineSearch.getRightSpeed());
+    }
+
+    /**
+     * Returns to line following. If the line is seen on one side, the steering
+     * continues towards it when it loses the line right away.
+     */
+    private void resumeFollowing() {
+        odometry.setTrackingPosition(false);
+        stop();
+        enterMode(MODE_FOLLOWING);
+        lostSince = -1;
+        pid.reset();
+
+        if (lineState == LineClassifier.LINE_LEFT) {
+            lastTurn = TURNED_LEFT;
+            lastPosition = -SENSOR_POSITION;
+        } else if (lineState == LineClassifier.LINE_RIGHT) {
+            lastTurn = TURNED_RIGHT;
+            lastPosition = SENSOR_POSITION;
+        }
+        estimator.reset(lastPosition * parameters.sensorSpacing * LineEstimator.MICROMETERS / SENSOR_POSITION);
+    }
+}
@@ -0,0 +1,281 @@
+/**
+ * The {@code LineSearch} class plans the search for a lost line from the
+ * odometry, so the swept angles and distances do not depend on the battery
+ * voltage or the floor.
+ *
+ * The search first sweeps to the side the line was last seen on and back over
+ * the other side. Then it turns across the heading the line was last seen at,
+ * towards the side it was seen on, and drives legs of growing length forward
+ * and backward across that heading: one step to the preferred side, two steps
+ * to the other side, three steps to the preferred side and so on. Any line
+ * roughly along the last heading is crossed within a few legs. When the legs
+ * reach the largest search distance, the search starts over at the current
+ * position.
+ *
+ * The planner also keeps the time-to-reacquire statistics of all searches.
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public class LineSearch {
+    public static final int PHASE_SWEEP_LEFT = 0;
+    public static final int PHASE_SWEEP_RIGHT = 1;
+    public static final int PHASE_REALIGN = 2;
+    public static final int PHASE_FORWARD = 3;
+    public static final int PHASE_BACKWARD = 4;
+
+    /**
+     * Heading error in radians at which a realignment is complete.
+     */
+    private static final double HEADING_TOLERANCE = 0.05;
+
+    private final ControlParameters parameters;
+
+    private int phase;
+    private boolean preferLeft;
+    private double centerHeading;
+    private double lineHeading;
+    private double legHeading;
+    private double legStartX;
+    private double legStartY;
+    private int leg;
+    private int leftSpeed;
+    private int rightSpeed;
+
+    private long startTime = -1;
+    private int searches;
+    private int found;
+    private long totalTime;
+    private long maxTime;
+    private long lastTime = -1;
+
+    /**
+     * Constructs a planner.
+     *
+     * @param parameters the parameters with the sweep angle, the leg step and
+     *                   the search distance and speeds
+     */
+    public LineSearch(ControlParameters parameters) {
+        this.parameters = parameters;
+    }
+
+    /**
+     * Starts a search.
+     *
+     * @param now         the current time in milliseconds
+     * @param heading     the heading of the odometry in radians
+     * @param preferLeft  whether the line was last seen on the left
+     * @param lineHeading the heading of the odometry when the line was last
+     *                    seen in radians
+     */
+    public void start(long now, double heading, boolean preferLeft, double lineHeading) {
+        if (startTime < 0) {
+            startTime = now;
+            searches++;
+        }
+        this.preferLeft = preferLeft;
+        this.lineHeading = lineHeading;
+        sweepAround(heading);
+    }
+
+    private void sweepAround(double heading) {
+        centerHeading = heading;
+        phase = preferLeft ? PHASE_SWEEP_LEFT : PHASE_SWEEP_RIGHT;
+        rotate(preferLeft);
+    }
+
+    /**
+     * Tells the planner that the line was found and records the time the
+     * search took. Does nothing if no search is running.
+     *
+     * @param now the current time in milliseconds
+     */
+    public void found(long now) {
+        if (startTime < 0) {
+            return;
+        }
+        lastTime = now - startTime;
+        totalTime += lastTime;
+        maxTime = Math.max(maxTime, lastTime);
+        found++;
+        startTime = -1;
+    }
+
+    /**
+     * Advances the search by one tick and computes the wheel speeds.
+     *
+     * @param x       the x coordinate of the odometry in millimeters
+     * @param y       the y coordinate of the odometry in millimeters
+     * @param heading the heading of the odometry in radians
+     * @return the current phase, one of the {@code PHASE_} constants
+     */
+    public int update(double x, double y, double heading) {
+        double sweep = Math.toRadians(parameters.searchSweepAngle);
+        switch (phase) {
+            case PHASE_SWEEP_LEFT:
+                if (heading >= centerHeading + sweep) {
+                    if (preferLeft) {
+                        phase = PHASE_SWEEP_RIGHT;
+                        rotate(false);
+                    } else {
+                        realign();
+                    }
+                }
+                break;
+            case PHASE_SWEEP_RIGHT:
+                if (heading <= centerHeading - sweep) {
+                    if (preferLeft) {
+                        realign();
+                    } else {
+                        phase = PHASE_SWEEP_LEFT;
+                        rotate(true);
+                    }
+                }
+                break;
+            case PHASE_REALIGN:
+                double error = legHeading - heading;
+                // Turns the shorter way round
+                error -= 2 * Math.PI * Math.floor((error + Math.PI) / (2 * Math.PI));
+                if (Math.abs(error) > HEADING_TOLERANCE) {
+                    rotate(error > 0);
+                } else {
+                    legStartX = x;
+                    legStartY = y;
+                    leg = 0;
+                    nextLeg();
+                }
+                break;
+            default:
+                // Position along the legs, positive towards the preferred side
+                double offset = (x - legStartX) * Math.cos(legHeading) + (y - legStartY) * Math.sin(legHeading);
+                double target = legTarget(leg);
+                if (phase == PHASE_FORWARD ? offset >= target : offset <= target) {
+                    if ((leg + 1) * parameters.searchLegStep > parameters.searchDistance) {
+                        sweepAround(heading);
+                    } else {
+                        nextLeg();
+                    }
+                }
+                break;
+        }
+        return phase;
+    }
+
+    private void realign() {
+        phase = PHASE_REALIGN;
+        legHeading = lineHeading + (preferLeft ? Math.PI / 2 : -Math.PI / 2);
+        leftSpeed = 0;
+        rightSpeed = 0;
+    }
+
+    private void nextLeg() {
+        leg++;
+        int speed = parameters.searchSpeed;
+        if (leg % 2 == 1) {
+            phase = PHASE_FORWARD;
+            leftSpeed = speed;
+            rightSpeed = speed;
+        } else {
+            phase = PHASE_BACKWARD;
+            leftSpeed = -speed;
+            rightSpeed = -speed;
+        }
+    }
+
+    /**
+     * Returns the end of a leg: one step to the preferred side, two steps to
+     * the other side, three steps to the preferred side and so on.
+     */
+    private double legTarget(int number) {
+        int target = number * parameters.searchLegStep;
+        return number % 2 == 1 ? target : -target;
+    }
+
+    private void rotate(boolean left) {
+        int speed = parameters.rotationSpeed;
+        leftSpeed = left ? -speed : speed;
+        rightSpeed = left ? speed : -speed;
+    }
+
+    /**
+     * Returns the speed of the left wheel for the current phase.
+     *
+     * @return the speed in degrees per second, positive forward
+     */
+    public int getLeftSpeed() {
+        return leftSpeed;
+    }
+
+    /**
+     * Returns the speed of the right wheel for the current phase.
+     *
+     * @return the speed in degrees per second, positive forward
+     */
+    public int getRightSpeed() {
+        return rightSpeed;
+    }
+
+    /**
+     * Checks if a search is running.
+     *
+     * @return true between {@link #start} and {@link #found}
+     */
+    public boolean isSearching() {
+        return startTime >= 0;
+    }
+
+    /**
+     * Returns the number of started searches.
+     *
+     * @return the number of searches
+     */
+    public int getSearches() {
+        return searches;
+    }
+
+    /**
+     * Returns the number of searches that found the line.
+     *
+     * @return the number of successful searches
+     */
+    public int getFound() {
+        return found;
+    }
+
+    /**
+     * Returns the mean time a successful search took.
+     *
+     * @return the time in milliseconds, or -1 if no search found the line
+     */
+    public long getMeanTime() {
+        return found == 0 ? -1 : totalTime / found;
+    }
+
+    /**
+     * Returns the longest time a successful search took.
+     *
+     * @return the time in milliseconds, or -1 if no search found the line
+     */
+    public long getMaxTime() {
+        return found == 0 ? -1 : maxTime;
+    }
+
+    /**
+     * Returns the time the last successful search took.
+     *
+     * @return the time in milliseconds, or -1 if no search found the line
+     */
+    public long getLastTime() {
+        return lastTime;
+    }
+
+    /**
+     * Describes the time-to-reacquire statistics in one line.
+     *
+     * @return the statistics
+     */
+    public String summary() {
+        return "Line searches: " + searches + ", found " + found + ", mean " + getMeanTime() + " ms, max "
+                + getMaxTime() + " ms";
+    }
+}
@@ -0,0 +1,18 @@
+
+
+/**
+ * The {@code LineSensor} interface describes a light sensor that looks at the
+ * track from above. Implementations exist for the NXT light sensor and for the
+ * simulator.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public interface LineSensor {
+    /**
+     * Returns the current light reading.
+     *
+     * @return the light value, dark surfaces give low values
+     */
+    int getLightValue();
+}
@@ -0,0 +1,192 @@
+/**
+ * The {@code LoopProfiler} class measures how long every phase of a control
+ * tick takes and how often a tick misses its deadline. Every phase has its own
+ * {@link LatencyHistogram}, so measuring does not allocate.
+ *
+ * The control loop calls {@link #beginTick(long)}, then
+ * {@link #endPhase(int)} after each phase and {@link #endTick()} at the end.
+ * The reports may be read from another thread while the loop runs, they can be
+ * off by the tick that is measured at the same time.
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public class LoopProfiler {
+    // Phases of a control tick
+    public static final int PHASE_SAMPLE = 0;
+    public static final int PHASE_CLASSIFY = 1;
+    public static final int PHASE_DECIDE = 2;
+    public static final int PHASE_ACTUATE = 3;
+    public static final int PHASE_DISPLAY = 4;
+
+    /**
+     * The whole tick from {@link #beginTick(long)} to {@link #endTick()}.
+     */
+    public static final int PHASE_TICK = 5;
+
+    public static final int PHASES = 6;
+
+    private static final String[] NAMES = { "sample", "classify", "decide", "actuate", "display", "tick" };
+    private static final String[] SHORT_NAMES = { "smp", "cls", "dec", "act", "dsp", "tck" };
+
+    private final Clock clock;
+    private final long periodMicros;
+    private final LatencyHistogram[] phases = new LatencyHistogram[PHASES];
+    private final LatencyHistogram lateness = new LatencyHistogram();
+
+    private long tickStart;
+    private long phaseStart;
+    private long tickLateness;
+    private long missedDeadlines;
+
+    /**
+     * Constructs a profiler.
+     *
+     * @param clock     the time source
+     * @param frequency the tick rate of the control loop in Hz
+     */
+    public LoopProfiler(Clock clock, int frequency) {
+        this.clock = clock;
+        this.periodMicros = 1000000L / frequency;
+        for (int i = 0; i < PHASES; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Starts measuring a tick.
+     *
+     * @param latenessMillis how late the tick started in milliseconds
+     */
+    public void beginTick(long latenessMillis) {
+        tickLateness = latenessMillis * 1000;
+        lateness.record(tickLateness);
+        tickStart = clock.nanoTime();
+        phaseStart = tickStart;
+    }
+
+    /**
+     * Ends a phase. The next phase starts right away.
+     *
+     * @param phase the phase that ended
+     */
+    public void endPhase(int phase) {
+        long now = clock.nanoTime();
+        phases[phase].record((now - phaseStart) / 1000);
+        phaseStart = now;
+    }
+
+    /**
+     * Ends the tick. A tick misses its deadline if it ends after the next tick
+     * should have started.
+     */
+    public void endTick() {
+        long duration = (clock.nanoTime() - tickStart) / 1000;
+        phases[PHASE_TICK].record(duration);
+        if (tickLateness + duration > periodMicros) {
+            missedDeadlines++;
+        }
+    }
+
+    /**
+     * Removes all measurements.
+     */
+    public void reset() {
+        for (int i = 0; i < PHASES; i++) {
+            phases[i].reset();
+        }
+        lateness.reset();
+        missedDeadlines = 0;
+    }
+
+    public LatencyHistogram getPhase(int phase) {
+        return phases[phase];
+    }
+
+    public LatencyHistogram getLateness() {
+        return lateness;
+    }
+
+    public long getTicks() {
+        return phases[PHASE_TICK].getCount();
+    }
+
+    public long getMissedDeadlines() {
+        return missedDeadlines;
+    }
+
+    /**
+     * Returns a page of 16 columns for the LCD with the median and the maximum
+     * of every phase in microseconds.
+     *
+     * @return the page, lines are separated by '\n'
+     */
+    public String page() {
+        StringBuilder page = new StringBuilder("us   p50    max\n");
+        for (int i = 0; i < PHASES; i++) {
+            page.append(SHORT_NAMES[i]);
+            pad(page, phases[i].percentile(500), 6);
+            pad(page, phases[i].getMax(), 7);
+            page.append('\n');
+        }
+        page.append("miss ").append(missedDeadlines).append('/').append(getTicks());
+        return page.toString();
+    }
+
+    private static void pad(StringBuilder out, long value, int width) {
+        String text = String.valueOf(value);
+        for (int i = text.length(); i < width; i++) {
+            out.append(' ');
+        }
+        out.append(text);
+    }
+
+    /**
+     * Returns a report with the statistics and the histogram of every phase.
+     *
+     * @return a multi-line report
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        report.append("Ticks: ").append(getTicks()).append(", missed deadlines: ").append(missedDeadlines)
+                .append(", period: ").append(periodMicros).append(" us\n");
+        report.append("phase     count   min  mean   p50   p99   max (us)\n");
+        for (int i = 0; i < PHASES; i++) {
+            appendStatistics(report, NAMES[i], phases[i]);
+        }
+        appendStatistics(report, "lateness", lateness);
+
+        report.append("histogram (upper limit in us)\n");
+        for (int i = 0; i < PHASES; i++) {
+            report.append(NAMES[i]).append(':');
+            for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; bucket++) {
+                long count = phases[i].getCount(bucket);
+                if (count > 0) {
+                    report.append(' ');
+                    if (bucket == LatencyHistogram.BUCKETS - 1) {
+                        report.append("more");
+                    } else {
+                        report.append('<').append(LatencyHistogram.upperLimit(bucket));
+                    }
+                    report.append('=').append(count);
+                }
+            }
+            report.append('\n');
+        }
+        return report.toString();
+    }
+
+    private static void appendStatistics(StringBuilder report, String name, LatencyHistogram histogram) {
+        report.append(name);
+        for (int i = name.length(); i < 8; i++) {
+            report.append(' ');
+        }
+        pad(report, histogram.getCount(), 7);
+        pad(report, histogram.getMin(), 6);
+        pad(report, histogram.getMean(), 6);
+        pad(report, histogram.percentile(500), 6);
+        pad(report, histogram.percentile(990), 6);
+        pad(report, histogram.getMax(), 6);
+        report.append('\n');
+    }
+}
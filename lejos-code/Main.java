@@ -1,14 +1,62 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import lejos.nxt.Button;
 import lejos.nxt.LightSensor;
 import lejos.nxt.NXTRegulatedMotor;
 import lejos.nxt.TouchSensor;
-import lejos.util.Delay;
+import lejos.nxt.comm.NXTConnection;
+import lejos.nxt.comm.USB;
 
 public class Main {
-    private static final int EXECUTION_FREQUENCY = 5;
-    private static final int BLACK_THRESHOLD = 30;
-    private static final int FLUCTUATION_BUFFER = 5;
-
-    private static final int DEFAULT_SPEED = 200;
+    private static final int DISPLAY_REFRESH_RATE = 5;
+    private static final int SAMPLE_INTERVAL = 2;
+    private static final int ABORT_HOLD_TIME = 1000;
+
+    // Switches the lamps to cancel the ambient light, see DifferentialLightSensor
+    private static final boolean DIFFERENTIAL_SAMPLING = false;
+    private static final int LAMP_SETTLE_TIME = 2;
+    private static final int AMBIENT_SAMPLES = 8;
+
+    // Tasks of the executor that owns the control loop
+    private static final int PRIORITY_DRIVE = 2;
+    private static final int PRIORITY_LIFT = 1;
+    private static final int TASK_BUDGET_SHARE = 50;
+
+    // Drives to a node of the track network instead of following the line
+    // forever, -1 switches the route off
+    private static final int ROUTE_TARGET = -1;
+    private static final int ROUTE_START_NODE = 4;
+    private static final int ROUTE_START_PORT = TrackGraph.EAST;
+    // A junction needs at least one sample on its line at driving speed
+    private static final int ROUTE_FREQUENCY = 20;
+
+    // Track network: a square with rounded corners and a cross through its
+    // center, per line the first node and port, the second node and port and
+    // the length in millimeters
+    private static final int TRACK_NODES = 5;
+    private static final int[] TRACK_LAYOUT = {
+            0, TrackGraph.EAST, 1, TrackGraph.WEST, 600,
+            0, TrackGraph.NORTH, 2, TrackGraph.SOUTH, 600,
+            0, TrackGraph.WEST, 3, TrackGraph.EAST, 600,
+            0, TrackGraph.SOUTH, 4, TrackGraph.NORTH, 600,
+            1, TrackGraph.NORTH, 2, TrackGraph.EAST, 1071,
+            2, TrackGraph.WEST, 3, TrackGraph.NORTH, 1071,
+            3, TrackGraph.SOUTH, 4, TrackGraph.WEST, 1071,
+            4, TrackGraph.EAST, 1, TrackGraph.SOUTH, 1071 };
+
+    private static final String FLIGHT_LOG = "flight.dat";
+    private static final String LOOP_REPORT = "loop.txt";
+    private static final int RECORDER_CAPACITY = 128;
+    private static final int RECORDER_FLUSH_INTERVAL = 500;
+
+    // Streams the control ticks to a PC connected over USB
+    private static final boolean TELEMETRY = false;
+    private static final int TELEMETRY_TIMEOUT = 10000;
+    private static final int TELEMETRY_CAPACITY = 64;
+    private static final int TELEMETRY_BATCH = 8;
+    private static final int TELEMETRY_FLUSH_INTERVAL = 100;
 
     private static LightSensor leftSensor = new LightSensor(Ports.LIGHT_SENSOR_LEFT);
     private static LightSensor rightSensor = new LightSensor(Ports.LIGHT_SENSOR_RIGHT);
@@ -16,248 +64,205 @@ public class Main {
 
     private static NXTRegulatedMotor leftMotor = new NXTRegulatedMotor(Ports.MOTOR_LEFT);
     private static NXTRegulatedMotor rightMotor = new NXTRegulatedMotor(Ports.MOTOR_RIGHT);
+    private static NXTRegulatedMotor liftMotor = new NXTRegulatedMotor(Ports.LIFT_MOTOR);
 
     private static TouchSensor touchSensor = new TouchSensor(Ports.TOUCH_SENSOR);
 
-    private static Boolean lastTurnedLeft;
-    private static boolean madeRotatingTask = false;
-
     public static void main(String[] args) {
         Setup.setup(leftSensor, rightSensor, centerSensor);
-        setSpeeds(DEFAULT_SPEED);
 
-        long nextExecution = 0;
-        while (true) {
-            if (isTouching()) {
-                if (madeRotatingTask) {
-                    break;
-                }
+        // ControlParameters.pid(speed) selects the continuous PID steering
+        ControlParameters parameters = new ControlParameters();
+        if (ROUTE_TARGET >= 0) {
+            parameters.executionFrequency = Math.max(parameters.executionFrequency, ROUTE_FREQUENCY);
+        }
 
-                backoff(1500);
-                rotate(true);
-                Delay.msDelay(5000);
-                stop();
-                madeRotatingTask = true;
-                
-                while (!searchLine()) {
-                }
-                continue;
-            }
+        TelemetryStreamer telemetry = openTelemetry(parameters.executionFrequency);
+
+        final DisplayService display = new DisplayService(LCDHelper.getScreen(), NxtHardware.CLOCK, DISPLAY_REFRESH_RATE);
+        display.start();
+
+        SensorSampler sampler = new SensorSampler(
+                lineSensor(leftSensor),
+                lineSensor(rightSensor),
+                lineSensor(centerSensor),
+                SensorSampler.defaultFilter(), SensorSampler.defaultFilter(), SensorSampler.defaultFilter(),
+                NxtHardware.CLOCK,
+                SAMPLE_INTERVAL);
+        sampler.start();
+
+        final LineFollower follower = new LineFollower(
+                sampler.getLeft(),
+                sampler.getRight(),
+                sampler.getCenter(),
+                NxtHardware.driveMotor(leftMotor),
+                NxtHardware.driveMotor(rightMotor),
+                NxtHardware.bumpSensor(touchSensor),
+                NxtHardware.CLOCK,
+                display,
+                parameters);
+        follower.setSampler(sampler);
+        if (ROUTE_TARGET >= 0) {
+            follower.setRoute(TrackGraph.fromEdges(TRACK_NODES, TRACK_LAYOUT), ROUTE_START_NODE, ROUTE_START_PORT,
+                    ROUTE_TARGET);
+        }
 
-            if (System.currentTimeMillis() < nextExecution) {
-                continue;
+        // LEFT and RIGHT together switch the display to the loop profile
+        LoopProfiler profiler = new LoopProfiler(NxtHardware.CLOCK, parameters.executionFrequency);
+        follower.setProfiler(profiler);
+        display.setProfiler(profiler);
+        UserInputHandler.watchChord(Button.ID_LEFT | Button.ID_RIGHT, new Runnable() {
+            @Override
+            public void run() {
+                display.toggleProfile();
             }
-            nextExecution = System.currentTimeMillis() + 1000 / EXECUTION_FREQUENCY;
-            LCDHelper.resetAppendedItems();
+        });
 
-            Symbol symbol = readSymbol();
-            LCDHelper.appendingToDisplay(symbol.debugDescription(), false, 1);
+        // Holding ESCAPE for a second stops the robot
+        UserInputHandler.watchHold(Button.ID_ESCAPE, ABORT_HOLD_TIME, new Runnable() {
+            @Override
+            public void run() {
+                follower.abort();
+            }
+        });
 
-            followLine(symbol);
+        FlightRecorder recorder = openRecorder(parameters.executionFrequency);
+        if (recorder != null) {
+            follower.setRecorder(recorder);
+            recorder.start();
         }
-    }
-
-    private static void move(int amount) {
-        int leftSpeed;
-        int rightSpeed;
-
-        amount = Math.max(-100, Math.min(100, amount));
-
-        if (amount < 0) { // Turn left
-            leftSpeed = (int) (DEFAULT_SPEED * (1.0 + amount / 100.0));
-            rightSpeed = DEFAULT_SPEED;
-            lastTurnedLeft = true;
-        } else if (amount > 0) { // Turn right
-            leftSpeed = DEFAULT_SPEED;
-            rightSpeed = (int) (DEFAULT_SPEED * (1.0 - amount / 100.0));
-            lastTurnedLeft = false;
-        } else { // Move straight
-            leftSpeed = DEFAULT_SPEED;
-            rightSpeed = DEFAULT_SPEED;
-            lastTurnedLeft = null;
+        if (telemetry != null) {
+            follower.setTelemetry(telemetry);
+            telemetry.start();
         }
 
-        leftMotor.setSpeed(leftSpeed);
-        rightMotor.setSpeed(rightSpeed);
-
-        moveForward();
-    }
-
-    private static void moveForward() {
-        leftMotor.backward();
-        rightMotor.backward();
-    }
-
-    private static void moveBackward() {
-        leftMotor.forward();
-        rightMotor.forward();
-    }
-
-    private static void stop() {
-        leftMotor.stop();
-        rightMotor.stop();
-    }
-
-    private static void setSpeeds(int speed) {
-        leftMotor.setSpeed(speed);
-        rightMotor.setSpeed(speed);
-    }
-
-    private static void rotate(boolean clockwise) {
-        stop();
-        setSpeeds(150);
-
-        if (clockwise) {
-            leftMotor.backward();
-            rightMotor.forward();
-        } else {
-            leftMotor.forward();
-            rightMotor.backward();
+        // The lift moves at every pick-up marker while the robot drives on
+        int period = 1000 / parameters.executionFrequency;
+        TaskExecutor executor = new TaskExecutor(follower.getScheduler(), NxtHardware.CLOCK,
+                period * TASK_BUDGET_SHARE / 100);
+        final Lift lift = new Lift(NxtHardware.driveMotor(liftMotor), parameters);
+        int drive = executor.add(follower, PRIORITY_DRIVE, 1, period);
+        executor.add(lift, PRIORITY_LIFT, 1, 2 * period);
+        follower.setMarkerListener(new MarkerListener() {
+            @Override
+            public void markerRecognized(int marker) {
+                if (marker == MarkerRecognizer.MARKER_PICK_UP) {
+                    lift.toggle();
+                }
+            }
+        });
+
+        executor.runUntilDone(drive);
+        lift.stop();
+        // The render thread has to be done before anything else draws on the
+        // screen
+        display.stop();
+
+        boolean logIncomplete = false;
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                logIncomplete = true;
+            }
         }
-    }
-
-    private static boolean isTouching() {
-        return touchSensor.isPressed();
-    }
-
-    private static Symbol readSymbol() {
-        int leftReading = leftSensor.getLightValue();
-        int rightReading = rightSensor.getLightValue();
-        int centerReading = centerSensor.getLightValue();
-        return new Symbol(leftReading, rightReading, centerReading);
-    }
 
-    private static boolean shouldTurnLeft(Symbol symbol) {
-        return symbol.left < symbol.right && symbol.left < symbol.center;
-    }
-
-    private static boolean shouldTurnRight(Symbol symbol) {
-        return symbol.right < symbol.left && symbol.right < symbol.center;
-    }
-
-    private static boolean noHugeDifference(Symbol symbol) {
-        final int maxDifference = 15; // TODO: Adjust
-        return Math.abs(symbol.left - symbol.right) < maxDifference
-                && Math.abs(symbol.left - symbol.center) < maxDifference
-                && Math.abs(symbol.right - symbol.center) < maxDifference;
-    }
+        boolean telemetryFailed = false;
+        if (telemetry != null) {
+            try {
+                telemetry.close();
+            } catch (IOException e) {
+                // The PC went away, the flight log still has every tick
+                telemetryFailed = true;
+            }
+        }
 
-    private static boolean allBlack(Symbol symbol) {
-        return symbol.left < BLACK_THRESHOLD && symbol.right < BLACK_THRESHOLD && symbol.center < BLACK_THRESHOLD
-                && noHugeDifference(symbol);
+        exportProfile(profiler, follower.getLineSearch(), logIncomplete, telemetryFailed);
     }
 
-    private static void backoff(int duration) {
-        stop();
-        setSpeeds(150);
-        moveBackward();
-        Delay.msDelay(duration);
-        stop();
-    }
+    /**
+     * Writes the loop profile, the line search statistics and the errors of
+     * the run to a file and shows the profile page on the display. The page
+     * fills the screen, so errors replace its column header with a short
+     * list: log for the flight log, tlm for the telemetry and txt for the
+     * loop report.
+     */
+    private static void exportProfile(LoopProfiler profiler, LineSearch search, boolean logIncomplete,
+            boolean telemetryFailed) {
+        String errors = "";
+        if (logIncomplete) {
+            errors += "Flight log incomplete\n";
+        }
+        if (telemetryFailed) {
+            errors += "Telemetry failed\n";
+        }
 
-    private static void followLine(Symbol symbol) {
-        if (!allBlack(symbol) && noHugeDifference(symbol)) {
-            LCDHelper.appendingToDisplay("FORWARD LIKE GOD SAYS", true, 2);
-            if (lastTurnedLeft != null) {
-                move(lastTurnedLeft ? -100 : 100);
-            } else {
-                move(0);
+        boolean reportWritten = true;
+        try {
+            FileOutputStream out = new FileOutputStream(new File(LOOP_REPORT));
+            try {
+                out.write(profiler.report().getBytes());
+                out.write((search.summary() + "\n").getBytes());
+                out.write(errors.getBytes());
+            } finally {
+                out.close();
             }
-        } else if (shouldTurnLeft(symbol)) {
-            LCDHelper.appendingToDisplay("LEFT", true, 2);
-            move(-100);
-        } else if (shouldTurnRight(symbol)) {
-            LCDHelper.appendingToDisplay("RIGHT", true, 2);
-            move(100);
-        } else {
-            LCDHelper.appendingToDisplay("FORWARD", true, 2);
-            move(0);
+        } catch (IOException e) {
+            reportWritten = false;
         }
-    }
-
-    private static long rotationSectionStart = 0;
-    private static boolean clockwise = true;
-    private static boolean needsForward = false;
-    private static long forwardStartTime = 0;
-    private static long realignStartTime = 0;
-
-    private static boolean searchLine() {
-        Symbol symbol = readSymbol();
-
-        boolean atLeastOneBlack = checkForBlack(null, symbol) || checkForBlack(false, symbol) || checkForBlack(true, symbol);
-
-        LCDHelper.appendingToDisplay("ALB: " + atLeastOneBlack, false, 42);
 
-        if (atLeastOneBlack) {
-            rotationSectionStart = 0;
-            stop();
-            return true;
+        String page = profiler.page();
+        String failed = (logIncomplete ? " log" : "") + (telemetryFailed ? " tlm" : "") + (reportWritten ? "" : " txt");
+        if (failed.length() > 0) {
+            page = "Err" + failed + page.substring(page.indexOf('\n'));
         }
+        LCDHelper.display(page, false);
+    }
 
-        if (rotationSectionStart == 0) {
-            rotationSectionStart = System.currentTimeMillis();
+    /**
+     * Waits for a PC to connect over USB and opens the telemetry stream. The
+     * control loop runs without telemetry if no PC connects in time.
+     */
+    private static TelemetryStreamer openTelemetry(int frequency) {
+        if (!TELEMETRY) {
+            return null;
         }
-
-        if (System.currentTimeMillis() - rotationSectionStart > 1000) {
-            stop();
-            clockwise = !clockwise;
-            rotationSectionStart = 0;
-        } else {
-            rotate(clockwise);
+        LCDHelper.display("Waiting for PC", true);
+        NXTConnection connection = USB.waitForConnection(TELEMETRY_TIMEOUT, NXTConnection.RAW);
+        LCDHelper.clear();
+        if (connection == null) {
+            return null;
         }
+        return new TelemetryStreamer(connection.openOutputStream(), NxtHardware.CLOCK, frequency,
+                TELEMETRY_CAPACITY, TELEMETRY_BATCH, TELEMETRY_FLUSH_INTERVAL);
+    }
 
-        if (!clockwise) {
-            if (realignStartTime == 0) {
-                realignStartTime = System.currentTimeMillis();
-            }
-
-            if (System.currentTimeMillis() - realignStartTime > 1000) {
-                stop();
-                needsForward = true;
-                realignStartTime = 0;
-            } else {
-                rotate(!clockwise);
-            }
-
-            if (needsForward) {
-                if (forwardStartTime == 0) {
-                    forwardStartTime = System.currentTimeMillis();
-                }
-
-                if (System.currentTimeMillis() - forwardStartTime > 1000) {
-                    stop();
-                    needsForward = false;
-                    forwardStartTime = 0;
-                } else {
-                    moveForward();
-                }
-            }
+    /**
+     * Opens the flight recorder. The control loop runs without recording if
+     * the log file cannot be created.
+     */
+    private static FlightRecorder openRecorder(int frequency) {
+        try {
+            FileOutputStream out = new FileOutputStream(new File(FLIGHT_LOG));
+            return new FlightRecorder(out, NxtHardware.CLOCK, frequency, RECORDER_CAPACITY, RECORDER_FLUSH_INTERVAL);
+        } catch (IOException e) {
+            return null;
         }
-
-        return false;
     }
 
-    private static Boolean checkForBlack(Boolean checkingCoded, Symbol symbol) {
-        int checking, compareMoreLeft, compareMoreRight;
-        if (checkingCoded == null) {
-            checking = symbol.center;
-            compareMoreLeft = symbol.left;
-            compareMoreRight = symbol.right;
-        } else if (checkingCoded) {
-            checking = symbol.right;
-            compareMoreLeft = symbol.left;
-            compareMoreRight = symbol.center;
-        } else {
-            checking = symbol.left;
-            compareMoreLeft = symbol.center;
-            compareMoreRight = symbol.right;
+    /**
+     * Wraps a light sensor for the sampler. With differential sampling the
+     * ambient level is measured right after the calibration, under the same
+     * lighting.
+     */
+    private static LineSensor lineSensor(LightSensor sensor) {
+        if (!DIFFERENTIAL_SAMPLING) {
+            return NxtHardware.lineSensor(sensor);
         }
-
-        boolean mostLikelyBlack = checking < compareMoreLeft - FLUCTUATION_BUFFER
-                && checking < compareMoreRight - FLUCTUATION_BUFFER;
-        boolean mostLikelyWhite = checking > compareMoreLeft - FLUCTUATION_BUFFER
-                && checking > compareMoreRight - FLUCTUATION_BUFFER;
-
-        return mostLikelyBlack ? true : mostLikelyWhite ? false : null;
+        DifferentialLightSensor differential = new DifferentialLightSensor(NxtHardware.floodlightSensor(sensor),
+                NxtHardware.CLOCK, LAMP_SETTLE_TIME);
+        differential.calibrateAmbient(AMBIENT_SAMPLES);
+        return differential;
     }
+
 }
@@ -0,0 +1,18 @@
+/**
+ * The {@code MarkerListener} interface is told about the markers the
+ * {@link MarkerRecognizer} finds on the track.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public interface MarkerListener {
+    /**
+     * Called on the control thread when a marker was driven over. Returns
+     * quickly and does not allocate, it runs inside a control tick.
+     *
+     * @param marker the id of the marker, one of the {@code MARKER_}
+     *               constants of {@link MarkerRecognizer} for the default
+     *               markers
+     */
+    void markerRecognized(int marker);
+}
@@ -0,0 +1,316 @@
+/**
+ * The {@code MarkerRecognizer} class recognizes coded markers laid across the
+ * track while the robot drives over them. A marker is a sequence of bars,
+ * like a bar code: the lengths of the bars and of the gaps between them are
+ * measured with the odometry, so a marker reads the same at every speed.
+ *
+ * Every sample is reduced to a symbol, by default {@link #SYMBOL_BAR} when
+ * the classifier sees a crossing (all sensors black) and
+ * {@link #SYMBOL_TRACK} otherwise. Consecutive equal symbols form a run.
+ * When a run ends, each marker checks whether it is the next element of its
+ * code. The work per sample is constant and nothing is buffered.
+ *
+ * A symbol change is only accepted after it was seen in a number of samples
+ * in a row, so single noisy samples do not split a bar. Once a bar started,
+ * it also goes on while the brightest reading stays below a hold level, so a
+ * bar that reads close to the black threshold is not cut into pieces.
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public class MarkerRecognizer {
+    // Symbols
+    public static final int SYMBOL_TRACK = 0;
+    public static final int SYMBOL_BAR = 1;
+    public static final int SYMBOLS = 2;
+
+    // Markers
+    public static final int NO_MARKER = -1;
+    public static final int MARKER_STOP = 0;
+    public static final int MARKER_SLOW_ZONE = 1;
+    public static final int MARKER_PICK_UP = 2;
+
+    /**
+     * Largest number of markers and of elements of a marker code.
+     */
+    public static final int MAX_MARKERS = 8;
+    public static final int MAX_ELEMENTS = 8;
+
+    /**
+     * Number of samples in a row that confirm a new symbol by default. A bar
+     * is confirmed by its first sample, so short bars are read at full speed,
+     * the end of a bar needs two samples, a noisy sample inside a bar does
+     * not split it.
+     */
+    private static final int BAR_CONFIRM_SAMPLES = 1;
+    private static final int TRACK_CONFIRM_SAMPLES = 2;
+
+    private static final int STATES = 6;
+
+    // Default code lengths in millimeters
+    private static final int SHORT_BAR_MIN = 3;
+    private static final int SHORT_BAR_MAX = 30;
+    private static final int LONG_BAR_MIN = 31;
+    private static final int LONG_BAR_MAX = 80;
+    private static final int GAP_MIN = 15;
+    private static final int GAP_MAX = 70;
+
+    private final int[] symbolOfState = new int[STATES];
+    private final int[] confirmSamples = new int[SYMBOLS];
+    private int holdLevel = 0;
+    private double holdDistance = 0;
+
+    private int markers;
+    private final int[] markerIds = new int[MAX_MARKERS];
+    private final int[] lengths = new int[MAX_MARKERS];
+    private final int[][] symbols = new int[MAX_MARKERS][MAX_ELEMENTS];
+    private final int[][] minimums = new int[MAX_MARKERS][MAX_ELEMENTS];
+    private final int[][] maximums = new int[MAX_MARKERS][MAX_ELEMENTS];
+    private final int[] progress = new int[MAX_MARKERS];
+
+    private boolean started = false;
+    private int runSymbol;
+    private double runStart;
+    private int candidate;
+    private int candidateCount;
+    private double candidateStart;
+    private double barEnd = Double.NEGATIVE_INFINITY;
+
+    private int recognized;
+
+    /**
+     * Constructs a recognizer with the default markers:
+     *
+     * <pre>
+     * stop       long bar,  gap, long bar
+     * slow zone  short bar, gap, short bar
+     * pick-up    short bar, gap, long bar
+     * </pre>
+     *
+     * Short bars are about 25 mm, long bars about 60 mm and gaps about 30 mm
+     * wide. The light sensors average over a spot, so a bar reads about 10 mm
+     * shorter and a gap about 10 mm longer.
+     */
+    public MarkerRecognizer() {
+        setSymbol(LineClassifier.CROSSING, SYMBOL_BAR);
+        setConfirmSamples(SYMBOL_TRACK, TRACK_CONFIRM_SAMPLES);
+        setConfirmSamples(SYMBOL_BAR, BAR_CONFIRM_SAMPLES);
+        addMarker(MARKER_STOP, new int[] { SYMBOL_BAR, SYMBOL_TRACK, SYMBOL_BAR },
+                new int[] { LONG_BAR_MIN, GAP_MIN, LONG_BAR_MIN }, new int[] { LONG_BAR_MAX, GAP_MAX, LONG_BAR_MAX });
+        addMarker(MARKER_SLOW_ZONE, new int[] { SYMBOL_BAR, SYMBOL_TRACK, SYMBOL_BAR },
+                new int[] { SHORT_BAR_MIN, GAP_MIN, SHORT_BAR_MIN },
+                new int[] { SHORT_BAR_MAX, GAP_MAX, SHORT_BAR_MAX });
+        addMarker(MARKER_PICK_UP, new int[] { SYMBOL_BAR, SYMBOL_TRACK, SYMBOL_BAR },
+                new int[] { SHORT_BAR_MIN, GAP_MIN, LONG_BAR_MIN }, new int[] { SHORT_BAR_MAX, GAP_MAX, LONG_BAR_MAX });
+    }
+
+    /**
+     * Sets the symbol a classifier state is read as.
+     *
+     * @param state  the state of the {@link LineClassifier}
+     * @param symbol the symbol
+     */
+    public void setSymbol(int state, int symbol) {
+        symbolOfState[state] = symbol;
+    }
+
+    /**
+     * Sets the number of samples in a row that confirm a change to a symbol.
+     *
+     * @param symbol  the symbol
+     * @param samples the number of samples, at least 1
+     */
+    public void setConfirmSamples(int symbol, int samples) {
+        confirmSamples[symbol] = Math.max(1, samples);
+    }
+
+    /**
+     * Sets the hold level of a bar: once a bar started, a sample whose
+     * brightest reading is below this level still belongs to the bar.
+     *
+     * @param level the light value, 0 to end a bar with its last crossing
+     */
+    public void setHoldLevel(int level) {
+        holdLevel = level;
+    }
+
+    /**
+     * Sets the distance behind a bar that still counts as near the bar, see
+     * {@link #isNearBar(double)}. The sensors leave a bar one after the
+     * other, so their readings right behind it do not show the line.
+     *
+     * @param distance the distance in millimeters
+     */
+    public void setHoldDistance(double distance) {
+        holdDistance = distance;
+    }
+
+    /**
+     * Adds a marker. Its code is a sequence of runs, each with a symbol and
+     * the range of its length.
+     *
+     * @param id       the id reported when the marker is recognized
+     * @param code     the symbols of the runs
+     * @param minimums the shortest length of each run in millimeters
+     * @param maximums the longest length of each run in millimeters
+     */
+    public void addMarker(int id, int[] code, int[] minimums, int[] maximums) {
+        if (markers == MAX_MARKERS) {
+            throw new IllegalStateException("Too many markers");
+        }
+        if (code.length == 0 || code.length > MAX_ELEMENTS || minimums.length != code.length
+                || maximums.length != code.length) {
+            throw new IllegalArgumentException("Invalid marker code");
+        }
+        markerIds[markers] = id;
+        lengths[markers] = code.length;
+        for (int i = 0; i < code.length; i++) {
+            symbols[markers][i] = code[i];
+            this.minimums[markers][i] = minimums[i];
+            this.maximums[markers][i] = maximums[i];
+        }
+        markers++;
+    }
+
+    /**
+     * Removes all markers.
+     */
+    public void clearMarkers() {
+        markers = 0;
+    }
+
+    /**
+     * Forgets the runs seen so far, for example when the robot leaves the
+     * line.
+     */
+    public void reset() {
+        started = false;
+        barEnd = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < markers; i++) {
+            progress[i] = 0;
+        }
+    }
+
+    /**
+     * Feeds one sample.
+     *
+     * @param state     the state of the {@link LineClassifier}
+     * @param brightest the brightest of the three readings
+     * @param distance  the travelled distance of the odometry in millimeters
+     * @return the id of the marker that was completed with this sample, or
+     *         {@link #NO_MARKER}
+     */
+    public int update(int state, int brightest, double distance) {
+        int symbol = symbolOfState[state];
+        if (isOnBar() && brightest < holdLevel) {
+            symbol = SYMBOL_BAR;
+        }
+        if (!started) {
+            started = true;
+            runSymbol = symbol;
+            runStart = distance;
+            candidateCount = 0;
+            return NO_MARKER;
+        }
+
+        if (symbol == runSymbol) {
+            candidateCount = 0;
+            return NO_MARKER;
+        }
+        if (candidateCount == 0 || symbol != candidate) {
+            candidate = symbol;
+            candidateCount = 0;
+            candidateStart = distance;
+        }
+        if (++candidateCount < confirmSamples[candidate]) {
+            return NO_MARKER;
+        }
+
+        // The run ended where the new symbol was first seen
+        int marker = endRun(runSymbol, candidateStart - runStart);
+        if (runSymbol == SYMBOL_BAR) {
+            barEnd = candidateStart;
+        }
+        runSymbol = candidate;
+        runStart = candidateStart;
+        candidateCount = 0;
+        return marker;
+    }
+
+    private int endRun(int symbol, double length) {
+        int marker = NO_MARKER;
+        for (int i = 0; i < markers; i++) {
+            int next = progress[i];
+            if (fits(i, next, symbol, length)) {
+                next++;
+            } else {
+                // The run may start the code again
+                next = fits(i, 0, symbol, length) ? 1 : 0;
+            }
+            if (next == lengths[i]) {
+                if (marker == NO_MARKER) {
+                    marker = markerIds[i];
+                }
+                next = 0;
+            }
+            progress[i] = next;
+        }
+        if (marker != NO_MARKER) {
+            recognized++;
+        }
+        return marker;
+    }
+
+    private boolean fits(int marker, int element, int symbol, double length) {
+        return symbols[marker][element] == symbol && length >= minimums[marker][element]
+                && length <= maximums[marker][element];
+    }
+
+    /**
+     * Checks if the robot is on a bar of a marker.
+     *
+     * @return true if the current run is a bar
+     */
+    public boolean isOnBar() {
+        return started && runSymbol == SYMBOL_BAR;
+    }
+
+    /**
+     * Checks if the robot is on a bar of a marker or just behind it.
+     *
+     * @param distance the travelled distance of the odometry in millimeters
+     * @return true if the current run is a bar or the last bar ended less
+     *         than the hold distance before
+     */
+    public boolean isNearBar(double distance) {
+        return isOnBar() || distance - barEnd < holdDistance;
+    }
+
+    /**
+     * Returns the number of recognized markers.
+     *
+     * @return the number of markers
+     */
+    public int getRecognized() {
+        return recognized;
+    }
+
+    /**
+     * Returns a short name of a default marker.
+     *
+     * @param marker the marker id
+     * @return the name
+     */
+    public static String markerName(int marker) {
+        switch (marker) {
+            case MARKER_STOP:
+                return "STOP";
+            case MARKER_SLOW_ZONE:
+                return "SLOW ZONE";
+            case MARKER_PICK_UP:
+                return "PICK-UP";
+            default:
+                return "?";
+        }
+    }
+}
@@ -0,0 +1,55 @@
+
+
+/**
+ * The {@code MedianFilter} class returns the median of the last N values. It
+ * removes single spikes without smearing edges like an average does.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public class MedianFilter implements SampleFilter {
+    private final int[] window;
+    private final int[] sorted;
+    private int next = 0;
+    private int count = 0;
+
+    /**
+     * Constructs a median filter.
+     *
+     * @param size the number of values the median is taken of, should be odd
+     */
+    public MedianFilter(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive");
+        }
+        window = new int[size];
+        sorted = new int[size];
+    }
+
+    @Override
+    public int filter(int value) {
+        window[next] = value;
+        next = (next + 1) % window.length;
+        if (count < window.length) {
+            count++;
+        }
+
+        // Insertion sort, the window is small
+        for (int i = 0; i < count; i++) {
+            int current = window[i];
+            int j = i - 1;
+            while (j >= 0 && sorted[j] > current) {
+                sorted[j + 1] = sorted[j];
+                j--;
+            }
+            sorted[j + 1] = current;
+        }
+        return sorted[count / 2];
+    }
+
+    @Override
+    public void reset() {
+        next = 0;
+        count = 0;
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * The {@code Navigator} class keeps track of where the robot is in a
+ * {@link TrackGraph} and decides the turn at every junction on the way to
+ * the target. The robot is always on the line behind an exit port of the
+ * last node, so the next junction is the neighbor at that port and the turn
+ * there is looked up in the plan of the graph.
+ *
+ * A junction that is detected before half of the line to the next node is
+ * driven is not taken as that node, it is probably a marker or a glitch.
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public class Navigator {
+    // Results of a junction besides the turns of the TrackGraph
+    public static final int NOT_A_NODE = -1;
+    public static final int ARRIVED = 3;
+    public static final int NO_ROUTE = 4;
+
+    /**
+     * Largest number of nodes remembered in the route.
+     */
+    public static final int MAX_ROUTE = 32;
+
+    private final TrackGraph graph;
+    private final int[] route = new int[MAX_ROUTE];
+    private int routeLength;
+
+    private int node = TrackGraph.NONE;
+    private int exitPort = TrackGraph.NONE;
+    private double leftAt;
+    private int turns;
+
+    /**
+     * Constructs a navigator on a planned graph.
+     *
+     * @param graph the graph, see {@link TrackGraph#plan(int, int)}
+     */
+    public Navigator(TrackGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Sets the position of the robot on the line behind a port of a node.
+     *
+     * @param node     the node the robot left
+     * @param exitPort the port it left through
+     * @param distance the travelled distance of the odometry in millimeters
+     *                 when it left
+     */
+    public void start(int node, int exitPort, double distance) {
+        this.node = node;
+        this.exitPort = exitPort;
+        this.leftAt = distance;
+        routeLength = 0;
+        turns = 0;
+        remember(node);
+    }
+
+    /**
+     * Moves the robot to the next node at a detected junction and returns
+     * the turn there.
+     *
+     * @param distance the travelled distance of the odometry at the center
+     *                 of the junction in millimeters
+     * @return one of the {@code TURN_} constants of the {@link TrackGraph},
+     *         {@link #ARRIVED} at the target, {@link #NO_ROUTE} if the target
+     *         cannot be reached or {@link #NOT_A_NODE} if the junction is
+     *         too early
+     */
+    public int junction(double distance) {
+        int next = exitPort == TrackGraph.NONE ? TrackGraph.NONE : graph.neighbor(node, exitPort);
+        if (next == TrackGraph.NONE) {
+            return NO_ROUTE;
+        }
+        if (distance - leftAt < graph.length(node, exitPort) / 2.0) {
+            return NOT_A_NODE;
+        }
+        int arrivalPort = graph.neighborPort(node, exitPort);
+        node = next;
+        leftAt = distance;
+        remember(node);
+        if (node == graph.getTarget()) {
+            exitPort = TrackGraph.NONE;
+            return ARRIVED;
+        }
+
+        exitPort = graph.nextPort(node, arrivalPort);
+        if (exitPort == TrackGraph.NONE) {
+            return NO_ROUTE;
+        }
+        int turn = TrackGraph.turn(arrivalPort, exitPort);
+        if (turn != TrackGraph.TURN_STRAIGHT) {
+            turns++;
+        }
+        return turn;
+    }
+
+    private void remember(int visited) {
+        if (routeLength < MAX_ROUTE) {
+            route[routeLength++] = visited;
+        }
+    }
+
+    /**
+     * Returns the last node the robot passed.
+     *
+     * @return the node
+     */
+    public int getNode() {
+        return node;
+    }
+
+    /**
+     * Returns the number of turns taken so far.
+     *
+     * @return the number of turns
+     */
+    public int getTurns() {
+        return turns;
+    }
+
+    /**
+     * Describes the nodes the robot passed since the start.
+     *
+     * @return a one-line summary
+     */
+    public String summary() {
+        String nodes = "";
+        for (int i = 0; i < routeLength; i++) {
+            nodes += (i > 0 ? " -> " : "") + route[i];
+        }
+        return "Route: " + nodes + ", " + turns + " turns";
+    }
+}
@@ -0,0 +1,124 @@
+import lejos.nxt.LightSensor;
+import lejos.nxt.NXTRegulatedMotor;
+import lejos.nxt.TouchSensor;
+import lejos.util.Delay;
+
+/**
+ * The NxtHardware class connects the hardware interfaces of the control logic
+ * to the leJOS classes of the brick.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public final class NxtHardware {
+    // Private constructor to prevent instantiation
+    private NxtHardware() {
+    }
+
+    /**
+     * Clock backed by the system time of the brick.
+     */
+    public static final Clock CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleep(long duration) {
+            Delay.msDelay(duration);
+        }
+    };
+
+    /**
+     * Wraps a leJOS light sensor.
+     *
+     * @param sensor the sensor to wrap
+     * @return the line sensor
+     */
+    public static LineSensor lineSensor(final LightSensor sensor) {
+        return new LineSensor() {
+            @Override
+            public int getLightValue() {
+                return sensor.getLightValue();
+            }
+        };
+    }
+
+    /**
+     * Wraps a leJOS light sensor with a switchable lamp.
+     *
+     * @param sensor the sensor to wrap
+     * @return the floodlight sensor
+     */
+    public static FloodlightSensor floodlightSensor(final LightSensor sensor) {
+        return new FloodlightSensor() {
+            @Override
+            public int getLightValue() {
+                return sensor.getLightValue();
+            }
+
+            @Override
+            public void setFloodlight(boolean on) {
+                sensor.setFloodlight(on);
+            }
+        };
+    }
+
+    /**
+     * Wraps a leJOS regulated motor.
+     *
+     * @param motor the motor to wrap
+     * @return the drive motor
+     */
+    public static DriveMotor driveMotor(final NXTRegulatedMotor motor) {
+        return new DriveMotor() {
+            @Override
+            public void setSpeed(int speed) {
+                motor.setSpeed(speed);
+            }
+
+            @Override
+            public void forward() {
+                motor.forward();
+            }
+
+            @Override
+            public void backward() {
+                motor.backward();
+            }
+
+            @Override
+            public void stop() {
+                // stop() waits until the motor stands still, which would
+                // stall the control tick
+                motor.stop(true);
+            }
+
+            @Override
+            public int getTachoCount() {
+                return motor.getTachoCount();
+            }
+        };
+    }
+
+    /**
+     * Wraps a leJOS touch sensor.
+     *
+     * @param sensor the sensor to wrap
+     * @return the bump sensor
+     */
+    public static BumpSensor bumpSensor(final TouchSensor sensor) {
+        return new BumpSensor() {
+            @Override
+            public boolean isPressed() {
+                return sensor.isPressed();
+            }
+        };
+    }
+}
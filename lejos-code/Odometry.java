@@ -0,0 +1,142 @@
+/**
+ * The {@code Odometry} class integrates the wheel angles of the drive motors
+ * into the pose of the robot. The pose starts at the origin, heading along
+ * the x axis. Positive headings turn counterclockwise, so turning left
+ * increases the heading.
+ *
+ * The heading and the travelled distance take a few multiplications per
+ * update. The position needs a cosine and a sine, which are slow on a brick
+ * without floating point unit, so it is only integrated while position
+ * tracking is switched on and stands still otherwise.
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public class Odometry {
+    private final double millimetersPerDegree;
+    private final double wheelBase;
+
+    private boolean started = false;
+    private boolean trackingPosition = true;
+    private int lastLeftAngle;
+    private int lastRightAngle;
+
+    private double x;
+    private double y;
+    private double heading;
+    private double distance;
+
+    private double lastDistanceDelta;
+    private double lastHeadingDelta;
+
+    /**
+     * Constructs an odometry.
+     *
+     * @param wheelDiameter the wheel diameter in millimeters
+     * @param wheelBase     the distance between the wheels in millimeters
+     */
+    public Odometry(int wheelDiameter, int wheelBase) {
+        this.millimetersPerDegree = Math.PI * wheelDiameter / 360.0;
+        this.wheelBase = wheelBase;
+    }
+
+    /**
+     * Integrates the wheel movement since the last update. The first update
+     * only stores the angles.
+     *
+     * @param leftAngle  the angle of the left wheel in degrees, positive
+     *                   forward
+     * @param rightAngle the angle of the right wheel in degrees, positive
+     *                   forward
+     */
+    public void update(int leftAngle, int rightAngle) {
+        if (!started) {
+            started = true;
+            lastLeftAngle = leftAngle;
+            lastRightAngle = rightAngle;
+            return;
+        }
+
+        double left = (leftAngle - lastLeftAngle) * millimetersPerDegree;
+        double right = (rightAngle - lastRightAngle) * millimetersPerDegree;
+        lastLeftAngle = leftAngle;
+        lastRightAngle = rightAngle;
+
+        lastDistanceDelta = (left + right) / 2;
+        lastHeadingDelta = (right - left) / wheelBase;
+
+        // Moving along the mean heading of the step is exact for arcs up to
+        // second order
+        if (trackingPosition) {
+            double meanHeading = heading + lastHeadingDelta / 2;
+            x += lastDistanceDelta * Math.cos(meanHeading);
+            y += lastDistanceDelta * Math.sin(meanHeading);
+        }
+        heading += lastHeadingDelta;
+        distance += Math.abs(lastDistanceDelta);
+    }
+
+    /**
+     * Switches the integration of the position on or off, it is on by
+     * default. While it is off the position keeps its last value, so only
+     * movements measured while it is on add up.
+     *
+     * @param trackingPosition whether the position is integrated
+     */
+    public void setTrackingPosition(boolean trackingPosition) {
+        this.trackingPosition = trackingPosition;
+    }
+
+    /**
+     * Moves the pose back to the origin. The travelled distance is kept.
+     */
+    public void resetPose() {
+        x = 0;
+        y = 0;
+        heading = 0;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * Returns the heading.
+     *
+     * @return the heading in radians, not wrapped
+     */
+    public double getHeading() {
+        return heading;
+    }
+
+    /**
+     * Returns the travelled distance, backward movement counts as well.
+     *
+     * @return the distance in millimeters
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Returns the forward movement of the last update.
+     *
+     * @return the distance in millimeters, negative when driving backward
+     */
+    public double getDistanceDelta() {
+        return lastDistanceDelta;
+    }
+
+    /**
+     * Returns the turn of the last update.
+     *
+     * @return the angle in radians, positive when turning left
+     */
+    public double getHeadingDelta() {
+        return lastHeadingDelta;
+    }
+}
@@ -0,0 +1,47 @@
+
+
+/**
+ * The {@code OutlierFilter} class drops values that jump too far away from
+ * the last accepted value and repeats the last accepted value instead. A jump
+ * that persists for more than a few values is a real change and is accepted.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public class OutlierFilter implements SampleFilter {
+    private final int maxJump;
+    private final int maxRejects;
+
+    private int last;
+    private int rejects = 0;
+    private boolean initialized = false;
+
+    /**
+     * Constructs an outlier filter.
+     *
+     * @param maxJump    the largest accepted difference to the last value
+     * @param maxRejects the number of values in a row that may be rejected
+     */
+    public OutlierFilter(int maxJump, int maxRejects) {
+        this.maxJump = maxJump;
+        this.maxRejects = maxRejects;
+    }
+
+    @Override
+    public int filter(int value) {
+        if (initialized && Math.abs(value - last) > maxJump && rejects < maxRejects) {
+            rejects++;
+            return last;
+        }
+        initialized = true;
+        rejects = 0;
+        last = value;
+        return value;
+    }
+
+    @Override
+    public void reset() {
+        initialized = false;
+        rejects = 0;
+    }
+}
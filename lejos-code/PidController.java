@@ -0,0 +1,76 @@
+
+
+/**
+ * The {@code PidController} class is a proportional-integral-derivative
+ * controller working with integers only, because the ARM7 of the NXT has no
+ * floating point unit.
+ * 
+ * Gains are given in thousandths, so a gain of 1000 means 1.0. The controller
+ * assumes that {@link #update(int)} is called at a fixed rate, the integral and
+ * derivative terms are therefore per tick.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public class PidController {
+    /**
+     * Scale of the gains.
+     */
+    public static final int GAIN_SCALE = 1000;
+
+    private final int kp;
+    private final int ki;
+    private final int kd;
+    private final int integralLimit;
+
+    private int integral = 0;
+    private int lastError = 0;
+    private boolean hasLastError = false;
+
+    /**
+     * Constructs a controller.
+     *
+     * @param kp            the proportional gain in thousandths
+     * @param ki            the integral gain in thousandths
+     * @param kd            the derivative gain in thousandths
+     * @param integralLimit the largest absolute value of the error sum, which
+     *                      limits integral windup
+     */
+    public PidController(int kp, int ki, int kd, int integralLimit) {
+        this.kp = kp;
+        this.ki = ki;
+        this.kd = kd;
+        this.integralLimit = integralLimit;
+    }
+
+    /**
+     * Feeds the current error into the controller.
+     *
+     * @param error the current error
+     * @return the correction
+     */
+    public int update(int error) {
+        integral += error;
+        if (integral > integralLimit) {
+            integral = integralLimit;
+        } else if (integral < -integralLimit) {
+            integral = -integralLimit;
+        }
+
+        int derivative = hasLastError ? error - lastError : 0;
+        lastError = error;
+        hasLastError = true;
+
+        return (kp * error + ki * integral + kd * derivative) / GAIN_SCALE;
+    }
+
+    /**
+     * Clears the integral and derivative state, for example after the robot
+     * was stopped.
+     */
+    public void reset() {
+        integral = 0;
+        lastError = 0;
+        hasLastError = false;
+    }
+}
@@ -0,0 +1,135 @@
+
+
+/**
+ * The {@code SampleBuffer} class keeps the last readings of the three light
+ * sensors in preallocated primitive arrays. Adding and reading samples never
+ * allocates, so the control loop produces no garbage on the small NXT heap.
+ * 
+ * Samples are addressed by their age: age 0 is the latest sample, age 1 the
+ * one before and so on.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public class SampleBuffer {
+    private final int[] left;
+    private final int[] right;
+    private final int[] center;
+    private final long[] timestamps;
+
+    private int head = -1;
+    private int size = 0;
+
+    /**
+     * Constructs an empty buffer.
+     *
+     * @param capacity the number of samples kept
+     */
+    public SampleBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        left = new int[capacity];
+        right = new int[capacity];
+        center = new int[capacity];
+        timestamps = new long[capacity];
+    }
+
+    /**
+     * Adds a sample and overwrites the oldest one if the buffer is full.
+     *
+     * @param leftReading   the reading of the left sensor
+     * @param rightReading  the reading of the right sensor
+     * @param centerReading the reading of the center sensor
+     * @param timestamp     the time of the reading in milliseconds
+     */
+    public void add(int leftReading, int rightReading, int centerReading, long timestamp) {
+        head++;
+        if (head == left.length) {
+            head = 0;
+        }
+        left[head] = leftReading;
+        right[head] = rightReading;
+        center[head] = centerReading;
+        timestamps[head] = timestamp;
+        if (size < left.length) {
+            size++;
+        }
+    }
+
+    /**
+     * Removes all samples.
+     */
+    public void clear() {
+        head = -1;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return left.length;
+    }
+
+    /**
+     * Returns the left reading of a sample.
+     *
+     * @param age the age of the sample, 0 is the latest
+     * @return the reading
+     */
+    public int left(int age) {
+        return left[index(age)];
+    }
+
+    /**
+     * Returns the right reading of a sample.
+     *
+     * @param age the age of the sample, 0 is the latest
+     * @return the reading
+     */
+    public int right(int age) {
+        return right[index(age)];
+    }
+
+    /**
+     * Returns the center reading of a sample.
+     *
+     * @param age the age of the sample, 0 is the latest
+     * @return the reading
+     */
+    public int center(int age) {
+        return center[index(age)];
+    }
+
+    /**
+     * Returns the time of a sample.
+     *
+     * @param age the age of the sample, 0 is the latest
+     * @return the timestamp in milliseconds
+     */
+    public long timestamp(int age) {
+        return timestamps[index(age)];
+    }
+
+    private int index(int age) {
+        if (age < 0 || age >= size) {
+            throw new ArrayIndexOutOfBoundsException(age);
+        }
+        int index = head - age;
+        return index < 0 ? index + left.length : index;
+    }
+
+    /**
+     * Returns a string representation of the latest sample.
+     * 
+     * @return a string representation of the latest sample
+     */
+    public String debugDescription() {
+        if (size == 0) {
+            return "L: -\nR: -\nC: -";
+        }
+        return "L: " + left(0) + "\nR: " + right(0) + "\nC: " + center(0);
+    }
+}
@@ -0,0 +1,25 @@
+
+
+/**
+ * The {@code SampleFilter} interface is a stage of the filter chain that
+ * smooths the readings of a light sensor. Filters keep state per sensor, so
+ * every sensor needs its own instances. Filters work with integers only and
+ * do not allocate while filtering.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public interface SampleFilter {
+    /**
+     * Feeds a raw value into the filter.
+     *
+     * @param value the new value
+     * @return the filtered value
+     */
+    int filter(int value);
+
+    /**
+     * Forgets all previous values.
+     */
+    void reset();
+}
@@ -0,0 +1,199 @@
+
+
+/**
+ * The {@code SensorSampler} class reads the three light sensors on its own
+ * thread as fast as the sample interval allows and runs every reading through
+ * a {@link SampleFilter}. The control loop reads the latest filtered values
+ * through the sensors returned by {@link #getLeft()}, {@link #getRight()} and
+ * {@link #getCenter()} without waiting for the hardware.
+ * 
+ * The three values of a round are published together under a lock. The
+ * control loop takes a snapshot of the latest round with {@link #latch()}
+ * once per tick, and the sensors return the values of that snapshot until
+ * the next latch, no matter how often and in which order they are read. So
+ * the readings of a tick always belong to the same round.
+ * 
+ * @author leonweimann
+ * @version 1.1
+ */
+public class SensorSampler implements Runnable {
+    // Indices of the sensors in the snapshot
+    private static final int LEFT = 0;
+    private static final int RIGHT = 1;
+    private static final int CENTER = 2;
+
+    private final LineSensor leftSensor;
+    private final LineSensor rightSensor;
+    private final LineSensor centerSensor;
+
+    private final SampleFilter leftFilter;
+    private final SampleFilter rightFilter;
+    private final SampleFilter centerFilter;
+
+    private final Clock clock;
+    private final int sampleInterval;
+
+    // Latest round, guarded by the lock
+    private final Object lock = new Object();
+    private int left;
+    private int right;
+    private int center;
+
+    // Snapshot of the reading thread
+    private final int[] snapshot = new int[3];
+
+    private volatile long rounds = 0;
+    private volatile boolean running = false;
+
+    /**
+     * Constructs a sampler.
+     *
+     * @param leftSensor     the left light sensor
+     * @param rightSensor    the right light sensor
+     * @param centerSensor   the center light sensor
+     * @param leftFilter     the filter of the left sensor
+     * @param rightFilter    the filter of the right sensor
+     * @param centerFilter   the filter of the center sensor
+     * @param clock          the time source
+     * @param sampleInterval the time between two sampling rounds in
+     *                       milliseconds, 0 samples without pausing
+     */
+    public SensorSampler(LineSensor leftSensor, LineSensor rightSensor, LineSensor centerSensor,
+            SampleFilter leftFilter, SampleFilter rightFilter, SampleFilter centerFilter, Clock clock,
+            int sampleInterval) {
+        this.leftSensor = leftSensor;
+        this.rightSensor = rightSensor;
+        this.centerSensor = centerSensor;
+        this.leftFilter = leftFilter;
+        this.rightFilter = rightFilter;
+        this.centerFilter = centerFilter;
+        this.clock = clock;
+        this.sampleInterval = sampleInterval;
+    }
+
+    /**
+     * Creates the default filter chain for one light sensor: single spikes are
+     * rejected, then the median of 5 and a light moving average smooth the
+     * remaining noise.
+     *
+     * @return the filter chain
+     */
+    public static SampleFilter defaultFilter() {
+        return new FilterChain(new OutlierFilter(20, 2), new MedianFilter(5), new EmaFilter(500));
+    }
+
+    /**
+     * Takes the first samples and starts the sampling thread. The thread runs
+     * as a daemon.
+     */
+    public void start() {
+        sampleOnce();
+        running = true;
+        Thread thread = new Thread(this);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the sampling thread after its current round.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            sampleOnce();
+            if (sampleInterval > 0) {
+                clock.sleep(sampleInterval);
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Reads and filters all three sensors once. Call this directly to use the
+     * sampler without its thread.
+     */
+    public void sampleOnce() {
+        int leftValue = leftFilter.filter(leftSensor.getLightValue());
+        int rightValue = rightFilter.filter(rightSensor.getLightValue());
+        int centerValue = centerFilter.filter(centerSensor.getLightValue());
+        synchronized (lock) {
+            left = leftValue;
+            right = rightValue;
+            center = centerValue;
+        }
+        rounds++;
+    }
+
+    /**
+     * Takes a snapshot of the latest round for the sensors returned by
+     * {@link #getLeft()}, {@link #getRight()} and {@link #getCenter()}. The
+     * control loop calls this once per tick before it reads the sensors,
+     * see {@link LineFollower#setSampler(SensorSampler)}.
+     */
+    public void latch() {
+        synchronized (lock) {
+            snapshot[LEFT] = left;
+            snapshot[RIGHT] = right;
+            snapshot[CENTER] = center;
+        }
+    }
+
+    /**
+     * Returns the number of sampling rounds so far.
+     *
+     * @return the number of rounds
+     */
+    public long getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Returns the filtered left sensor.
+     *
+     * @return a sensor returning the filtered left value of the last
+     *         {@link #latch()}
+     */
+    public LineSensor getLeft() {
+        return new LineSensor() {
+            @Override
+            public int getLightValue() {
+                return snapshot[LEFT];
+            }
+        };
+    }
+
+    /**
+     * Returns the filtered right sensor.
+     *
+     * @return a sensor returning the filtered right value of the last
+     *         {@link #latch()}
+     */
+    public LineSensor getRight() {
+        return new LineSensor() {
+            @Override
+            public int getLightValue() {
+                return snapshot[RIGHT];
+            }
+        };
+    }
+
+    /**
+     * Returns the filtered center sensor.
+     *
+     * @return a sensor returning the filtered center value of the last
+     *         {@link #latch()}
+     */
+    public LineSensor getCenter() {
+        return new LineSensor() {
+            @Override
+            public int getLightValue() {
+                return snapshot[CENTER];
+            }
+        };
+    }
+}
@@ -1,50 +1,39 @@
+import java.io.File;
+import java.io.IOException;
+
 import lejos.nxt.Button;
-import lejos.nxt.LCD;
 import lejos.nxt.LightSensor;
 
 public final class Setup {
+    private static final String START_PROMPT = "Press\nENTER\nto start or hold\nESCAPE\nfor 3 seconds to calibrate ...";
+
+    // Results of loading the stored calibration
+    private static final int CALIBRATION_LOADED = 0;
+    private static final int CALIBRATION_MISSING = 1;
+    private static final int CALIBRATION_STALE = 2;
+
+    private static final CalibrationStore calibrationStore = new CalibrationStore(new File("calibration.dat"));
+
     public static void setup(LightSensor left, LightSensor right, LightSensor center) {
-        long nextDialogTime = System.currentTimeMillis();
-        while (true) {
-            if (nextDialogTime < System.currentTimeMillis()) {
-                nextDialogTime = System.currentTimeMillis() + 200;
-                LCDHelper.display("Press\nENTER\nto start or hold\nESCAPE\nfor 3 seconds to calibrate ...", true);
+        String prompt = START_PROMPT;
+        // Holding ESCAPE at start ignores the stored calibration
+        if (!Button.ESCAPE.isDown()) {
+            int calibration = loadCalibration(left, right, center);
+            if (calibration == CALIBRATION_LOADED) {
+                LCDHelper.display("Calibration loaded\n \nStarting ...", true);
+                return;
             }
-
-            if (Button.ENTER.isDown()) {
-                while (Button.ENTER.isDown()) {
-                }
-                LCDHelper.display("Continuing ...", true);
-                break;
-            } else if (checkForCalibrationRequestSimultaneously()) {
-                calibrateSensors(left, right, center);
-                continue;
+            if (calibration == CALIBRATION_STALE) {
+                // The prompt replaces any other message, so it tells the reason
+                prompt = "Calibration\nis stale\n" + START_PROMPT;
             }
         }
-    }
 
-    public static boolean checkForCalibrationRequestSimultaneously() {
-        if (Button.ESCAPE.isDown()) {
-            double lastRemainingTimeRounded = 0.0;
-            long startTime = System.currentTimeMillis();
-            while (Button.ESCAPE.isDown()) {
-                if (System.currentTimeMillis() - startTime >= 3000) {
-                    LCD.clear();
-                    return true;
-                } else {
-                    double remainingTime = 3 - (System.currentTimeMillis() - startTime) / 1000.0;
-                    double remainingTimeRounded = Math.round(remainingTime * 10) / 10.0;
-
-                    if (remainingTimeRounded != lastRemainingTimeRounded) {
-                        LCDHelper.display("Keep holding ESCAPE for\n \n" + remainingTimeRounded + " seconds", true);
-                        lastRemainingTimeRounded = remainingTimeRounded;
-                    }
-                }
-            }
-            LCD.clear();
+        while (UserInputHandler.awaitEnterOrEscapeHold(prompt)) {
+            calibrateSensors(left, right, center);
+            prompt = START_PROMPT;
         }
-
-        return false;
+        LCDHelper.display("Continuing ...", true);
     }
 
     public static void calibrateSensors(LightSensor left, LightSensor right, LightSensor center) {
@@ -58,5 +47,47 @@ public final class Setup {
         left.calibrateLow();
         right.calibrateLow();
         center.calibrateLow();
+
+        saveCalibration(left, right, center);
+    }
+
+    /**
+     * Applies the stored calibration if it is valid and the current readings
+     * still fit it.
+     *
+     * @return {@link #CALIBRATION_LOADED} if the stored calibration was
+     *         applied, {@link #CALIBRATION_MISSING} if there is no valid one
+     *         and {@link #CALIBRATION_STALE} if the readings no longer fit it
+     */
+    private static int loadCalibration(LightSensor left, LightSensor right, LightSensor center) {
+        if (!calibrationStore.load(3)) {
+            return CALIBRATION_MISSING;
+        }
+
+        int[] readings = { left.getNormalizedLightValue(), right.getNormalizedLightValue(),
+                center.getNormalizedLightValue() };
+        if (!calibrationStore.selfTest(readings)) {
+            return CALIBRATION_STALE;
+        }
+
+        int[] lows = calibrationStore.getLows();
+        int[] highs = calibrationStore.getHighs();
+        left.setLow(lows[0]);
+        left.setHigh(highs[0]);
+        right.setLow(lows[1]);
+        right.setHigh(highs[1]);
+        center.setLow(lows[2]);
+        center.setHigh(highs[2]);
+        return CALIBRATION_LOADED;
+    }
+
+    private static void saveCalibration(LightSensor left, LightSensor right, LightSensor center) {
+        calibrationStore.set(new int[] { left.getLow(), right.getLow(), center.getLow() },
+                new int[] { left.getHigh(), right.getHigh(), center.getHigh() });
+        try {
+            calibrationStore.save();
+        } catch (IOException e) {
+            LCDHelper.display("Saving calibration failed", true);
+        }
     }
 }
@@ -0,0 +1,18 @@
+
+
+/**
+ * The {@code StatusDisplay} interface receives the status snapshots of the
+ * control loop. On the brick the snapshots end up on the LCD.
+ * 
+ * @author leonweimann
+ * @version 1.1
+ */
+public interface StatusDisplay {
+    /**
+     * Publishes a snapshot. Implementations copy the snapshot and return
+     * without waiting for the display, so the caller may reuse it right away.
+     *
+     * @param status the current status of the control loop
+     */
+    void publish(ControlStatus status);
+}
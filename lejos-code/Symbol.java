@@ -8,9 +8,14 @@
  * 
  * 
  * @author leonweimann
- * @version 2.0
+ * @version 2.1
  */
 public class Symbol {
+    /**
+     * Timestamp value of a symbol without timestamp.
+     */
+    public static final long NO_TIMESTAMP = -1;
+
     /**
      * Constructs a Symbol with the specified left, right, and center values.
      *
@@ -34,11 +39,11 @@ public class Symbol {
         this.left = left;
         this.right = right;
         this.center = center;
-        this.timestamp = withTimestamp ? System.currentTimeMillis() : null;
+        this.timestamp = withTimestamp ? System.currentTimeMillis() : NO_TIMESTAMP;
     }
 
     public final int left, right, center;
-    public final Long timestamp;
+    public final long timestamp;
 
     /**
      * Checks if the symbol has a timestamp.
@@ -46,7 +51,7 @@ public class Symbol {
      * @return true if the symbol has a timestamp, false otherwise.
      */
     public boolean isTimestamped() {
-        return timestamp != null;
+        return timestamp != NO_TIMESTAMP;
     }
 
     /**
@@ -0,0 +1,19 @@
+/**
+ * The {@code Task} interface describes a cooperative task of the
+ * {@link TaskExecutor}. A task does its work in short steps: a step never
+ * blocks or sleeps, it advances a state machine and returns, so the other
+ * tasks of the tick still run on time.
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public interface Task {
+    /**
+     * Runs one step of the task.
+     *
+     * @param now the start time of the tick in milliseconds
+     * @return true while the task has more to do, false when it is done and
+     *         can be removed
+     */
+    boolean step(long now);
+}
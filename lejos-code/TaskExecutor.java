@@ -0,0 +1,201 @@
+/**
+ * The {@code TaskExecutor} class runs cooperative {@link Task}s on the ticks
+ * of a single {@link ControlScheduler}, so a second mechanism like the lift
+ * moves while the robot drives, without a thread of its own and without
+ * blocking the control loop.
+ *
+ * Every task has a priority, a period in ticks and a deadline. A task is
+ * released every period and runs once per release. In each tick the released
+ * tasks run in the order of their priority. When the tick has used up its
+ * time budget, the remaining tasks are deferred to the next tick, except the
+ * first one, so the most important task always runs. A task that starts
+ * later than its deadline after its release counts as a deadline miss.
+ *
+ * The tasks are kept in preallocated arrays, a tick does not allocate.
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public class TaskExecutor {
+    /**
+     * Largest number of tasks.
+     */
+    public static final int MAX_TASKS = 8;
+
+    private final ControlScheduler scheduler;
+    private final Clock clock;
+    private final long budget;
+
+    // Sorted by priority, highest first
+    private final Task[] tasks = new Task[MAX_TASKS];
+    private final int[] ids = new int[MAX_TASKS];
+    private final int[] priorities = new int[MAX_TASKS];
+    private final int[] periods = new int[MAX_TASKS];
+    private final long[] deadlines = new long[MAX_TASKS];
+    private final long[] nextReleases = new long[MAX_TASKS];
+    private final long[] releaseTimes = new long[MAX_TASKS];
+    private final boolean[] active = new boolean[MAX_TASKS];
+    private int count;
+
+    // Indexed by task id
+    private final long[] runs = new long[MAX_TASKS];
+    private final long[] misses = new long[MAX_TASKS];
+    private final long[] deferrals = new long[MAX_TASKS];
+    private final boolean[] done = new boolean[MAX_TASKS];
+
+    private long tick;
+    private volatile boolean stopRequested = false;
+
+    /**
+     * Constructs an executor.
+     *
+     * @param scheduler the scheduler that gives the ticks
+     * @param clock     the time source
+     * @param budget    the time in milliseconds after which the remaining
+     *                  tasks of a tick are deferred
+     */
+    public TaskExecutor(ControlScheduler scheduler, Clock clock, long budget) {
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.budget = budget;
+    }
+
+    /**
+     * Adds a task. It is released in the next tick.
+     *
+     * @param task     the task
+     * @param priority the priority, higher runs first
+     * @param period   the number of ticks between two releases, at least 1
+     * @param deadline the time in milliseconds after a release within which
+     *                 the task should start
+     * @return the id of the task
+     */
+    public int add(Task task, int priority, int period, long deadline) {
+        if (count == MAX_TASKS) {
+            throw new IllegalStateException("Too many tasks");
+        }
+        int slot = count;
+        while (slot > 0 && priorities[slot - 1] < priority) {
+            copy(slot - 1, slot);
+            slot--;
+        }
+        tasks[slot] = task;
+        ids[slot] = count;
+        priorities[slot] = priority;
+        periods[slot] = Math.max(1, period);
+        deadlines[slot] = deadline;
+        nextReleases[slot] = tick;
+        releaseTimes[slot] = -1;
+        active[slot] = true;
+        return count++;
+    }
+
+    private void copy(int from, int to) {
+        tasks[to] = tasks[from];
+        ids[to] = ids[from];
+        priorities[to] = priorities[from];
+        periods[to] = periods[from];
+        deadlines[to] = deadlines[from];
+        nextReleases[to] = nextReleases[from];
+        releaseTimes[to] = releaseTimes[from];
+        active[to] = active[from];
+    }
+
+    /**
+     * Runs the ticks until the given task is done or {@link #stop()} is
+     * called.
+     *
+     * @param task the id of the task
+     */
+    public void runUntilDone(int task) {
+        while (!done[task] && !stopRequested) {
+            scheduler.awaitNextTick();
+            tick(clock.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Asks {@link #runUntilDone(int)} to return after the current tick. May
+     * be called from any thread.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Runs the released tasks of one tick. Call this directly to drive the
+     * executor without its scheduler.
+     *
+     * @param now the start time of the tick in milliseconds
+     */
+    public void tick(long now) {
+        boolean ranOne = false;
+        for (int i = 0; i < count; i++) {
+            if (!active[i] || tick < nextReleases[i]) {
+                continue;
+            }
+            int id = ids[i];
+            if (releaseTimes[i] < 0) {
+                releaseTimes[i] = now;
+            }
+            if (ranOne && clock.currentTimeMillis() - now >= budget) {
+                deferrals[id]++;
+                continue;
+            }
+
+            if (now - releaseTimes[i] > deadlines[i]) {
+                misses[id]++;
+            }
+            ranOne = true;
+            runs[id]++;
+            if (!tasks[i].step(now)) {
+                active[i] = false;
+                done[id] = true;
+            }
+            nextReleases[i] = tick + periods[i];
+            releaseTimes[i] = -1;
+        }
+        tick++;
+    }
+
+    /**
+     * Checks if a task is done.
+     *
+     * @param task the id of the task
+     * @return true if its last step returned false
+     */
+    public boolean isDone(int task) {
+        return done[task];
+    }
+
+    /**
+     * Returns how often a task ran.
+     *
+     * @param task the id of the task
+     * @return the number of steps
+     */
+    public long getRuns(int task) {
+        return runs[task];
+    }
+
+    /**
+     * Returns how often a task started later than its deadline.
+     *
+     * @param task the id of the task
+     * @return the number of deadline misses
+     */
+    public long getMisses(int task) {
+        return misses[task];
+    }
+
+    /**
+     * Returns how often a task was deferred to the next tick because the tick
+     * had used up its budget.
+     *
+     * @param task the id of the task
+     * @return the number of deferrals
+     */
+    public long getDeferrals(int task) {
+        return deferrals[task];
+    }
+}
@@ -0,0 +1,278 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The {@code TelemetryStreamer} class streams the control ticks live to a PC,
+ * for example over a USB or Bluetooth {@code NXTConnection}. The records are
+ * the same as in the {@link FlightRecorder}, the stream starts with the same
+ * header, so a receiver can store it as a flight log.
+ *
+ * Records are batched into frames:
+ *
+ * <pre>
+ * offset size
+ *      0    2  sync word 0xA55A
+ *      2    1  number of records n
+ *      3 n*34  records
+ *   3+34n   2  Fletcher-16 checksum of the record count and the records
+ * </pre>
+ *
+ * The control thread writes the records into a preallocated ring buffer and
+ * a low priority writer thread sends them. A slow link never stalls the
+ * control loop: if the ring buffer is full, the oldest record is dropped.
+ * The sequence numbers of the records show the gaps to the receiver.
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public class TelemetryStreamer implements Runnable {
+    public static final int SYNC = 0xA55A;
+    public static final int FRAME_OVERHEAD = 5;
+    public static final int MAX_BATCH = 255;
+
+    private final OutputStream out;
+    private final Clock clock;
+    private final int frequency;
+    private final int capacity;
+    private final int batch;
+    private final long flushInterval;
+    private final byte[] ring;
+    private final byte[] frame;
+
+    // Guarded by the lock, held only to copy records in and out
+    private final Object lock = new Object();
+    private long head;
+    private long tail;
+    private long dropped;
+
+    // Written by the control thread only
+    private long startTime = -1;
+    private long sequence;
+
+    // Written by the writer thread only
+    private boolean headerWritten = false;
+    private long sent;
+    private long frames;
+    private IOException error;
+
+    private final Object writeLock = new Object();
+    private volatile boolean running = false;
+
+    /**
+     * Constructs a streamer.
+     *
+     * @param out           the stream of the link
+     * @param clock         the time source
+     * @param frequency     the tick rate of the control loop in Hz, sent in
+     *                      the header
+     * @param capacity      the number of records the ring buffer holds
+     * @param batch         the largest number of records in a frame
+     * @param flushInterval the time between two flushes of the writer thread
+     *                      in milliseconds
+     */
+    public TelemetryStreamer(OutputStream out, Clock clock, int frequency, int capacity, int batch,
+            long flushInterval) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (batch <= 0 || batch > MAX_BATCH) {
+            throw new IllegalArgumentException("batch must be between 1 and " + MAX_BATCH);
+        }
+        this.out = out;
+        this.clock = clock;
+        this.frequency = frequency;
+        this.capacity = capacity;
+        this.batch = batch;
+        this.flushInterval = flushInterval;
+        this.ring = new byte[capacity * FlightRecorder.RECORD_SIZE];
+        this.frame = new byte[batch * FlightRecorder.RECORD_SIZE + FRAME_OVERHEAD];
+    }
+
+    /**
+     * Starts the writer thread. It runs as a daemon with minimal priority and
+     * stops at the first error of the link.
+     */
+    public void start() {
+        running = true;
+        Thread thread = new Thread(this);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                flush();
+            } catch (IOException e) {
+                return;
+            }
+            clock.sleep(flushInterval);
+        }
+    }
+
+    /**
+     * Streams one control tick. Called from the control thread, it does not
+     * allocate and does not wait for the link.
+     *
+     * @param status        the status of the tick
+     * @param mode          the mode of the line follower
+     * @param touched       whether the touch sensor was pressed
+     * @param leftVelocity  the speed of the left wheel
+     * @param rightVelocity the speed of the right wheel
+     * @param lateness      the lateness of the tick in milliseconds
+     * @param duration      the duration of the tick in milliseconds
+     * @param leftAngle     the angle of the left wheel in degrees
+     * @param rightAngle    the angle of the right wheel in degrees
+     */
+    public void record(ControlStatus status, int mode, boolean touched, int leftVelocity, int rightVelocity,
+            long lateness, long duration, int leftAngle, int rightAngle) {
+        long number = sequence++;
+        if (startTime < 0) {
+            startTime = status.timestamp;
+        }
+
+        synchronized (lock) {
+            if (head - tail >= capacity) {
+                // Drops the oldest record, the newest are the interesting ones
+                tail++;
+                dropped++;
+            }
+            FlightRecorder.encode(ring, (int) (head % capacity) * FlightRecorder.RECORD_SIZE, (int) number,
+                    (int) (status.timestamp - startTime), status, mode, touched, leftVelocity, rightVelocity,
+                    lateness, duration, leftAngle, rightAngle);
+            head++;
+        }
+    }
+
+    /**
+     * Sends all pending records in frames.
+     *
+     * @throws IOException if the link fails
+     */
+    public void flush() throws IOException {
+        synchronized (writeLock) {
+            if (error != null) {
+                throw error;
+            }
+            try {
+                if (!headerWritten) {
+                    FlightRecorder.writeHeader(out, frequency);
+                    headerWritten = true;
+                }
+                int length;
+                while ((length = fillFrame()) > 0) {
+                    out.write(frame, 0, length);
+                    frames++;
+                }
+                out.flush();
+            } catch (IOException e) {
+                error = e;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Moves up to one batch of records from the ring buffer into the frame.
+     *
+     * @return the length of the frame, 0 if no record is pending
+     */
+    private int fillFrame() {
+        int recordSize = FlightRecorder.RECORD_SIZE;
+        int count;
+        synchronized (lock) {
+            count = (int) Math.min(head - tail, batch);
+            for (int i = 0; i < count; i++) {
+                int index = (int) ((tail + i) % capacity);
+                System.arraycopy(ring, index * recordSize, frame, 3 + i * recordSize, recordSize);
+            }
+            tail += count;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        sent += count;
+
+        frame[0] = (byte) (SYNC >>> 8);
+        frame[1] = (byte) SYNC;
+        frame[2] = (byte) count;
+        int end = 3 + count * recordSize;
+        int checksum = checksum(frame, 2, end - 2);
+        frame[end] = (byte) (checksum >>> 8);
+        frame[end + 1] = (byte) checksum;
+        return end + 2;
+    }
+
+    /**
+     * Computes the Fletcher-16 checksum of a range of bytes.
+     *
+     * @param data   the bytes
+     * @param offset the start of the range
+     * @param length the length of the range
+     * @return the checksum
+     */
+    public static int checksum(byte[] data, int offset, int length) {
+        int sum1 = 0;
+        int sum2 = 0;
+        for (int i = offset; i < offset + length; i++) {
+            sum1 = (sum1 + (data[i] & 0xFF)) % 255;
+            sum2 = (sum2 + sum1) % 255;
+        }
+        return (sum2 << 8) | sum1;
+    }
+
+    /**
+     * Stops the writer thread, sends the pending records and closes the link.
+     *
+     * @throws IOException if the link fails
+     */
+    public void close() throws IOException {
+        running = false;
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the number of streamed ticks, including the dropped ones.
+     *
+     * @return the number of ticks
+     */
+    public long getRecorded() {
+        return sequence;
+    }
+
+    /**
+     * Returns the number of records sent over the link.
+     *
+     * @return the number of records
+     */
+    public long getSent() {
+        return sent;
+    }
+
+    /**
+     * Returns the number of frames sent over the link.
+     *
+     * @return the number of frames
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Returns the number of records that were dropped because the link was
+     * too slow.
+     *
+     * @return the number of dropped records
+     */
+    public long getDropped() {
+        synchronized (lock) {
+            return dropped;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+/**
+ * The {@code TextScreen} class is a character grid back buffer for a text
+ * display. It remembers what is currently shown and only pushes the cells
+ * that actually changed to the {@link Output}, so an unchanged screen costs
+ * nothing to redraw and never flickers.
+ * 
+ * Word wrapping and centering are done once per message and cached.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public class TextScreen {
+    /**
+     * Receives the changed cells of the screen.
+     */
+    public interface Output {
+        /**
+         * Draws a character.
+         *
+         * @param c the character
+         * @param x the column
+         * @param y the row
+         */
+        void drawChar(char c, int x, int y);
+    }
+
+    /**
+     * Maximum number of cached layouts before the cache is emptied.
+     */
+    private static final int LAYOUT_CACHE_SIZE = 32;
+
+    private final int width;
+    private final int height;
+    private final Output output;
+
+    private final char[][] shown;
+    private final char[][] frame;
+
+    private final Map<String, String[]> layouts = new HashMap<String, String[]>();
+    private final Map<String, String[]> centeredLayouts = new HashMap<String, String[]>();
+
+    private final int[] appendedItems;
+    private int appendedItemCount = 0;
+    private int appendRow = 0;
+    // Rows of the last finished frame that may still show text
+    private int shownRows = 0;
+
+    /**
+     * Constructs a screen. The display is assumed to be blank.
+     *
+     * @param width  the number of columns
+     * @param height the number of rows
+     * @param output the display the changed cells are pushed to
+     */
+    public TextScreen(int width, int height, Output output) {
+        this.width = width;
+        this.height = height;
+        this.output = output;
+        this.shown = new char[height][width];
+        this.frame = new char[height][width];
+        this.appendedItems = new int[height];
+        for (int y = 0; y < height; y++) {
+            fillRow(shown[y], 0);
+            fillRow(frame[y], 0);
+        }
+    }
+
+    /**
+     * Replaces the content of the screen with the given message.
+     *
+     * @param message the message, lines are separated by '\n'
+     * @param center  if true, each line is centered
+     */
+    public void display(String message, boolean center) {
+        String[] lines = layout(message, center);
+        for (int y = 0; y < height; y++) {
+            writeRow(y, y < lines.length ? lines[y] : null);
+        }
+        flushRows(0, height);
+        appendRow = 0;
+        shownRows = height;
+    }
+
+    /**
+     * Appends a message below the previously appended messages. Every item
+     * number is appended only once until {@link #resetAppendedItems()}.
+     *
+     * @param message    the message, lines are separated by '\n'
+     * @param center     if true, each line is centered
+     * @param itemNumber the item number of the message
+     */
+    public void append(String message, boolean center, int itemNumber) {
+        for (int i = 0; i < appendedItemCount; i++) {
+            if (appendedItems[i] == itemNumber) {
+                return;
+            }
+        }
+        if (appendedItemCount < appendedItems.length) {
+            appendedItems[appendedItemCount++] = itemNumber;
+        }
+
+        String[] lines = layout(message, center);
+        int firstRow = appendRow;
+        for (int i = 0; i < lines.length && appendRow < height; i++) {
+            writeRow(appendRow++, lines[i]);
+        }
+        flushRows(firstRow, appendRow);
+    }
+
+    /**
+     * Ends a frame of appended messages. Rows that an earlier frame used and
+     * this frame did not are blanked, so the rest of a taller frame does not
+     * stay below a shorter one.
+     */
+    public void finishAppendedItems() {
+        for (int y = appendRow; y < shownRows; y++) {
+            writeRow(y, null);
+        }
+        flushRows(appendRow, shownRows);
+        shownRows = appendRow;
+    }
+
+    /**
+     * Starts a new frame of appended messages and ends the previous one, see
+     * {@link #finishAppendedItems()}. The rows of the previous frame stay on
+     * the display until they are overwritten, so steady content does not
+     * flicker.
+     */
+    public void resetAppendedItems() {
+        finishAppendedItems();
+        appendedItemCount = 0;
+        appendRow = 0;
+    }
+
+    /**
+     * Blanks the whole screen.
+     */
+    public void clear() {
+        for (int y = 0; y < height; y++) {
+            writeRow(y, null);
+        }
+        flushRows(0, height);
+        appendedItemCount = 0;
+        appendRow = 0;
+        shownRows = 0;
+    }
+
+    /**
+     * Forgets what is shown on the display, so the next update redraws every
+     * cell. Call this after something else has drawn on the display.
+     */
+    public void invalidate() {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                shown[y][x] = 0;
+            }
+        }
+        shownRows = height;
+    }
+
+    private void writeRow(int y, String line) {
+        char[] row = frame[y];
+        int length = line == null ? 0 : Math.min(line.length(), width);
+        for (int x = 0; x < length; x++) {
+            row[x] = line.charAt(x);
+        }
+        fillRow(row, length);
+    }
+
+    private static void fillRow(char[] row, int from) {
+        for (int x = from; x < row.length; x++) {
+            row[x] = ' ';
+        }
+    }
+
+    private void flushRows(int from, int to) {
+        for (int y = from; y < to; y++) {
+            char[] wanted = frame[y];
+            char[] current = shown[y];
+            for (int x = 0; x < width; x++) {
+                if (wanted[x] != current[x]) {
+                    output.drawChar(wanted[x], x, y);
+                    current[x] = wanted[x];
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the wrapped and optionally centered lines of a message, using
+     * the cache if the message was laid out before.
+     *
+     * @param message the message, lines are separated by '\n'
+     * @param center  if true, each line is centered
+     * @return the lines, at most one screen high
+     */
+    public String[] layout(String message, boolean center) {
+        Map<String, String[]> cache = center ? centeredLayouts : layouts;
+        String[] lines = cache.get(message);
+        if (lines == null) {
+            if (cache.size() >= LAYOUT_CACHE_SIZE) {
+                cache.clear();
+            }
+            lines = wrap(message, center, width, height);
+            cache.put(message, lines);
+        }
+        return lines;
+    }
+
+    /**
+     * Splits a message into lines that fit the width of the screen. Lines are
+     * broken at spaces where possible, empty lines are skipped.
+     *
+     * @param message the message, lines are separated by '\n'
+     * @param center  if true, each line is centered
+     * @param width   the number of columns
+     * @param height  the maximum number of lines
+     * @return the lines
+     */
+    public static String[] wrap(String message, boolean center, int width, int height) {
+        String[] lines = new String[height];
+        int lineCount = 0;
+
+        StringTokenizer tokenizer = new StringTokenizer(message, "\n");
+        while (tokenizer.hasMoreTokens() && lineCount < height) {
+            String msgLine = tokenizer.nextToken();
+            while (msgLine.length() > 0 && lineCount < height) {
+                int endIndex = Math.min(width, msgLine.length());
+                String line = msgLine.substring(0, endIndex);
+
+                // Check if the line ends in the middle of a word
+                if (endIndex < msgLine.length() && msgLine.charAt(endIndex) != ' '
+                        && msgLine.charAt(endIndex - 1) != ' ') {
+                    int lastSpace = line.lastIndexOf(' ');
+                    if (lastSpace != -1) {
+                        line = line.substring(0, lastSpace);
+                        endIndex = lastSpace + 1;
+                    }
+                }
+
+                lines[lineCount++] = pad(line, center, width);
+                msgLine = msgLine.substring(endIndex).trim();
+            }
+        }
+
+        String[] result = new String[lineCount];
+        System.arraycopy(lines, 0, result, 0, lineCount);
+        return result;
+    }
+
+    private static String pad(String line, boolean center, int width) {
+        if (!center) {
+            return line;
+        }
+        int padding = (width - line.length()) / 2;
+        StringBuilder paddedLine = new StringBuilder(padding + line.length());
+        for (int i = 0; i < padding; i++) {
+            paddedLine.append(' ');
+        }
+        return paddedLine.append(line).toString();
+    }
+}
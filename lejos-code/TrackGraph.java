@@ -0,0 +1,284 @@
+/**
+ * The {@code TrackGraph} class stores the layout of a track network as a
+ * weighted graph and plans the fastest route to a target node. The nodes are
+ * the junctions of the network, the edges the lines between them.
+ *
+ * Every node has four ports, numbered counterclockwise from {@link #EAST},
+ * and every port is linked to a port of a neighbor node or to nothing. The
+ * links are kept in flat arrays indexed by {@code node * PORTS + port}, so
+ * the graph of a whole layout takes a few hundred bytes.
+ *
+ * The planner works on the pairs of a node and the port the robot arrived
+ * through, because the turn taken at a node depends on where the robot came
+ * from. It searches backward from the target with Dijkstra's algorithm and
+ * stores the best exit port of every pair, so the turn at the next junction
+ * is a table lookup. A turn costs a penalty in millimeters on top of the
+ * edge length, U-turns are not possible. The search runs on preallocated
+ * arrays and does not allocate.
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public class TrackGraph {
+    // Ports of a node
+    public static final int EAST = 0;
+    public static final int NORTH = 1;
+    public static final int WEST = 2;
+    public static final int SOUTH = 3;
+    public static final int PORTS = 4;
+
+    // Turns at a node
+    public static final int TURN_STRAIGHT = 0;
+    public static final int TURN_LEFT = 1;
+    public static final int TURN_RIGHT = 2;
+
+    /**
+     * Value of a missing link, exit port or target.
+     */
+    public static final int NONE = -1;
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final int nodes;
+    private final int[] links;
+    private final int[] lengths;
+
+    // Result of the last plan, indexed by node * PORTS + arrival port
+    private final int[] costs;
+    private final int[] exits;
+    private final boolean[] settled;
+    private int target = NONE;
+
+    /**
+     * Constructs a graph without edges.
+     *
+     * @param nodes the number of nodes
+     */
+    public TrackGraph(int nodes) {
+        this.nodes = nodes;
+        this.links = new int[nodes * PORTS];
+        this.lengths = new int[nodes * PORTS];
+        this.costs = new int[nodes * PORTS];
+        this.exits = new int[nodes * PORTS];
+        this.settled = new boolean[nodes * PORTS];
+        for (int i = 0; i < links.length; i++) {
+            links[i] = NONE;
+            costs[i] = UNREACHABLE;
+            exits[i] = NONE;
+        }
+    }
+
+    /**
+     * Creates a graph from a list of edges.
+     *
+     * @param nodes the number of nodes
+     * @param edges five values per edge: the first node and its port, the
+     *              second node and its port and the length in millimeters
+     * @return the graph
+     */
+    public static TrackGraph fromEdges(int nodes, int[] edges) {
+        if (edges.length % 5 != 0) {
+            throw new IllegalArgumentException("Expected five values per edge");
+        }
+        TrackGraph graph = new TrackGraph(nodes);
+        for (int i = 0; i < edges.length; i += 5) {
+            graph.connect(edges[i], edges[i + 1], edges[i + 2], edges[i + 3], edges[i + 4]);
+        }
+        return graph;
+    }
+
+    /**
+     * Connects two ports with a line.
+     *
+     * @param a      the first node
+     * @param portA  the port of the first node
+     * @param b      the second node
+     * @param portB  the port of the second node
+     * @param length the length of the line in millimeters
+     */
+    public void connect(int a, int portA, int b, int portB, int length) {
+        if (a < 0 || a >= nodes || b < 0 || b >= nodes || portA < 0 || portA >= PORTS || portB < 0
+                || portB >= PORTS) {
+            throw new IllegalArgumentException("Invalid edge");
+        }
+        links[a * PORTS + portA] = b * PORTS + portB;
+        links[b * PORTS + portB] = a * PORTS + portA;
+        lengths[a * PORTS + portA] = length;
+        lengths[b * PORTS + portB] = length;
+        target = NONE;
+    }
+
+    /**
+     * Returns the number of nodes.
+     *
+     * @return the number of nodes
+     */
+    public int getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the node a port leads to.
+     *
+     * @param node the node
+     * @param port the port
+     * @return the neighbor node, or {@link #NONE} if the port is not linked
+     */
+    public int neighbor(int node, int port) {
+        int link = links[node * PORTS + port];
+        return link == NONE ? NONE : link / PORTS;
+    }
+
+    /**
+     * Returns the port of the neighbor node a port leads to, the port the
+     * robot arrives through.
+     *
+     * @param node the node
+     * @param port the port
+     * @return the port of the neighbor, or {@link #NONE} if the port is not
+     *         linked
+     */
+    public int neighborPort(int node, int port) {
+        int link = links[node * PORTS + port];
+        return link == NONE ? NONE : link % PORTS;
+    }
+
+    /**
+     * Returns the length of the line at a port.
+     *
+     * @param node the node
+     * @param port the port
+     * @return the length in millimeters, 0 if the port is not linked
+     */
+    public int length(int node, int port) {
+        return lengths[node * PORTS + port];
+    }
+
+    /**
+     * Returns the turn from an arrival port to an exit port.
+     *
+     * @param arrivalPort the port the robot arrived through
+     * @param exitPort    the port the robot leaves through, not the arrival
+     *                    port
+     * @return one of the {@code TURN_} constants
+     */
+    public static int turn(int arrivalPort, int exitPort) {
+        int change = (exitPort - arrivalPort + PORTS) % PORTS;
+        if (change == 2) {
+            return TURN_STRAIGHT;
+        }
+        // The ports are counterclockwise, the one after the arrival is right
+        return change == 1 ? TURN_RIGHT : TURN_LEFT;
+    }
+
+    /**
+     * Returns a short name of a turn for logs.
+     *
+     * @param turn the turn
+     * @return the name
+     */
+    public static String turnName(int turn) {
+        switch (turn) {
+            case TURN_STRAIGHT:
+                return "STRAIGHT";
+            case TURN_LEFT:
+                return "LEFT";
+            case TURN_RIGHT:
+                return "RIGHT";
+            default:
+                return "?";
+        }
+    }
+
+    /**
+     * Plans the fastest routes from every node and arrival port to a target.
+     *
+     * @param target      the target node
+     * @param turnPenalty the cost of a turn in millimeters of straight line
+     */
+    public void plan(int target, int turnPenalty) {
+        int states = nodes * PORTS;
+        for (int i = 0; i < states; i++) {
+            costs[i] = UNREACHABLE;
+            exits[i] = NONE;
+            settled[i] = false;
+        }
+        for (int port = 0; port < PORTS; port++) {
+            costs[target * PORTS + port] = 0;
+        }
+
+        for (int round = 0; round < states; round++) {
+            int state = NONE;
+            for (int i = 0; i < states; i++) {
+                if (!settled[i] && costs[i] != UNREACHABLE && (state == NONE || costs[i] < costs[state])) {
+                    state = i;
+                }
+            }
+            if (state == NONE) {
+                break;
+            }
+            settled[state] = true;
+
+            // The robot arrives here from the node at the other end of the
+            // line, after entering that node through any other port
+            int link = links[state];
+            if (link == NONE) {
+                continue;
+            }
+            int node = link / PORTS;
+            int exit = link % PORTS;
+            if (node == target) {
+                continue;
+            }
+            for (int arrival = 0; arrival < PORTS; arrival++) {
+                if (arrival == exit) {
+                    continue;
+                }
+                int predecessor = node * PORTS + arrival;
+                int cost = costs[state] + lengths[link]
+                        + (turn(arrival, exit) == TURN_STRAIGHT ? 0 : turnPenalty);
+                if (!settled[predecessor] && cost < costs[predecessor]) {
+                    costs[predecessor] = cost;
+                    exits[predecessor] = exit;
+                }
+            }
+        }
+        this.target = target;
+    }
+
+    /**
+     * Returns the target of the last plan.
+     *
+     * @return the target node, or {@link #NONE} before the first plan or
+     *         after the graph changed
+     */
+    public int getTarget() {
+        return target;
+    }
+
+    /**
+     * Returns the port to leave a node through on the fastest route to the
+     * target.
+     *
+     * @param node        the node
+     * @param arrivalPort the port the robot arrived through
+     * @return the exit port, or {@link #NONE} at the target or if the target
+     *         cannot be reached
+     */
+    public int nextPort(int node, int arrivalPort) {
+        return target == NONE ? NONE : exits[node * PORTS + arrivalPort];
+    }
+
+    /**
+     * Returns the cost of the fastest route to the target.
+     *
+     * @param node        the node
+     * @param arrivalPort the port the robot arrived through
+     * @return the length of the route plus the turn penalties in
+     *         millimeters, or -1 if the target cannot be reached
+     */
+    public int cost(int node, int arrivalPort) {
+        int cost = costs[node * PORTS + arrivalPort];
+        return target == NONE || cost == UNREACHABLE ? -1 : cost;
+    }
+}
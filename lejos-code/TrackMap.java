@@ -0,0 +1,220 @@
+/**
+ * The {@code TrackMap} class learns the curvature of a closed track during
+ * the first lap and turns it into a speed profile for the following laps.
+ * The map is indexed by the distance travelled since the start of the lap
+ * and stored in fixed-size arrays of {@link #BIN_LENGTH} millimeter bins.
+ *
+ * A lap ends when the heading of the odometry has turned by a full circle,
+ * so the map only works on tracks that turn once around, like an oval. Every
+ * completed lap synchronizes the position again, so odometry errors do not
+ * add up over the laps.
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public class TrackMap {
+    /**
+     * Length of a bin in millimeters.
+     */
+    public static final int BIN_LENGTH = 50;
+
+    /**
+     * Maximum number of bins, tracks of up to 20 m fit into the map.
+     */
+    public static final int MAX_BINS = 400;
+
+    /**
+     * Number of bins the profile looks ahead of the wheel axle, covers the
+     * distance to the sensors and the time the motors need to follow.
+     */
+    private static final int ANTICIPATION_BINS = 2;
+
+    /**
+     * Number of neighbouring bins on each side the curvature is averaged
+     * over, removes the wiggles of the steering from the map.
+     */
+    private static final int SMOOTHING_BINS = 2;
+
+    private static final double FULL_TURN = 2 * Math.PI;
+
+    private final short[] turns = new short[MAX_BINS];
+    private final short[] speeds = new short[MAX_BINS];
+
+    private boolean learning = true;
+    private boolean started = false;
+    private int bins;
+    private int laps;
+
+    private double lapStartDistance;
+    private double lapStartHeading;
+    private int currentBin;
+    private double binStartHeading;
+
+    /**
+     * Forgets the map and starts learning a new lap at the next update.
+     */
+    public void reset() {
+        learning = true;
+        started = false;
+        bins = 0;
+    }
+
+    /**
+     * Follows the robot along the track. Call this every tick while the robot
+     * follows the line.
+     *
+     * @param distance the travelled distance of the odometry in millimeters
+     * @param heading  the heading of the odometry in radians
+     * @return true if a lap was completed in this update
+     */
+    public boolean update(double distance, double heading) {
+        if (!started) {
+            started = true;
+            startLap(distance, heading);
+            currentBin = 0;
+            binStartHeading = heading;
+            return false;
+        }
+
+        double turned = heading - lapStartHeading;
+        boolean lapCompleted = turned >= FULL_TURN || turned <= -FULL_TURN;
+
+        if (learning) {
+            int bin = (int) ((distance - lapStartDistance) / BIN_LENGTH);
+            if (bin >= MAX_BINS) {
+                // Too long or not a loop, start over
+                started = false;
+                return false;
+            }
+            while (currentBin < bin) {
+                turns[currentBin] = (short) Math.round((heading - binStartHeading) * 1000);
+                binStartHeading = heading;
+                currentBin++;
+            }
+            if (lapCompleted) {
+                bins = Math.max(1, bin);
+                learning = false;
+            }
+        }
+
+        if (lapCompleted) {
+            laps++;
+            lapStartDistance = distance;
+            lapStartHeading += turned > 0 ? FULL_TURN : -FULL_TURN;
+        }
+        return lapCompleted;
+    }
+
+    private void startLap(double distance, double heading) {
+        lapStartDistance = distance;
+        lapStartHeading = heading;
+    }
+
+    /**
+     * Computes the speed profile from the learned curvature. Straights get the
+     * maximum speed, curves with the given radius or less the base speed, and
+     * the speed is lowered early enough to brake before every curve.
+     *
+     * @param baseSpeed            the speed in curves in degrees per second
+     * @param maxSpeed             the speed on straights in degrees per second
+     * @param curveRadius          the radius in millimeters at which the base
+     *                             speed is reached
+     * @param deceleration         the deceleration of the wheels in degrees per
+     *                             second squared
+     * @param millimetersPerDegree the distance a wheel travels per degree
+     */
+    public void buildProfile(int baseSpeed, int maxSpeed, int curveRadius, int deceleration,
+            double millimetersPerDegree) {
+        if (learning) {
+            return;
+        }
+
+        for (int i = 0; i < bins; i++) {
+            int sum = 0;
+            for (int j = -SMOOTHING_BINS; j <= SMOOTHING_BINS; j++) {
+                sum += turns[wrap(i + j)];
+            }
+            double curvature = Math.abs(sum) / 1000.0 / ((2 * SMOOTHING_BINS + 1) * BIN_LENGTH);
+            double share = Math.min(1, curvature * curveRadius);
+            speeds[i] = (short) Math.round(maxSpeed - (maxSpeed - baseSpeed) * share);
+        }
+
+        // Two backward passes around the loop limit the speed to what the
+        // wheels can brake down to before the next bin
+        double brakeTerm = 2.0 * deceleration * BIN_LENGTH / millimetersPerDegree;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = bins - 1; i >= 0; i--) {
+                int next = speeds[wrap(i + 1)];
+                int limit = (int) Math.sqrt(next * next + brakeTerm);
+                if (speeds[i] > limit) {
+                    speeds[i] = (short) limit;
+                }
+            }
+        }
+    }
+
+    private int wrap(int bin) {
+        return ((bin % bins) + bins) % bins;
+    }
+
+    /**
+     * Returns the speed of the profile at the current position.
+     *
+     * @param distance the travelled distance of the odometry in millimeters
+     * @return the speed in degrees per second, or -1 while the map is learned
+     */
+    public int speedAt(double distance) {
+        if (learning || bins == 0) {
+            return -1;
+        }
+        int bin = (int) ((distance - lapStartDistance) / BIN_LENGTH) + ANTICIPATION_BINS;
+        return speeds[wrap(bin)];
+    }
+
+    /**
+     * Checks if the map is still learned.
+     *
+     * @return true until the first lap is completed
+     */
+    public boolean isLearning() {
+        return learning;
+    }
+
+    /**
+     * Returns the length of the learned lap.
+     *
+     * @return the number of bins, 0 while the map is learned
+     */
+    public int getBins() {
+        return learning ? 0 : bins;
+    }
+
+    /**
+     * Returns the number of completed laps since the start.
+     *
+     * @return the number of laps
+     */
+    public int getLaps() {
+        return laps;
+    }
+
+    /**
+     * Returns the learned turn of a bin.
+     *
+     * @param bin the bin
+     * @return the turn in milliradians, positive to the left
+     */
+    public int getTurn(int bin) {
+        return turns[bin];
+    }
+
+    /**
+     * Returns the speed of a bin.
+     *
+     * @param bin the bin
+     * @return the speed in degrees per second
+     */
+    public int getSpeed(int bin) {
+        return speeds[bin];
+    }
+}
@@ -1,16 +1,39 @@
 
 import lejos.nxt.Button;
-import lejos.nxt.LCD;
 import lejos.util.Delay;
 
 /**
  * The UserInputHandler class provides utility methods for handling user input
- * through button presses. This class cannot be instantiated.
+ * through button presses. The buttons are read by a shared
+ * {@link ButtonEvents} service, so all waits sleep instead of spinning. This
+ * class cannot be instantiated.
  * 
  * @author leonweimann
- * @version 1.4
+ * @version 1.6
  */
 public final class UserInputHandler {
+    /**
+     * Time between two polls of the buttons in milliseconds.
+     */
+    private static final int POLL_INTERVAL = 10;
+
+    /**
+     * Number of polls a button change must be stable for.
+     */
+    private static final int DEBOUNCE_POLLS = 3;
+
+    /**
+     * Time the ESCAPE button must be held to exit or calibrate in milliseconds.
+     */
+    private static final int ESCAPE_HOLD_TIME = 3000;
+
+    /**
+     * Time between two updates of the hold countdown in milliseconds.
+     */
+    private static final int COUNTDOWN_INTERVAL = 100;
+
+    private static ButtonEvents events;
+
     /**
      * Prevents instantiation of the UserInputHandler class.
      */
@@ -18,6 +41,19 @@ public final class UserInputHandler {
         // Prevent instantiation
     }
 
+    /**
+     * Returns the shared button event service and starts it on first use.
+     *
+     * @return the button event service
+     */
+    public static synchronized ButtonEvents events() {
+        if (events == null) {
+            events = new ButtonEvents(NxtHardware.CLOCK, POLL_INTERVAL, DEBOUNCE_POLLS);
+            events.start();
+        }
+        return events;
+    }
+
     /**
      * Checks if the specified button is currently pressed.
      *
@@ -25,7 +61,7 @@ public final class UserInputHandler {
      * @return true if the button is pressed, false otherwise
      */
     public static boolean isButtonPressed(Button btn) {
-        return btn.isDown();
+        return (events().getButtons() & btn.getId()) != 0;
     }
 
     /**
@@ -55,14 +91,9 @@ public final class UserInputHandler {
         if (displayAnything) {
             LCDHelper.display("Press\n\n" + label + "\n\nto continue ..." + "\n \n" + message, true);
         }
-        // Wait for button press
-        while (!isButtonPressed(btn)) {
-            // Do nothing, just wait for the button to be pressed
-        }
-        // Wait for button release
-        while (isButtonPressed(btn)) {
-            // Do nothing, just wait for the button to be released
-        }
+        // Sleeps until the button is pressed and released again
+        events().awaitPress(btn.getId());
+        events().awaitRelease(btn.getId());
         if (displayAnything) {
             LCDHelper.display("Continuing ...", true);
         }
@@ -73,22 +104,32 @@ public final class UserInputHandler {
      * button for 3 seconds to exit the program.
      */
     public static void awaitContinueOrExit() {
-        long nextDialogTime = System.currentTimeMillis();
+        if (awaitEnterOrEscapeHold("Press\nENTER\nto continue or hold\nESCAPE\nfor 3 seconds to exit ...")) {
+            LCDHelper.display("Exiting ...", true);
+            Delay.msDelay(1000);
+            System.exit(0);
+        }
+        LCDHelper.display("Continuing ...", true);
+    }
+
+    /**
+     * Shows a prompt and sleeps until ENTER is pressed and released or ESCAPE
+     * is held for 3 seconds. The prompt is shown again if ESCAPE is released
+     * too early.
+     *
+     * @param prompt the prompt to display
+     * @return true if ESCAPE was held, false if ENTER was pressed
+     */
+    public static boolean awaitEnterOrEscapeHold(String prompt) {
         while (true) {
-            if (nextDialogTime < System.currentTimeMillis()) {
-                nextDialogTime = System.currentTimeMillis() + 200;
-                LCDHelper.display("Press\nENTER\nto continue or hold\nESCAPE\nfor 3 seconds to exit ...", true);
+            LCDHelper.display(prompt, true);
+            int pressed = events().awaitPress(Button.ID_ENTER | Button.ID_ESCAPE);
+            if ((pressed & Button.ID_ENTER) != 0) {
+                events().awaitRelease(Button.ID_ENTER);
+                return false;
             }
-
-            if (isButtonPressed(Button.ENTER)) {
-                while (isButtonPressed(Button.ENTER)) {
-                }
-                LCDHelper.display("Continuing ...", true);
-                break;
-            } else if (!checkForExitSimultaneously()) {
-                LCDHelper.display("Exiting ...", true);
-                Delay.msDelay(1000);
-                System.exit(0);
+            if (awaitHold(Button.ESCAPE, "ESCAPE", ESCAPE_HOLD_TIME)) {
+                return true;
             }
         }
     }
@@ -107,26 +148,67 @@ public final class UserInputHandler {
      *         otherwise.
      */
     public static boolean checkForExitSimultaneously() {
-        if (isButtonPressed(Button.ESCAPE)) {
-            double lastRemainingTimeRounded = 0.0;
-            long startTime = System.currentTimeMillis();
-            while (isButtonPressed(Button.ESCAPE)) {
-                if (System.currentTimeMillis() - startTime >= 3000) {
-                    LCD.clear();
-                    return false;
-                } else {
-                    double remainingTime = 3 - (System.currentTimeMillis() - startTime) / 1000.0;
-                    double remainingTimeRounded = Math.round(remainingTime * 10) / 10.0;
-
-                    if (remainingTimeRounded != lastRemainingTimeRounded) {
-                        LCDHelper.display("Keep holding ESCAPE for\n \n" + remainingTimeRounded + " seconds", true);
-                        lastRemainingTimeRounded = remainingTimeRounded;
-                    }
-                }
+        return !awaitHold(Button.ESCAPE, "ESCAPE", ESCAPE_HOLD_TIME);
+    }
+
+    /**
+     * Waits while a button is held down, up to the given duration. The
+     * remaining time is displayed every 0.1 seconds, between the updates the
+     * calling thread sleeps.
+     *
+     * @param btn      the button
+     * @param label    the label of the button to display
+     * @param duration the hold time in milliseconds
+     * @return true if the button was held for the whole duration, false if it
+     *         is not down or was released earlier
+     */
+    public static boolean awaitHold(Button btn, String label, long duration) {
+        ButtonEvents buttons = events();
+        if ((buttons.getButtons() & btn.getId()) == 0) {
+            return false;
+        }
+        // The hold started with the last change of the buttons
+        long startTime = System.currentTimeMillis() - buttons.getStateAge();
+        double lastRemainingTimeRounded = 0.0;
+        while (true) {
+            long held = System.currentTimeMillis() - startTime;
+            if (held >= duration) {
+                LCDHelper.clear();
+                return true;
+            }
+            double remainingTimeRounded = Math.round((duration - held) / 100.0) / 10.0;
+            if (remainingTimeRounded != lastRemainingTimeRounded) {
+                LCDHelper.display("Keep holding " + label + " for\n \n" + remainingTimeRounded + " seconds", true);
+                lastRemainingTimeRounded = remainingTimeRounded;
+            }
+            if ((buttons.awaitChange(COUNTDOWN_INTERVAL) & btn.getId()) == 0) {
+                LCDHelper.clear();
+                return false;
             }
-            LCD.clear();
         }
+    }
 
-        return true;
+    /**
+     * Runs an action every time the given buttons are pressed together. The
+     * action runs once per press, holding the buttons does not repeat it.
+     *
+     * @param buttons the button ids of the chord, for example
+     *                {@code Button.ID_LEFT | Button.ID_RIGHT}
+     * @param action  the action to run on the button thread
+     */
+    public static void watchChord(int buttons, Runnable action) {
+        events().addAction(buttons, ButtonEvents.EVENT_PRESS, 0, action);
+    }
+
+    /**
+     * Runs an action every time the given buttons are held together for the
+     * given time. The action runs once per press.
+     *
+     * @param buttons  the button ids of the chord
+     * @param duration the hold time in milliseconds
+     * @param action   the action to run on the button thread
+     */
+    public static void watchHold(int buttons, long duration, Runnable action) {
+        events().addAction(buttons, ButtonEvents.EVENT_HOLD, duration, action);
     }
 }
@@ -0,0 +1,65 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * The {@code AllocationCheck} class verifies on the desktop JVM that a control
+ * tick of {@link LineFollower} does not allocate, with the
+ * {@link LoopProfiler} attached. It drives the line follower on the simulated
+ * track and measures the bytes allocated by the current thread, including the
+ * simulator, which does not allocate either. The process exits with status 1
+ * if any allocation is found.
+ * 
+ * Usage: {@code java AllocationCheck [ticks]}
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public final class AllocationCheck {
+    private static final int WARMUP_TICKS = 200000;
+
+    // Private constructor to prevent instantiation
+    private AllocationCheck() {
+    }
+
+    public static void main(String[] args) {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            System.err.println("Allocation counting is not supported by this JVM");
+            System.exit(2);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long threadId = Thread.currentThread().getId();
+
+        SimConfig config = new SimConfig();
+        SimRobot robot = new SimRobot(SimTrack.oval(1000, 300, 20), config);
+        SimClock clock = new SimClock(robot, null, Long.MAX_VALUE, config.stepMillis);
+        LineFollower follower = new LineFollower(robot.getLeftSensor(), robot.getRightSensor(),
+                robot.getCenterSensor(), robot.getLeftMotor(), robot.getRightMotor(), robot.getTouchSensor(),
+                clock, Simulator.NO_DISPLAY);
+        follower.setProfiler(new LoopProfiler(clock, new ControlParameters().executionFrequency));
+
+        for (int i = 0; i < WARMUP_TICKS; i++) {
+            follower.controlTick();
+            clock.sleep(10);
+        }
+
+        // Cost of the measurement itself
+        long overhead = -threads.getThreadAllocatedBytes(threadId) + threads.getThreadAllocatedBytes(threadId);
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ticks; i++) {
+            follower.controlTick();
+            clock.sleep(10);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        System.out.println("Ticks:     " + ticks);
+        System.out.println("Allocated: " + allocated + " bytes (" + (double) allocated / ticks + " per tick)");
+        if (allocated > 0) {
+            System.out.println("FAILED: the control tick allocates");
+            System.exit(1);
+        }
+        System.out.println("OK: the control tick is allocation free");
+    }
+}
@@ -0,0 +1,380 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+/**
+ * The {@code Benchmarks} class measures the hot paths of the brick code on
+ * the desktop JVM: the control tick, the classifier, the line search and the
+ * text rendering of the LCD. Every benchmark reports its throughput, the mean
+ * time per operation and the bytes allocated per operation, so every
+ * optimisation of these paths can be backed by numbers.
+ *
+ * Each benchmark is warmed up first and then measured in several timed
+ * iterations. Results of the operations are summed into a static sink, so
+ * the JIT cannot remove the measured code. The desktop numbers do not
+ * predict the speed of the NXT, but they show relative changes.
+ *
+ * The same operations are measured by the JMH module in {@code benchmarks/},
+ * which reaches them through {@link #operations()}.
+ *
+ * Usage: {@code java Benchmarks [--quick] [name filter]}
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public final class Benchmarks {
+    private static final int LCD_WIDTH = 16;
+    private static final int LCD_HEIGHT = 8;
+
+    /**
+     * Number of distinct messages of the cache miss benchmarks, more than the
+     * layout cache of the {@link TextScreen} holds.
+     */
+    private static final int DISTINCT_MESSAGES = 64;
+
+    private static final String SHORT_MESSAGE = "L: 45\nR: 52\nC: 31";
+    private static final String LONG_MESSAGE = "Calibration is stale, place the robot on white and press ENTER "
+            + "to calibrate the light sensors again";
+
+    private static int sink;
+
+    // Private constructor to prevent instantiation
+    private Benchmarks() {
+    }
+
+    /**
+     * A benchmarked operation.
+     */
+    private abstract static class Benchmark implements IntSupplier {
+        final String name;
+
+        Benchmark(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Runs the operation once.
+         *
+         * @return a value that depends on the work done
+         */
+        abstract int op();
+
+        @Override
+        public int getAsInt() {
+            return op();
+        }
+    }
+
+    /**
+     * Replays the sensor readings of a simulated run, one sample per control
+     * tick, and restarts it with a continuing clock at the end.
+     */
+    private static final class Input implements Clock, BumpSensor {
+        private final Trace trace;
+        private int index;
+        private long timeOffset;
+        private boolean touched;
+
+        // Readings used instead of the trace if not negative
+        private int fixedReading = -1;
+
+        final LineSensor left = new LineSensor() {
+            @Override
+            public int getLightValue() {
+                return fixedReading >= 0 ? fixedReading : trace.left(index);
+            }
+        };
+
+        final LineSensor right = new LineSensor() {
+            @Override
+            public int getLightValue() {
+                return fixedReading >= 0 ? fixedReading : trace.right(index);
+            }
+        };
+
+        final LineSensor center = new LineSensor() {
+            @Override
+            public int getLightValue() {
+                return fixedReading >= 0 ? fixedReading : trace.center(index);
+            }
+        };
+
+        Input(Trace trace) {
+            this.trace = trace;
+        }
+
+        void next() {
+            index++;
+            if (index == trace.size()) {
+                timeOffset += trace.time(index - 1) + 10;
+                index = 0;
+            }
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return timeOffset + trace.time(index);
+        }
+
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleep(long millis) {
+            // Benchmarks never wait
+        }
+
+        @Override
+        public boolean isPressed() {
+            return touched;
+        }
+    }
+
+    private static final DriveMotor NO_MOTOR = new DriveMotor() {
+        @Override
+        public void setSpeed(int speed) {
+        }
+
+        @Override
+        public void forward() {
+        }
+
+        @Override
+        public void backward() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public int getTachoCount() {
+            return 0;
+        }
+    };
+
+    private static final TextScreen.Output NO_OUTPUT = new TextScreen.Output() {
+        @Override
+        public void drawChar(char c, int x, int y) {
+            sink += c;
+        }
+    };
+
+    private static List<Benchmark> benchmarks(final Trace trace) {
+        List<Benchmark> benchmarks = new ArrayList<>();
+
+        benchmarks.add(controlTick("controlTick.bangBang", trace, new ControlParameters()));
+        benchmarks.add(controlTick("controlTick.pid", trace, ControlParameters.pid(400)));
+
+        final LineClassifier classifier = new LineClassifier(new ControlParameters());
+        benchmarks.add(new Benchmark("classifier.classify") {
+            private int index;
+
+            @Override
+            int op() {
+                index = index + 1 == trace.size() ? 0 : index + 1;
+                return classifier.classify(trace.left(index), trace.right(index), trace.center(index));
+            }
+        });
+
+        // The line is never seen again, so the ticks cycle through backing
+        // off, turning around and all phases of the line search
+        final Input searchInput = new Input(trace);
+        final LineFollower searching = new LineFollower(searchInput.left, searchInput.right, searchInput.center,
+                NO_MOTOR, NO_MOTOR, searchInput, searchInput, Simulator.NO_DISPLAY, new ControlParameters());
+        searchInput.touched = true;
+        searching.controlTick();
+        searchInput.touched = false;
+        searchInput.fixedReading = 56;
+        benchmarks.add(new Benchmark("controlTick.search") {
+            @Override
+            int op() {
+                searchInput.next();
+                searching.controlTick();
+                return searching.getMode();
+            }
+        });
+
+        benchmarks.add(display("screen.display.short", SHORT_MESSAGE, false));
+        benchmarks.add(display("screen.display.short.centered", SHORT_MESSAGE, true));
+        benchmarks.add(display("screen.display.wrapped", LONG_MESSAGE, false));
+        benchmarks.add(display("screen.display.wrapped.centered", LONG_MESSAGE, true));
+
+        final String[] messages = new String[DISTINCT_MESSAGES];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = LONG_MESSAGE + " " + i;
+        }
+        final TextScreen missScreen = new TextScreen(LCD_WIDTH, LCD_HEIGHT, NO_OUTPUT);
+        benchmarks.add(new Benchmark("screen.display.wrapped.uncached") {
+            private int index;
+
+            @Override
+            int op() {
+                index = (index + 1) % messages.length;
+                missScreen.display(messages[index], true);
+                return index;
+            }
+        });
+
+        final TextScreen appendScreen = new TextScreen(LCD_WIDTH, LCD_HEIGHT, NO_OUTPUT);
+        final String[] labels = { "LEFT", "RIGHT", "FORWARD" };
+        benchmarks.add(new Benchmark("screen.append") {
+            private int index;
+
+            @Override
+            int op() {
+                index = (index + 1) % labels.length;
+                appendScreen.resetAppendedItems();
+                appendScreen.append(SHORT_MESSAGE, false, 1);
+                appendScreen.append(labels[index], true, 2);
+                appendScreen.finishAppendedItems();
+                return index;
+            }
+        });
+
+        return benchmarks;
+    }
+
+    private static Benchmark controlTick(String name, Trace trace, ControlParameters parameters) {
+        final Input input = new Input(trace);
+        final LineFollower follower = new LineFollower(input.left, input.right, input.center, NO_MOTOR, NO_MOTOR,
+                input, input, Simulator.NO_DISPLAY, parameters);
+        return new Benchmark(name) {
+            @Override
+            int op() {
+                input.next();
+                follower.controlTick();
+                return follower.getMode();
+            }
+        };
+    }
+
+    private static Benchmark display(String name, final String message, final boolean center) {
+        final TextScreen screen = new TextScreen(LCD_WIDTH, LCD_HEIGHT, NO_OUTPUT);
+        return new Benchmark(name) {
+            @Override
+            int op() {
+                // Invalidating forces the message to be drawn again every time
+                screen.invalidate();
+                screen.display(message, center);
+                return message.length();
+            }
+        };
+    }
+
+    /**
+     * Records the sensor readings of a simulated minute on the oval track.
+     *
+     * @return the readings
+     */
+    private static Trace recordTrace() throws IOException {
+        File log = File.createTempFile("benchmark", ".dat");
+        log.deleteOnExit();
+        ControlParameters recorded = ControlParameters.pid(400);
+        Simulator.run(SimTrack.oval(1000, 300, 20), new SimConfig(), recorded, 60000, null, log);
+        return Trace.read(log);
+    }
+
+    /**
+     * Creates all benchmarked operations on a freshly recorded trace, for
+     * harnesses that measure them on their own.
+     *
+     * @return the operations by benchmark name
+     * @throws IOException if the trace cannot be recorded
+     */
+    public static Map<String, IntSupplier> operations() throws IOException {
+        Map<String, IntSupplier> operations = new LinkedHashMap<>();
+        for (Benchmark benchmark : benchmarks(recordTrace())) {
+            operations.put(benchmark.name, benchmark);
+        }
+        return operations;
+    }
+
+    /**
+     * Runs operations in batches until the given time has passed.
+     *
+     * @return the number of operations
+     */
+    private static long runFor(Benchmark benchmark, long nanos) {
+        long ops = 0;
+        long end = System.nanoTime() + nanos;
+        int result = 0;
+        do {
+            for (int i = 0; i < 1000; i++) {
+                result += benchmark.op();
+            }
+            ops += 1000;
+        } while (System.nanoTime() < end);
+        sink += result;
+        return ops;
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean quick = false;
+        String filter = "";
+        for (String arg : args) {
+            if ("--quick".equals(arg)) {
+                quick = true;
+            } else {
+                filter = arg;
+            }
+        }
+        int warmupIterations = quick ? 2 : 5;
+        int iterations = quick ? 3 : 5;
+        long iterationNanos = (quick ? 200 : 1000) * 1000000L;
+
+        com.sun.management.ThreadMXBean threads = null;
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        }
+        long threadId = Thread.currentThread().getId();
+
+        Trace trace = recordTrace();
+
+        System.out.printf("%-34s %14s %10s %10s %10s%n", "Benchmark", "ops/s", "error", "ns/op", "B/op");
+        for (Benchmark benchmark : benchmarks(trace)) {
+            if (!benchmark.name.contains(filter)) {
+                continue;
+            }
+            for (int i = 0; i < warmupIterations; i++) {
+                runFor(benchmark, iterationNanos);
+            }
+
+            double[] throughput = new double[iterations];
+            long totalOps = 0;
+            long totalNanos = 0;
+            long allocatedBefore = threads != null ? threads.getThreadAllocatedBytes(threadId) : 0;
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                long ops = runFor(benchmark, iterationNanos);
+                long nanos = System.nanoTime() - start;
+                throughput[i] = ops * 1e9 / nanos;
+                totalOps += ops;
+                totalNanos += nanos;
+            }
+            long allocated = threads != null ? threads.getThreadAllocatedBytes(threadId) - allocatedBefore : -1;
+
+            double mean = 0;
+            for (double value : throughput) {
+                mean += value;
+            }
+            mean /= iterations;
+            double variance = 0;
+            for (double value : throughput) {
+                variance += (value - mean) * (value - mean);
+            }
+            double deviation = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+
+            System.out.printf("%-34s %14.0f %10.0f %10.1f %10s%n", benchmark.name, mean, deviation,
+                    (double) totalNanos / totalOps,
+                    allocated < 0 ? "n/a" : String.format("%.2f", (double) allocated / totalOps));
+        }
+    }
+}
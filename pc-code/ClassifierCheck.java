@@ -0,0 +1,146 @@
+/**
+ * The {@code ClassifierCheck} class compares the {@link LineClassifier} with
+ * its default rules against the predicates the bang-bang steering used
+ * before the classifier, on every combination of readings from 0 to 100.
+ *
+ * A reading that is at least the maximum difference darker than the
+ * brightest one has to give the old decision: lost, left, right or forward.
+ * All readings below the black threshold and close together have to be a
+ * crossing, which is driven straight over. Readings with only a weak
+ * contrast were lost before, they have to be lost up to the fluctuation
+ * buffer and steer towards the darkest reading like the old turn predicates
+ * beyond it. The process exits with status 1 on the first difference.
+ *
+ * Usage: {@code java ClassifierCheck}
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public final class ClassifierCheck {
+    private static final int MAX_READING = 100;
+
+    // Decisions of the bang-bang steering
+    private static final int LOST = 0;
+    private static final int LEFT = 1;
+    private static final int RIGHT = 2;
+    private static final int FORWARD = 3;
+
+    private static final String[] NAMES = { "LOST", "LEFT", "RIGHT", "FORWARD" };
+
+    // Private constructor to prevent instantiation
+    private ClassifierCheck() {
+    }
+
+    public static void main(String[] args) {
+        ControlParameters parameters = new ControlParameters();
+        LineClassifier classifier = new LineClassifier(parameters);
+
+        int combinations = 0;
+        int unchanged = 0;
+        int weak = 0;
+        int crossings = 0;
+        for (int left = 0; left <= MAX_READING; left++) {
+            for (int right = 0; right <= MAX_READING; right++) {
+                for (int center = 0; center <= MAX_READING; center++) {
+                    combinations++;
+                    int state = classifier.classify(left, right, center);
+                    int decision = decision(state);
+                    int old = oldDecision(parameters, left, right, center);
+                    if (allBlack(parameters, left, right, center)) {
+                        if (state != LineClassifier.CROSSING) {
+                            fail(left, right, center, "CROSSING", LineClassifier.stateName(state));
+                        }
+                        crossings++;
+                        continue;
+                    }
+                    if (state == LineClassifier.CROSSING) {
+                        fail(left, right, center, NAMES[old], "CROSSING");
+                    }
+
+                    int expected = old;
+                    if (noHugeDifference(parameters, left, right, center)
+                            && spread(left, right, center) > parameters.fluctuationBuffer) {
+                        expected = turnDecision(left, right, center);
+                    }
+                    if (decision != expected) {
+                        fail(left, right, center, NAMES[expected], NAMES[decision]);
+                    }
+                    if (decision == old) {
+                        unchanged++;
+                    } else {
+                        weak++;
+                    }
+                }
+            }
+        }
+
+        System.out.println("OK: " + unchanged + " of " + combinations + " readings decide as before, " + weak
+                + " with a weak contrast steer, " + crossings + " crossings");
+    }
+
+    private static void fail(int left, int right, int center, String expected, String actual) {
+        System.out.println("FAILED: L:" + left + " C:" + center + " R:" + right + " gives " + actual
+                + ", expected " + expected);
+        System.exit(1);
+    }
+
+    /**
+     * Maps a state to the decision of the bang-bang steering, see
+     * {@code LineFollower.followLine()}.
+     */
+    private static int decision(int state) {
+        switch (state) {
+            case LineClassifier.LOST:
+                return LOST;
+            case LineClassifier.LINE_LEFT:
+                return LEFT;
+            case LineClassifier.LINE_RIGHT:
+                return RIGHT;
+            default:
+                return FORWARD;
+        }
+    }
+
+    private static int spread(int left, int right, int center) {
+        return Math.max(left, Math.max(right, center)) - Math.min(left, Math.min(right, center));
+    }
+
+    // The predicates of the bang-bang steering before the classifier
+
+    private static int oldDecision(ControlParameters parameters, int left, int right, int center) {
+        if (!allBlack(parameters, left, right, center) && noHugeDifference(parameters, left, right, center)) {
+            return LOST;
+        }
+        return turnDecision(left, right, center);
+    }
+
+    private static int turnDecision(int left, int right, int center) {
+        if (shouldTurnLeft(left, right, center)) {
+            return LEFT;
+        } else if (shouldTurnRight(left, right, center)) {
+            return RIGHT;
+        }
+        return FORWARD;
+    }
+
+    private static boolean shouldTurnLeft(int left, int right, int center) {
+        return left < right && left < center;
+    }
+
+    private static boolean shouldTurnRight(int left, int right, int center) {
+        return right < left && right < center;
+    }
+
+    private static boolean noHugeDifference(ControlParameters parameters, int left, int right, int center) {
+        final int maxDifference = parameters.maxDifference;
+        return Math.abs(left - right) < maxDifference
+                && Math.abs(left - center) < maxDifference
+                && Math.abs(right - center) < maxDifference;
+    }
+
+    private static boolean allBlack(ControlParameters parameters, int left, int right, int center) {
+        final int blackThreshold = parameters.blackThreshold;
+        return left < blackThreshold && right < blackThreshold && center < blackThreshold
+                && noHugeDifference(parameters, left, right, center);
+    }
+}
@@ -0,0 +1,262 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+
+/**
+ * The {@code FlightLogDecoder} class converts a file written by the
+ * {@link FlightRecorder} into CSV and prints summary statistics of the run.
+ *
+ * Usage: {@code java FlightLogDecoder <log> [csv]}. Without a CSV file only
+ * the summary is printed, with {@code -} the CSV goes to standard output.
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public final class FlightLogDecoder {
+    private static final int STATES = 6;
+    private static final int MODES = 10;
+
+    private static final String CSV_HEADER = "sequence,time,left,right,center,state,mode,action,touched,"
+            + "line_found,left_speed,right_speed,lateness,duration,left_angle,right_angle";
+
+    /**
+     * Size of the records of version 1, which have no wheel angles.
+     */
+    static final int RECORD_SIZE_V1 = 26;
+
+    // Private constructor to prevent instantiation
+    private FlightLogDecoder() {
+    }
+
+    /**
+     * Summary statistics of a decoded log.
+     */
+    public static final class Summary {
+        public int frequency;
+        public long records;
+        public long missing;
+        public long duration;
+        public long touches;
+        public final long[] stateCounts = new long[STATES];
+        public final long[] modeCounts = new long[MODES];
+        public long maxLateness;
+        public long latenessSum;
+        public long maxTickDuration;
+        public long tickDurationSum;
+        public final int[] minReading = { Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE };
+        public final int[] maxReading = { Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE };
+
+        /**
+         * Returns the summary as text.
+         *
+         * @return a multi-line report
+         */
+        public String report() {
+            StringBuilder report = new StringBuilder();
+            report.append(String.format("Records:            %d at %d Hz, %d missing%n", records, frequency, missing));
+            report.append(String.format("Duration:           %d ms%n", duration));
+            report.append(String.format("Touches:            %d ticks%n", touches));
+            String[] names = { "Left", "Right", "Center" };
+            for (int i = 0; i < names.length; i++) {
+                if (records > 0) {
+                    report.append(String.format("%-20s%d..%d%n", names[i] + " readings:", minReading[i],
+                            maxReading[i]));
+                }
+            }
+            report.append("States:\n");
+            for (int i = 0; i < STATES; i++) {
+                appendShare(report, LineClassifier.stateName(i), stateCounts[i]);
+            }
+            report.append("Modes:\n");
+            for (int i = 0; i < MODES; i++) {
+                appendShare(report, LineFollower.modeName(i), modeCounts[i]);
+            }
+            report.append(String.format("Tick lateness:      max %d ms, mean %.2f ms%n", maxLateness,
+                    records == 0 ? 0.0 : (double) latenessSum / records));
+            report.append(String.format("Tick duration:      max %d ms, mean %.2f ms%n", maxTickDuration,
+                    records == 0 ? 0.0 : (double) tickDurationSum / records));
+            return report.toString();
+        }
+
+        private void appendShare(StringBuilder report, String name, long count) {
+            if (count > 0) {
+                report.append(String.format("  %-18s%6.1f %%%n", name, 100.0 * count / records));
+            }
+        }
+    }
+
+    /**
+     * Decodes a log, optionally writing every record as a CSV line.
+     *
+     * @param file the log file
+     * @param csv  the CSV output, may be null
+     * @return the summary statistics
+     * @throws IOException if the file cannot be read or is not a flight log
+     */
+    public static Summary decode(File file, PrintWriter csv) throws IOException {
+        Summary summary = new Summary();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FlightRecorder.MAGIC) {
+                throw new IOException(file + " is not a flight log");
+            }
+            int version = in.readUnsignedShort();
+            int recordSize = in.readUnsignedShort();
+            checkFormat(version, recordSize);
+            summary.frequency = in.readUnsignedShort();
+
+            if (csv != null) {
+                csv.println(CSV_HEADER);
+            }
+
+            byte[] record = new byte[recordSize];
+            ByteBuffer fields = ByteBuffer.wrap(record);
+            long expected = 0;
+            while (readRecord(in, record)) {
+                fields.rewind();
+                long sequence = fields.getInt() & 0xFFFFFFFFL;
+                long time = fields.getInt() & 0xFFFFFFFFL;
+                int left = fields.getShort();
+                int right = fields.getShort();
+                int center = fields.getShort();
+                int state = fields.get() & 0xFF;
+                int mode = fields.get() & 0xFF;
+                int action = fields.get() & 0xFF;
+                int flags = fields.get() & 0xFF;
+                int leftSpeed = fields.getShort();
+                int rightSpeed = fields.getShort();
+                int lateness = fields.getShort();
+                int duration = fields.getShort();
+                String angles = version >= 2 ? fields.getInt() + "," + fields.getInt() : ",";
+                boolean touched = (flags & FlightRecorder.FLAG_TOUCHED) != 0;
+                boolean lineFound = (flags & FlightRecorder.FLAG_LINE_FOUND) != 0;
+
+                summary.missing += Math.max(0, sequence - expected);
+                expected = sequence + 1;
+                summary.records++;
+                summary.duration = time;
+                if (touched) {
+                    summary.touches++;
+                }
+                if (state < STATES) {
+                    summary.stateCounts[state]++;
+                }
+                if (mode < MODES) {
+                    summary.modeCounts[mode]++;
+                }
+                summary.maxLateness = Math.max(summary.maxLateness, lateness);
+                summary.latenessSum += lateness;
+                summary.maxTickDuration = Math.max(summary.maxTickDuration, duration);
+                summary.tickDurationSum += duration;
+                int[] readings = { left, right, center };
+                for (int i = 0; i < readings.length; i++) {
+                    summary.minReading[i] = Math.min(summary.minReading[i], readings[i]);
+                    summary.maxReading[i] = Math.max(summary.maxReading[i], readings[i]);
+                }
+
+                if (csv != null) {
+                    csv.println(sequence + "," + time + "," + left + "," + right + "," + center + ","
+                            + LineClassifier.stateName(state) + "," + LineFollower.modeName(mode) + ","
+                            + actionName(action) + "," + touched + "," + lineFound + "," + leftSpeed + ","
+                            + rightSpeed + "," + lateness + "," + duration + "," + angles);
+                }
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Checks that the version and record size of a log header can be read.
+     *
+     * @param version    the version
+     * @param recordSize the record size
+     * @throws IOException if the log cannot be read
+     */
+    static void checkFormat(int version, int recordSize) throws IOException {
+        if (version < 1 || version > FlightRecorder.VERSION) {
+            throw new IOException("Unsupported flight log version " + version);
+        }
+        int minimum = version == 1 ? RECORD_SIZE_V1 : FlightRecorder.RECORD_SIZE;
+        if (recordSize < minimum) {
+            throw new IOException("Record size " + recordSize + " is too small");
+        }
+    }
+
+    /**
+     * Reads one record. A truncated last record, for example after the
+     * battery died during a flush, is ignored.
+     */
+    private static boolean readRecord(DataInputStream in, byte[] record) throws IOException {
+        try {
+            in.readFully(record);
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the name of an action of the {@link ControlStatus}.
+     *
+     * @param action the action
+     * @return the name
+     */
+    static String actionName(int action) {
+        switch (action) {
+            case ControlStatus.ACTION_NONE:
+                return "NONE";
+            case ControlStatus.ACTION_FORWARD:
+                return "FORWARD";
+            case ControlStatus.ACTION_LEFT:
+                return "LEFT";
+            case ControlStatus.ACTION_RIGHT:
+                return "RIGHT";
+            case ControlStatus.ACTION_KEEP_TURNING:
+                return "KEEP TURNING";
+            case ControlStatus.ACTION_SEARCH:
+                return "SEARCH";
+            case ControlStatus.ACTION_BACK_OFF:
+                return "BACK OFF";
+            case ControlStatus.ACTION_TURN_AROUND:
+                return "TURN AROUND";
+            default:
+                return "?";
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java FlightLogDecoder <log> [csv|-]");
+            System.exit(2);
+        }
+
+        PrintWriter csv = null;
+        if (args.length == 2) {
+            csv = "-".equals(args[1]) ? new PrintWriter(new OutputStreamWriter(System.out))
+                    : new PrintWriter(new BufferedWriter(new FileWriter(args[1])));
+        }
+
+        Summary summary;
+        try {
+            summary = decode(new File(args[0]), csv);
+        } finally {
+            if (csv != null) {
+                csv.flush();
+                if (csv.checkError()) {
+                    System.err.println("Writing the CSV failed");
+                }
+                if (!"-".equals(args[1])) {
+                    csv.close();
+                }
+            }
+        }
+        (csv != null && "-".equals(args[1]) ? System.err : System.out).print(summary.report());
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code SimClock} class is the time source of the simulator. Time only
+ * passes while the control logic sleeps, and every millisecond of sleep
+ * advances the simulated world. This makes runs deterministic and lets them
+ * run as fast as the host CPU allows.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public class SimClock implements Clock {
+    /**
+     * Thrown out of the control logic when the simulated time is up.
+     */
+    public static class TimeUp extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public TimeUp(long time) {
+            super("Simulation ended at " + time + " ms");
+        }
+    }
+
+    private final SimRobot robot;
+    private final SimMetrics metrics;
+    private final long duration;
+    private final int stepMillis;
+
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final List<Integer> intervals = new ArrayList<>();
+
+    private long time;
+
+    /**
+     * Constructs a clock that advances the given robot.
+     *
+     * @param robot      the simulated robot
+     * @param metrics    the metrics updated after every step, may be null
+     * @param duration   the simulated time after which the run ends in
+     *                   milliseconds
+     * @param stepMillis the simulation time step in milliseconds
+     */
+    public SimClock(SimRobot robot, SimMetrics metrics, long duration, int stepMillis) {
+        this.robot = robot;
+        this.metrics = metrics;
+        this.duration = duration;
+        this.stepMillis = Math.max(1, stepMillis);
+    }
+
+    /**
+     * Runs a task periodically in simulated time, for example the sampling
+     * round of a background thread on the brick.
+     *
+     * @param interval the time between two runs in milliseconds
+     * @param task     the task
+     */
+    public void every(int interval, Runnable task) {
+        tasks.add(task);
+        intervals.add(Math.max(1, interval));
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return time;
+    }
+
+    /**
+     * Returns the time of the host. Code running on the simulated clock takes
+     * no simulated time, so profiling measures the real CPU time instead.
+     */
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void sleep(long duration) {
+        long end = time + Math.max(0, duration);
+        while (time < end) {
+            long step = Math.min(stepMillis, end - time);
+            advance(step);
+        }
+    }
+
+    private void advance(long step) {
+        robot.step(step);
+        time += step;
+        for (int i = 0; i < tasks.size(); i++) {
+            if (time % intervals.get(i) == 0) {
+                tasks.get(i).run();
+            }
+        }
+        if (metrics != null) {
+            metrics.observe(robot, time);
+        }
+        if (time >= duration) {
+            throw new TimeUp(time);
+        }
+    }
+}
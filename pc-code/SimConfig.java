@@ -0,0 +1,119 @@
+/**
+ * The {@code SimConfig} class holds the physical parameters of the simulated
+ * robot and sensors. The defaults describe the NXT robot of this project.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public class SimConfig {
+    /**
+     * Diameter of the wheels in millimeters.
+     */
+    public double wheelDiameter = 56;
+
+    /**
+     * Distance between the wheels in millimeters.
+     */
+    public double wheelBase = 120;
+
+    /**
+     * Distance of the light sensors in front of the wheel axle in millimeters.
+     */
+    public double sensorForward = 70;
+
+    /**
+     * Lateral distance of the left and right sensor from the center sensor in
+     * millimeters.
+     */
+    public double sensorSpacing = 25;
+
+    /**
+     * Radius of the spot a light sensor averages over in millimeters.
+     */
+    public double footprintRadius = 6;
+
+    /**
+     * Distance of the touch sensor in front of the wheel axle in millimeters.
+     */
+    public double bumperForward = 110;
+
+    /**
+     * Light value read over black ground.
+     */
+    public double blackValue = 28;
+
+    /**
+     * Light value read over white ground.
+     */
+    public double whiteValue = 56;
+
+    /**
+     * Standard deviation of the sensor noise in light values.
+     */
+    public double noise = 1;
+
+    /**
+     * Light value read with the lamp of the sensor off and no ambient light.
+     */
+    public double lampOffValue = 20;
+
+    /**
+     * Largest ambient light added to the readings in light values. The
+     * ambient light changes along the track, from none to this value and
+     * back within {@link #ambientPeriod}.
+     */
+    public double ambientLight = 0;
+
+    /**
+     * Distance along the x axis over which the ambient light goes through
+     * one cycle in millimeters.
+     */
+    public double ambientPeriod = 2000;
+
+    /**
+     * Seed of the noise source, equal seeds give equal runs.
+     */
+    public long seed = 42;
+
+    /**
+     * Interval of the background sensor sampling with the default filter
+     * chain in milliseconds, 0 reads the sensors directly.
+     */
+    public int sampleInterval = 0;
+
+    /**
+     * Whether the light sensors switch their lamps after every reading and
+     * deliver the difference of the readings with the lamp on and off, see
+     * {@link DifferentialLightSensor}.
+     */
+    public boolean differentialSampling = false;
+
+    /**
+     * Time a lamp needs to settle after a switch in milliseconds.
+     */
+    public int lampSettleTime = 2;
+
+    /**
+     * Whether a {@link Lift} runs as a task next to the line follower. It
+     * moves up or down at every pick-up marker.
+     */
+    public boolean lift = false;
+
+    /**
+     * Node of the track network the robot drives to, or -1 to follow the
+     * line without a route. The track needs a network, see
+     * {@link SimTrack#getNetwork()}.
+     */
+    public int routeTarget = -1;
+
+    /**
+     * Whether the phases of the control ticks are profiled with a
+     * {@link LoopProfiler}. The profile measures host CPU time.
+     */
+    public boolean profile = false;
+
+    /**
+     * Simulated time step in milliseconds.
+     */
+    public int stepMillis = 1;
+}
@@ -0,0 +1,98 @@
+import java.util.Random;
+
+/**
+ * The {@code SimLightSensor} class is a simulated light sensor. It averages
+ * the track reflectance over a round footprint below the sensor and maps it
+ * to the raw light values of the NXT sensor. With the lamp off it reads the
+ * ambient light only.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public class SimLightSensor implements FloodlightSensor {
+    /**
+     * Sample points of the footprint as (x, y) pairs on the unit disc.
+     */
+    private static final double[] FOOTPRINT = {
+            0, 0,
+            0.5, 0, -0.5, 0, 0, 0.5, 0, -0.5,
+            0.7, 0.7, -0.7, 0.7, 0.7, -0.7, -0.7, -0.7,
+            1, 0, -1, 0, 0, 1, 0, -1 };
+
+    private final SimRobot robot;
+    private final double forwardOffset;
+    private final double lateralOffset;
+    private final SimConfig config;
+    private final Random random;
+    private boolean floodlight = true;
+
+    /**
+     * Constructs a sensor mounted on the given robot.
+     *
+     * @param robot         the robot carrying the sensor
+     * @param forwardOffset the distance in front of the wheel axle in millimeters
+     * @param lateralOffset the distance left of the robot center in millimeters
+     * @param config        the simulation parameters
+     * @param random        the noise source
+     */
+    public SimLightSensor(SimRobot robot, double forwardOffset, double lateralOffset, SimConfig config,
+            Random random) {
+        this.robot = robot;
+        this.forwardOffset = forwardOffset;
+        this.lateralOffset = lateralOffset;
+        this.config = config;
+        this.random = random;
+    }
+
+    @Override
+    public int getLightValue() {
+        double value = config.lampOffValue + ambient();
+        if (floodlight) {
+            double reflectance = reflectance() / SimTrack.WHITE;
+            value = config.blackValue + (config.whiteValue - config.blackValue) * reflectance + ambient();
+        }
+        if (config.noise > 0) {
+            value += random.nextGaussian() * config.noise;
+        }
+        return (int) Math.round(value);
+    }
+
+    @Override
+    public void setFloodlight(boolean on) {
+        floodlight = on;
+    }
+
+    /**
+     * Returns the ambient light at the sensor.
+     *
+     * @return the ambient light in light values
+     */
+    public double ambient() {
+        if (config.ambientLight == 0) {
+            return 0;
+        }
+        double x = robot.getX() + forwardOffset * Math.cos(robot.getHeading())
+                - lateralOffset * Math.sin(robot.getHeading());
+        return config.ambientLight * (0.5 - 0.5 * Math.cos(2 * Math.PI * x / config.ambientPeriod));
+    }
+
+    /**
+     * Returns the mean reflectance below the sensor.
+     *
+     * @return the reflectance between {@link SimTrack#BLACK} and
+     *         {@link SimTrack#WHITE}
+     */
+    public double reflectance() {
+        double cos = Math.cos(robot.getHeading());
+        double sin = Math.sin(robot.getHeading());
+        double x = robot.getX() + forwardOffset * cos - lateralOffset * sin;
+        double y = robot.getY() + forwardOffset * sin + lateralOffset * cos;
+        double radius = config.footprintRadius;
+
+        int sum = 0;
+        for (int i = 0; i < FOOTPRINT.length; i += 2) {
+            sum += robot.getTrack().reflectanceAt(x + FOOTPRINT[i] * radius, y + FOOTPRINT[i + 1] * radius);
+        }
+        return sum / (double) (FOOTPRINT.length / 2);
+    }
+}
@@ -0,0 +1,203 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code SimMetrics} class collects the figures of merit of a simulated
+ * run: lap times, off-line excursions, reacquisition times and bumps.
+ * 
+ * The robot counts as off the line while none of its light sensors sees any
+ * black. Laps are counted as full turns around the center of the track.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public class SimMetrics {
+    /**
+     * Sensor reflectance below which a sensor counts as seeing the line.
+     */
+    private static final double LINE_REFLECTANCE = 75;
+
+    private final List<Long> lapTimes = new ArrayList<>();
+    private final List<Long> reacquisitionTimes = new ArrayList<>();
+
+    private boolean initialized;
+    private double lastAngle;
+    private double turnedAngle;
+    private long lastLapTime;
+
+    private boolean offLine;
+    private long offLineSince;
+    private long offLineTime;
+
+    private boolean touching;
+    private int bumps;
+
+    private double lastX;
+    private double lastY;
+    private double distance;
+
+    private long time;
+
+    /**
+     * Updates the metrics after a simulation step.
+     *
+     * @param robot the simulated robot
+     * @param time  the simulated time in milliseconds
+     */
+    public void observe(SimRobot robot, long time) {
+        long step = time - this.time;
+        this.time = time;
+
+        SimTrack track = robot.getTrack();
+        double angle = Math.atan2(robot.getY() - track.getCenterY(), robot.getX() - track.getCenterX());
+        if (!initialized) {
+            initialized = true;
+            lastAngle = angle;
+            lastX = robot.getX();
+            lastY = robot.getY();
+        }
+
+        double delta = angle - lastAngle;
+        if (delta > Math.PI) {
+            delta -= 2 * Math.PI;
+        } else if (delta < -Math.PI) {
+            delta += 2 * Math.PI;
+        }
+        turnedAngle += delta;
+        lastAngle = angle;
+        if (Math.abs(turnedAngle) >= 2 * Math.PI * (lapTimes.size() + 1)) {
+            lapTimes.add(time - lastLapTime);
+            lastLapTime = time;
+        }
+
+        distance += Math.hypot(robot.getX() - lastX, robot.getY() - lastY);
+        lastX = robot.getX();
+        lastY = robot.getY();
+
+        boolean seesLine = robot.getLeftSensor().reflectance() < LINE_REFLECTANCE
+                || robot.getCenterSensor().reflectance() < LINE_REFLECTANCE
+                || robot.getRightSensor().reflectance() < LINE_REFLECTANCE;
+        if (!seesLine) {
+            offLineTime += step;
+            if (!offLine) {
+                offLine = true;
+                offLineSince = time;
+            }
+        } else if (offLine) {
+            offLine = false;
+            reacquisitionTimes.add(time - offLineSince);
+        }
+
+        boolean nowTouching = robot.isTouching();
+        if (nowTouching && !touching) {
+            bumps++;
+        }
+        touching = nowTouching;
+    }
+
+    public List<Long> getLapTimes() {
+        return lapTimes;
+    }
+
+    /**
+     * Returns the durations of all completed off-line excursions.
+     *
+     * @return the reacquisition times in milliseconds
+     */
+    public List<Long> getReacquisitionTimes() {
+        return reacquisitionTimes;
+    }
+
+    /**
+     * Returns the number of times the robot lost the line.
+     *
+     * @return the number of excursions including a still open one
+     */
+    public int getExcursions() {
+        return reacquisitionTimes.size() + (offLine ? 1 : 0);
+    }
+
+    public long getOffLineTime() {
+        return offLineTime;
+    }
+
+    public int getBumps() {
+        return bumps;
+    }
+
+    /**
+     * Returns the distance driven by the robot center.
+     *
+     * @return the distance in millimeters
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the mean lap time.
+     *
+     * @return the mean lap time in milliseconds, or -1 without a complete lap
+     */
+    public long getMeanLapTime() {
+        return mean(lapTimes);
+    }
+
+    /**
+     * Returns the mean reacquisition time.
+     *
+     * @return the mean reacquisition time in milliseconds, or -1 if the line
+     *         was never lost
+     */
+    public long getMeanReacquisitionTime() {
+        return mean(reacquisitionTimes);
+    }
+
+    /**
+     * Returns the longest reacquisition time.
+     *
+     * @return the longest reacquisition time in milliseconds, or -1 if the line
+     *         was never lost
+     */
+    public long getMaxReacquisitionTime() {
+        long max = -1;
+        for (long value : reacquisitionTimes) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    private static long mean(List<Long> values) {
+        if (values.isEmpty()) {
+            return -1;
+        }
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum / values.size();
+    }
+
+    /**
+     * Returns a multi-line report of all metrics.
+     *
+     * @return the report
+     */
+    public String report() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Simulated time:     ").append(time).append(" ms\n");
+        builder.append("Distance:           ").append(Math.round(distance)).append(" mm\n");
+        builder.append("Laps:               ").append(lapTimes.size()).append(' ').append(lapTimes).append('\n');
+        builder.append("Mean lap time:      ").append(getMeanLapTime()).append(" ms\n");
+        builder.append("Off-line excursions:").append(' ').append(getExcursions()).append('\n');
+        builder.append("Off-line time:      ").append(offLineTime).append(" ms\n");
+        builder.append("Mean reacquisition: ").append(getMeanReacquisitionTime()).append(" ms\n");
+        builder.append("Max reacquisition:  ").append(getMaxReacquisitionTime()).append(" ms\n");
+        builder.append("Bumps:              ").append(bumps).append('\n');
+        return builder.toString();
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * The {@code SimMotor} class is a simulated regulated motor. The regulation is
+ * assumed to be perfect, so the wheel turns at the commanded speed as soon as
+ * the motor is started.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public class SimMotor implements DriveMotor {
+    private int speed;
+    private int direction;
+    private double tachoCount;
+
+    @Override
+    public void setSpeed(int speed) {
+        this.speed = Math.abs(speed);
+    }
+
+    @Override
+    public void forward() {
+        direction = 1;
+    }
+
+    @Override
+    public void backward() {
+        direction = -1;
+    }
+
+    @Override
+    public void stop() {
+        direction = 0;
+    }
+
+    /**
+     * Returns the current angular velocity of the motor.
+     *
+     * @return the velocity in degrees per second, negative when moving backward
+     */
+    public double getVelocity() {
+        return direction * speed;
+    }
+
+    /**
+     * Advances the motor by the given time.
+     *
+     * @param duration the time step in milliseconds
+     * @return the angle turned in degrees
+     */
+    public double step(double duration) {
+        double angle = getVelocity() * duration / 1000.0;
+        tachoCount += angle;
+        return angle;
+    }
+
+    /**
+     * Returns the accumulated rotation of the motor.
+     *
+     * @return the tacho count in degrees
+     */
+    @Override
+    public int getTachoCount() {
+        return (int) Math.round(tachoCount);
+    }
+}
@@ -0,0 +1,145 @@
+import java.util.Random;
+
+/**
+ * The {@code SimRobot} class simulates the differential drive of the robot on
+ * a {@link SimTrack}. It owns the simulated motors and sensors that are handed
+ * to the control logic.
+ * 
+ * The motors are mounted reversed, so a motor running backward drives the
+ * robot forward, just like on the real robot.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public class SimRobot {
+    private final SimTrack track;
+    private final SimConfig config;
+
+    private final SimMotor leftMotor = new SimMotor();
+    private final SimMotor rightMotor = new SimMotor();
+    private final SimMotor liftMotor = new SimMotor();
+
+    private final SimLightSensor leftSensor;
+    private final SimLightSensor rightSensor;
+    private final SimLightSensor centerSensor;
+
+    private double x;
+    private double y;
+    private double heading;
+
+    /**
+     * Constructs a robot standing at the start pose of the track.
+     *
+     * @param track  the track to drive on
+     * @param config the simulation parameters
+     */
+    public SimRobot(SimTrack track, SimConfig config) {
+        this.track = track;
+        this.config = config;
+        this.x = track.getStartX();
+        this.y = track.getStartY();
+        this.heading = track.getStartHeading();
+
+        Random random = new Random(config.seed);
+        this.leftSensor = new SimLightSensor(this, config.sensorForward, config.sensorSpacing, config, random);
+        this.rightSensor = new SimLightSensor(this, config.sensorForward, -config.sensorSpacing, config, random);
+        this.centerSensor = new SimLightSensor(this, config.sensorForward, 0, config, random);
+    }
+
+    /**
+     * Advances the robot by the given time.
+     *
+     * @param duration the time step in milliseconds
+     */
+    public void step(double duration) {
+        double millimetersPerDegree = Math.PI * config.wheelDiameter / 360.0;
+        double leftDistance = -leftMotor.step(duration) * millimetersPerDegree;
+        double rightDistance = -rightMotor.step(duration) * millimetersPerDegree;
+        liftMotor.step(duration);
+
+        double distance = (leftDistance + rightDistance) / 2;
+        double newHeading = heading + (rightDistance - leftDistance) / config.wheelBase;
+        double meanHeading = (heading + newHeading) / 2;
+        double newX = x + distance * Math.cos(meanHeading);
+        double newY = y + distance * Math.sin(meanHeading);
+
+        // The bumper does not pass through obstacles
+        if (distance > 0 && isBumperBlocked(newX, newY, newHeading)) {
+            newX = x;
+            newY = y;
+        }
+
+        x = newX;
+        y = newY;
+        heading = newHeading;
+    }
+
+    /**
+     * Checks if the touch sensor is pressed against an obstacle.
+     *
+     * @return true if the bumper touches an obstacle, false otherwise
+     */
+    public boolean isTouching() {
+        double reach = config.bumperForward + 2;
+        return track.isBlocked(x + reach * Math.cos(heading), y + reach * Math.sin(heading));
+    }
+
+    private boolean isBumperBlocked(double x, double y, double heading) {
+        return track.isBlocked(x + config.bumperForward * Math.cos(heading),
+                y + config.bumperForward * Math.sin(heading));
+    }
+
+    /**
+     * Returns the touch sensor of the robot.
+     *
+     * @return the bump sensor
+     */
+    public BumpSensor getTouchSensor() {
+        return new BumpSensor() {
+            @Override
+            public boolean isPressed() {
+                return isTouching();
+            }
+        };
+    }
+
+    public SimTrack getTrack() {
+        return track;
+    }
+
+    public SimMotor getLeftMotor() {
+        return leftMotor;
+    }
+
+    public SimMotor getRightMotor() {
+        return rightMotor;
+    }
+
+    public SimMotor getLiftMotor() {
+        return liftMotor;
+    }
+
+    public SimLightSensor getLeftSensor() {
+        return leftSensor;
+    }
+
+    public SimLightSensor getRightSensor() {
+        return rightSensor;
+    }
+
+    public SimLightSensor getCenterSensor() {
+        return centerSensor;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getHeading() {
+        return heading;
+    }
+}
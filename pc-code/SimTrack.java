@@ -0,0 +1,336 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * The {@code SimTrack} class is the floor of the simulator. It stores the
+ * reflectance of the floor as a 2D bitmap and the obstacles standing on it.
+ * 
+ * Coordinates are given in millimeters, the origin is the bottom left corner
+ * of the bitmap.
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public class SimTrack {
+    /**
+     * Reflectance of a white cell.
+     */
+    public static final int WHITE = 100;
+
+    /**
+     * Reflectance of a black cell.
+     */
+    public static final int BLACK = 0;
+
+    // Nodes of the crossroads network
+    public static final int CROSSROADS_CENTER = 0;
+    public static final int CROSSROADS_EAST = 1;
+    public static final int CROSSROADS_NORTH = 2;
+    public static final int CROSSROADS_WEST = 3;
+    public static final int CROSSROADS_SOUTH = 4;
+
+    private final int columns;
+    private final int rows;
+    private final double cellSize;
+    private final byte[] cells;
+
+    private final List<double[]> obstacles = new ArrayList<>();
+
+    private double centerX;
+    private double centerY;
+    private double startX;
+    private double startY;
+    private double startHeading;
+
+    private TrackGraph network;
+    private int networkStartNode;
+    private int networkStartPort;
+
+    /**
+     * Constructs an empty white track.
+     *
+     * @param width    the width of the track in millimeters
+     * @param height   the height of the track in millimeters
+     * @param cellSize the edge length of a bitmap cell in millimeters
+     */
+    public SimTrack(double width, double height, double cellSize) {
+        this.columns = (int) Math.ceil(width / cellSize);
+        this.rows = (int) Math.ceil(height / cellSize);
+        this.cellSize = cellSize;
+        this.cells = new byte[columns * rows];
+        Arrays.fill(cells, (byte) WHITE);
+        this.centerX = width / 2;
+        this.centerY = height / 2;
+    }
+
+    /**
+     * Creates an oval track (two straights connected by half circles) with a
+     * black line on white ground. The robot starts on the bottom straight and
+     * drives counterclockwise.
+     *
+     * @param straight  the length of a straight in millimeters
+     * @param radius    the radius of the curves in millimeters
+     * @param lineWidth the width of the line in millimeters
+     * @return the track
+     */
+    public static SimTrack oval(double straight, double radius, double lineWidth) {
+        final double margin = 250;
+        SimTrack track = new SimTrack(straight + 2 * radius + 2 * margin, 2 * radius + 2 * margin, 2);
+        double cx = track.centerX;
+        double cy = track.centerY;
+        double halfWidth = lineWidth / 2;
+
+        for (int row = 0; row < track.rows; row++) {
+            for (int column = 0; column < track.columns; column++) {
+                double x = (column + 0.5) * track.cellSize - cx;
+                double y = (row + 0.5) * track.cellSize - cy;
+                double dx = Math.max(0, Math.abs(x) - straight / 2);
+                double distance = Math.abs(Math.sqrt(dx * dx + y * y) - radius);
+                if (distance <= halfWidth) {
+                    track.cells[row * track.columns + column] = (byte) BLACK;
+                }
+            }
+        }
+
+        track.setStart(cx, cy - radius, 0);
+        return track;
+    }
+
+    /**
+     * Creates a track network: a square with rounded corners and a cross
+     * through its center. The lines of the cross reach a little beyond the
+     * square, so all five junctions are full crossings the sensors can see.
+     * The nodes are {@link #CROSSROADS_CENTER} and the junctions on the
+     * sides. The robot starts on the bottom side right behind the south
+     * junction and drives counterclockwise.
+     *
+     * @param straight  the length of the straight part of a side in
+     *                  millimeters
+     * @param radius    the radius of the corners in millimeters
+     * @param lineWidth the width of the line in millimeters
+     * @return the track with its network
+     */
+    public static SimTrack crossroads(double straight, double radius, double lineWidth) {
+        final double margin = 250;
+        final double overhang = 100;
+        final double startOffset = 100;
+        double half = straight / 2 + radius;
+        SimTrack track = new SimTrack(2 * half + 2 * margin, 2 * half + 2 * margin, 2);
+        double cx = track.centerX;
+        double cy = track.centerY;
+        double halfWidth = lineWidth / 2;
+
+        for (int row = 0; row < track.rows; row++) {
+            for (int column = 0; column < track.columns; column++) {
+                double x = (column + 0.5) * track.cellSize - cx;
+                double y = (row + 0.5) * track.cellSize - cy;
+                double dx = Math.max(0, Math.abs(x) - straight / 2);
+                double dy = Math.max(0, Math.abs(y) - straight / 2);
+                boolean side = Math.abs(Math.sqrt(dx * dx + dy * dy) - radius) <= halfWidth;
+                boolean cross = Math.min(Math.abs(x), Math.abs(y)) <= halfWidth
+                        && Math.max(Math.abs(x), Math.abs(y)) <= half + overhang;
+                if (side || cross) {
+                    track.cells[row * track.columns + column] = (byte) BLACK;
+                }
+            }
+        }
+
+        int spoke = (int) Math.round(half);
+        int side = (int) Math.round(straight + Math.PI / 2 * radius);
+        track.setNetwork(TrackGraph.fromEdges(5, new int[] {
+                CROSSROADS_CENTER, TrackGraph.EAST, CROSSROADS_EAST, TrackGraph.WEST, spoke,
+                CROSSROADS_CENTER, TrackGraph.NORTH, CROSSROADS_NORTH, TrackGraph.SOUTH, spoke,
+                CROSSROADS_CENTER, TrackGraph.WEST, CROSSROADS_WEST, TrackGraph.EAST, spoke,
+                CROSSROADS_CENTER, TrackGraph.SOUTH, CROSSROADS_SOUTH, TrackGraph.NORTH, spoke,
+                CROSSROADS_EAST, TrackGraph.NORTH, CROSSROADS_NORTH, TrackGraph.EAST, side,
+                CROSSROADS_NORTH, TrackGraph.WEST, CROSSROADS_WEST, TrackGraph.NORTH, side,
+                CROSSROADS_WEST, TrackGraph.SOUTH, CROSSROADS_SOUTH, TrackGraph.WEST, side,
+                CROSSROADS_SOUTH, TrackGraph.EAST, CROSSROADS_EAST, TrackGraph.SOUTH, side }),
+                CROSSROADS_SOUTH, TrackGraph.EAST);
+        track.setStart(cx + startOffset, cy - half, 0);
+        return track;
+    }
+
+    /**
+     * Loads a track from an image file. Dark pixels become the line. The robot
+     * starts in the center of the image heading right unless
+     * {@link #setStart(double, double, double)} is called.
+     *
+     * @param file     the image file
+     * @param cellSize the edge length of a pixel in millimeters
+     * @return the track
+     * @throws IOException if the image cannot be read
+     */
+    public static SimTrack fromImage(File file, double cellSize) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("Unsupported image format: " + file);
+        }
+
+        SimTrack track = new SimTrack(image.getWidth() * cellSize, image.getHeight() * cellSize, cellSize);
+        for (int row = 0; row < track.rows; row++) {
+            for (int column = 0; column < track.columns; column++) {
+                int rgb = image.getRGB(column, image.getHeight() - 1 - row);
+                int gray = (((rgb >> 16) & 0xFF) + ((rgb >> 8) & 0xFF) + (rgb & 0xFF)) / 3;
+                track.cells[row * track.columns + column] = (byte) (gray * WHITE / 255);
+            }
+        }
+
+        track.setStart(track.centerX, track.centerY, 0);
+        return track;
+    }
+
+    /**
+     * Sets the start pose of the robot.
+     *
+     * @param x       the x coordinate in millimeters
+     * @param y       the y coordinate in millimeters
+     * @param heading the heading in radians, 0 points along the x axis
+     */
+    public void setStart(double x, double y, double heading) {
+        this.startX = x;
+        this.startY = y;
+        this.startHeading = heading;
+    }
+
+    /**
+     * Sets the point the laps are counted around.
+     *
+     * @param x the x coordinate in millimeters
+     * @param y the y coordinate in millimeters
+     */
+    public void setCenter(double x, double y) {
+        this.centerX = x;
+        this.centerY = y;
+    }
+
+    /**
+     * Sets the layout of the junctions of the track and where the robot
+     * starts in it.
+     *
+     * @param network   the layout
+     * @param startNode the node the robot starts behind
+     * @param startPort the port of the start node the robot starts on
+     */
+    public void setNetwork(TrackGraph network, int startNode, int startPort) {
+        this.network = network;
+        this.networkStartNode = startNode;
+        this.networkStartPort = startPort;
+    }
+
+    /**
+     * Places a round obstacle on the track.
+     *
+     * @param x      the x coordinate of the center in millimeters
+     * @param y      the y coordinate of the center in millimeters
+     * @param radius the radius in millimeters
+     */
+    public void addObstacle(double x, double y, double radius) {
+        obstacles.add(new double[] { x, y, radius });
+    }
+
+    /**
+     * Paints a black bar, for example a bar of a track marker across the
+     * line.
+     *
+     * @param x       the x coordinate of the center in millimeters
+     * @param y       the y coordinate of the center in millimeters
+     * @param width   the extent along the heading in millimeters
+     * @param length  the extent across the heading in millimeters
+     * @param heading the direction of the width in radians
+     */
+    public void addBar(double x, double y, double width, double length, double heading) {
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                double dx = (column + 0.5) * cellSize - x;
+                double dy = (row + 0.5) * cellSize - y;
+                double along = dx * cos + dy * sin;
+                double across = -dx * sin + dy * cos;
+                if (Math.abs(along) <= width / 2 && Math.abs(across) <= length / 2) {
+                    cells[row * columns + column] = (byte) BLACK;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the reflectance at the given point. Points outside the bitmap are
+     * white.
+     *
+     * @param x the x coordinate in millimeters
+     * @param y the y coordinate in millimeters
+     * @return the reflectance between {@link #BLACK} and {@link #WHITE}
+     */
+    public int reflectanceAt(double x, double y) {
+        int column = (int) Math.floor(x / cellSize);
+        int row = (int) Math.floor(y / cellSize);
+        if (column < 0 || row < 0 || column >= columns || row >= rows) {
+            return WHITE;
+        }
+        return cells[row * columns + column];
+    }
+
+    /**
+     * Checks if the given point lies inside an obstacle.
+     *
+     * @param x the x coordinate in millimeters
+     * @param y the y coordinate in millimeters
+     * @return true if the point is blocked, false otherwise
+     */
+    public boolean isBlocked(double x, double y) {
+        for (int i = 0; i < obstacles.size(); i++) {
+            double[] obstacle = obstacles.get(i);
+            double dx = x - obstacle[0];
+            double dy = y - obstacle[1];
+            if (dx * dx + dy * dy <= obstacle[2] * obstacle[2]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public double getCenterX() {
+        return centerX;
+    }
+
+    public double getCenterY() {
+        return centerY;
+    }
+
+    public double getStartX() {
+        return startX;
+    }
+
+    public double getStartY() {
+        return startY;
+    }
+
+    public double getStartHeading() {
+        return startHeading;
+    }
+
+    /**
+     * Returns the layout of the junctions.
+     *
+     * @return the layout, or null if the track is not a network
+     */
+    public TrackGraph getNetwork() {
+        return network;
+    }
+
+    public int getNetworkStartNode() {
+        return networkStartNode;
+    }
+
+    public int getNetworkStartPort() {
+        return networkStartPort;
+    }
+}
@@ -0,0 +1,555 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code Simulator} class runs the unchanged {@link LineFollower} on a
+ * simulated track and prints lap times, off-line excursions and reacquisition
+ * times.
+ * 
+ * Usage: {@code java Simulator [--seconds N] [--track oval|crossroads|<image>] [--cell mm]
+ * [--noise sigma] [--seed n] [--obstacle x,y,r] [--steering bang-bang|pid]
+ * [--speed deg/s] [--max-speed deg/s] [--frequency Hz] [--lookahead mm] [--filter interval] [--record file]
+ * [--profile] [--start x,y,degrees] [--lost-timeout ms] [--telemetry host:port]
+ * [--marker stop|slow|pick-up,x,y,degrees] [--ambient light] [--adaptive] [--differential] [--lift]
+ * [--target node]}
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public final class Simulator {
+    /**
+     * Status display that drops all snapshots.
+     */
+    public static final StatusDisplay NO_DISPLAY = new StatusDisplay() {
+        @Override
+        public void publish(ControlStatus status) {
+        }
+    };
+
+    /**
+     * Number of records the flight recorder buffers between two flushes.
+     */
+    private static final int RECORDER_CAPACITY = 256;
+
+    /**
+     * Time between two flushes of the flight recorder in milliseconds.
+     */
+    private static final int RECORDER_FLUSH_INTERVAL = 500;
+
+    // Dimensions of the painted markers in millimeters
+    private static final double MARKER_SHORT_BAR = 25;
+    private static final double MARKER_LONG_BAR = 60;
+    private static final double MARKER_GAP = 30;
+    private static final double MARKER_LENGTH = 120;
+
+    /**
+     * Number of records the telemetry streamer buffers.
+     */
+    private static final int TELEMETRY_CAPACITY = 64;
+
+    /**
+     * Largest number of records in a telemetry frame.
+     */
+    private static final int TELEMETRY_BATCH = 8;
+
+    /**
+     * Time between two flushes of the telemetry streamer in milliseconds.
+     */
+    private static final int TELEMETRY_FLUSH_INTERVAL = 100;
+
+    // Priorities of the tasks
+    private static final int PRIORITY_DRIVE = 2;
+    private static final int PRIORITY_LIFT = 1;
+
+    /**
+     * Lowest control rate in Hz with a route, a junction needs at least one
+     * sample on its line at driving speed.
+     */
+    private static final int ROUTE_FREQUENCY = 20;
+
+    /**
+     * Share of a control period in percent after which the lower priority
+     * tasks of a tick are deferred.
+     */
+    private static final int TASK_BUDGET_SHARE = 50;
+
+    // Private constructor to prevent instantiation
+    private Simulator() {
+    }
+
+    /**
+     * Runs the line follower on the given track.
+     *
+     * @param track    the track
+     * @param config   the simulation parameters
+     * @param duration the simulated time in milliseconds
+     * @return the metrics of the run
+     */
+    public static SimMetrics run(SimTrack track, SimConfig config, long duration) {
+        return run(track, config, new ControlParameters(), duration, null);
+    }
+
+    /**
+     * Runs the line follower on the given track and prints the scheduler
+     * statistics of the control loop.
+     *
+     * @param track      the track
+     * @param config     the simulation parameters
+     * @param parameters the parameters of the line follower
+     * @param duration   the simulated time in milliseconds
+     * @param out        the stream for the scheduler statistics, may be null
+     * @return the metrics of the run
+     */
+    public static SimMetrics run(SimTrack track, SimConfig config, ControlParameters parameters, long duration,
+            PrintStream out) {
+        return run(track, config, parameters, duration, out, null);
+    }
+
+    /**
+     * Runs the line follower on the given track and records every control tick
+     * with a {@link FlightRecorder}.
+     *
+     * @param track      the track
+     * @param config     the simulation parameters
+     * @param parameters the parameters of the line follower
+     * @param duration   the simulated time in milliseconds
+     * @param out        the stream for the scheduler statistics, may be null
+     * @param record     the file to record to, may be null
+     * @return the metrics of the run
+     * @throws UncheckedIOException if the recording cannot be written
+     */
+    public static SimMetrics run(SimTrack track, SimConfig config, ControlParameters parameters, long duration,
+            PrintStream out, File record) {
+        return run(track, config, parameters, duration, out, record, null);
+    }
+
+    /**
+     * Runs the line follower on the given track, records every control tick
+     * and streams it with a {@link TelemetryStreamer}.
+     *
+     * @param track      the track
+     * @param config     the simulation parameters
+     * @param parameters the parameters of the line follower
+     * @param duration   the simulated time in milliseconds
+     * @param out        the stream for the scheduler statistics, may be null
+     * @param record     the file to record to, may be null
+     * @param link       the stream to send the telemetry to, may be null
+     * @return the metrics of the run
+     * @throws UncheckedIOException if the recording or the telemetry cannot be
+     *                              written
+     */
+    public static SimMetrics run(SimTrack track, SimConfig config, ControlParameters parameters, long duration,
+            PrintStream out, File record, OutputStream link) {
+        SimRobot robot = new SimRobot(track, config);
+        SimMetrics metrics = new SimMetrics();
+        SimClock clock = new SimClock(robot, metrics, duration, config.stepMillis);
+
+        LineSensor left = robot.getLeftSensor();
+        LineSensor right = robot.getRightSensor();
+        LineSensor center = robot.getCenterSensor();
+        if (config.differentialSampling) {
+            left = differential(robot.getLeftSensor(), clock, config);
+            right = differential(robot.getRightSensor(), clock, config);
+            center = differential(robot.getCenterSensor(), clock, config);
+        }
+        SensorSampler sampler = null;
+        if (config.sampleInterval > 0) {
+            sampler = new SensorSampler(left, right, center, SensorSampler.defaultFilter(),
+                    SensorSampler.defaultFilter(), SensorSampler.defaultFilter(), clock, config.sampleInterval);
+            sampler.sampleOnce();
+            final SensorSampler sampled = sampler;
+            clock.every(config.sampleInterval, new Runnable() {
+                @Override
+                public void run() {
+                    sampled.sampleOnce();
+                }
+            });
+            left = sampler.getLeft();
+            right = sampler.getRight();
+            center = sampler.getCenter();
+        }
+
+        LineFollower follower = new LineFollower(left, right, center, robot.getLeftMotor(), robot.getRightMotor(),
+                robot.getTouchSensor(), clock, NO_DISPLAY, parameters);
+        follower.setSampler(sampler);
+        if (config.routeTarget >= 0) {
+            if (track.getNetwork() == null) {
+                throw new IllegalArgumentException("The track has no junctions to route over");
+            }
+            follower.setRoute(track.getNetwork(), track.getNetworkStartNode(), track.getNetworkStartPort(),
+                    config.routeTarget);
+        }
+
+        TaskExecutor executor = new TaskExecutor(follower.getScheduler(), clock,
+                TASK_BUDGET_SHARE * 1000 / parameters.executionFrequency / 100);
+        int drive = executor.add(follower, PRIORITY_DRIVE, 1, 1000 / parameters.executionFrequency);
+        Lift lift = null;
+        int liftTask = -1;
+        if (config.lift) {
+            lift = new Lift(robot.getLiftMotor(), parameters);
+            liftTask = executor.add(lift, PRIORITY_LIFT, 1, 2000 / parameters.executionFrequency);
+        }
+
+        if (parameters.recognizeMarkers && (out != null || lift != null)) {
+            final PrintStream markerOut = out;
+            final SimClock markerClock = clock;
+            final Lift markerLift = lift;
+            follower.setMarkerListener(new MarkerListener() {
+                @Override
+                public void markerRecognized(int marker) {
+                    if (markerLift != null && marker == MarkerRecognizer.MARKER_PICK_UP) {
+                        markerLift.toggle();
+                    }
+                    if (markerOut != null) {
+                        markerOut.printf("Marker %s at %.2f s%n", MarkerRecognizer.markerName(marker),
+                                markerClock.currentTimeMillis() / 1000.0);
+                    }
+                }
+            });
+        }
+
+        LoopProfiler profiler = null;
+        if (config.profile) {
+            profiler = new LoopProfiler(clock, parameters.executionFrequency);
+            follower.setProfiler(profiler);
+        }
+
+        FlightRecorder recorder = null;
+        if (record != null) {
+            recorder = openRecorder(record, clock, parameters.executionFrequency);
+            follower.setRecorder(recorder);
+            final FlightRecorder flushed = recorder;
+            clock.every(RECORDER_FLUSH_INTERVAL, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flushed.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        }
+
+        TelemetryStreamer telemetry = null;
+        if (link != null) {
+            telemetry = new TelemetryStreamer(link, clock, parameters.executionFrequency, TELEMETRY_CAPACITY,
+                    TELEMETRY_BATCH, TELEMETRY_FLUSH_INTERVAL);
+            follower.setTelemetry(telemetry);
+            final TelemetryStreamer flushed = telemetry;
+            clock.every(TELEMETRY_FLUSH_INTERVAL, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flushed.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        }
+
+        try {
+            executor.runUntilDone(drive);
+        } catch (SimClock.TimeUp e) {
+            // Regular end of the run
+        }
+        if (lift != null) {
+            lift.stop();
+        }
+
+        if (telemetry != null) {
+            try {
+                telemetry.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        if (out != null) {
+            ControlScheduler scheduler = follower.getScheduler();
+            out.println("Control ticks:      " + scheduler.getTicks() + " at " + scheduler.getFrequency() + " Hz");
+            out.println("Overruns / skipped: " + scheduler.getOverruns() + " / " + scheduler.getSkippedTicks());
+            out.printf("Tick lateness:      %d..%d ms, mean %.2f ms%n", scheduler.getMinLateness(),
+                    scheduler.getMaxLateness(), scheduler.getMeanLateness());
+            Drivetrain drivetrain = follower.getDrivetrain();
+            out.println("Motor commands:     " + drivetrain.getIssuedCommands() + " sent, "
+                    + drivetrain.getSuppressedCommands() + " suppressed");
+            LineSearch search = follower.getLineSearch();
+            if (search.getSearches() > 0) {
+                out.println(search.summary());
+            }
+            if (parameters.adaptiveLevels) {
+                out.println(follower.getLightLevels().summary());
+            }
+            if (lift != null) {
+                out.println("Lift:               " + lift.getMoves() + " moves, " + (lift.isUp() ? "up" : "down")
+                        + (lift.isStalled() ? ", stalled" : "") + ", " + executor.getRuns(liftTask) + " steps, "
+                        + executor.getMisses(liftTask) + " late, " + executor.getDeferrals(liftTask) + " deferred");
+            }
+            Navigator navigator = follower.getNavigator();
+            if (navigator != null) {
+                out.println(navigator.summary() + ", " + follower.getJunctions().getJunctions() + " junctions, "
+                        + (navigator.getNode() == config.routeTarget
+                                ? String.format("arrived after %.2f s", clock.currentTimeMillis() / 1000.0)
+                                : "not arrived"));
+            }
+            TrackMap trackMap = follower.getTrackMap();
+            if (parameters.profileMaxSpeed > 0) {
+                out.println("Track map:          " + (trackMap.isLearning() ? "learning"
+                        : trackMap.getBins() * TrackMap.BIN_LENGTH + " mm lap, " + trackMap.getLaps() + " laps"));
+            }
+            if (telemetry != null) {
+                out.println("Telemetry:          " + telemetry.getSent() + " ticks in " + telemetry.getFrames()
+                        + " frames, " + telemetry.getDropped() + " dropped");
+            }
+            if (recorder != null) {
+                out.println("Recorded ticks:     " + recorder.getRecorded() + ", " + recorder.getDropped()
+                        + " dropped");
+            }
+            if (profiler != null) {
+                out.print(profiler.report());
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Wraps a simulated sensor for differential sampling. The thresholds are
+     * tuned without ambient light, so the ambient level is the reading with
+     * the lamp off in the dark.
+     */
+    private static LineSensor differential(SimLightSensor sensor, SimClock clock, SimConfig config) {
+        DifferentialLightSensor differential = new DifferentialLightSensor(sensor, clock, config.lampSettleTime);
+        differential.setAmbientLevel((int) Math.round(config.lampOffValue));
+        return differential;
+    }
+
+    private static FlightRecorder openRecorder(File file, SimClock clock, int frequency) {
+        try {
+            return new FlightRecorder(new BufferedOutputStream(new FileOutputStream(file)), clock, frequency,
+                    RECORDER_CAPACITY, RECORDER_FLUSH_INTERVAL);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Paints one of the default markers of the {@link MarkerRecognizer}
+     * across the track.
+     *
+     * @param track       the track
+     * @param description the marker name ({@code stop}, {@code slow} or
+     *                    {@code pick-up}), the center and the driving
+     *                    direction in degrees, separated by commas
+     */
+    static void addMarker(SimTrack track, String description) {
+        String[] parts = description.split(",");
+        double x = Double.parseDouble(parts[1]);
+        double y = Double.parseDouble(parts[2]);
+        double heading = Math.toRadians(Double.parseDouble(parts[3]));
+        double[] bars;
+        switch (parts[0]) {
+            case "stop":
+                bars = new double[] { MARKER_LONG_BAR, MARKER_LONG_BAR };
+                break;
+            case "slow":
+                bars = new double[] { MARKER_SHORT_BAR, MARKER_SHORT_BAR };
+                break;
+            case "pick-up":
+                bars = new double[] { MARKER_SHORT_BAR, MARKER_LONG_BAR };
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown marker: " + parts[0]);
+        }
+        double width = bars[0] + MARKER_GAP + bars[1];
+        double position = -width / 2;
+        for (double bar : bars) {
+            double along = position + bar / 2;
+            track.addBar(x + along * Math.cos(heading), y + along * Math.sin(heading), bar, MARKER_LENGTH, heading);
+            position += bar + MARKER_GAP;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        long seconds = 120;
+        String trackName = "oval";
+        double cellSize = 2;
+        SimConfig config = new SimConfig();
+        ControlParameters parameters = new ControlParameters();
+        List<double[]> obstacles = new ArrayList<>();
+        double[] startPose = null;
+        String telemetryAddress = null;
+        List<String> markers = new ArrayList<>();
+        boolean adaptive = false;
+        File record = null;
+
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : "";
+            switch (args[i]) {
+                case "--seconds":
+                    seconds = Long.parseLong(value);
+                    i++;
+                    break;
+                case "--track":
+                    trackName = value;
+                    i++;
+                    break;
+                case "--cell":
+                    cellSize = Double.parseDouble(value);
+                    i++;
+                    break;
+                case "--noise":
+                    config.noise = Double.parseDouble(value);
+                    i++;
+                    break;
+                case "--seed":
+                    config.seed = Long.parseLong(value);
+                    i++;
+                    break;
+                case "--ambient":
+                    config.ambientLight = Double.parseDouble(value);
+                    i++;
+                    break;
+                case "--adaptive":
+                    adaptive = true;
+                    break;
+                case "--steering":
+                    if ("pid".equals(value)) {
+                        ControlParameters pid = ControlParameters.pid(parameters.pidSpeed);
+                        pid.defaultSpeed = parameters.defaultSpeed;
+                        parameters = pid;
+                    } else if (!"bang-bang".equals(value)) {
+                        throw new IllegalArgumentException("Unknown steering: " + value);
+                    }
+                    i++;
+                    break;
+                case "--speed":
+                    parameters.defaultSpeed = Integer.parseInt(value);
+                    parameters.pidSpeed = parameters.defaultSpeed;
+                    i++;
+                    break;
+                case "--max-speed":
+                    parameters.profileMaxSpeed = Integer.parseInt(value);
+                    i++;
+                    break;
+                case "--lookahead":
+                    parameters.estimatorLookahead = Integer.parseInt(value);
+                    i++;
+                    break;
+                case "--frequency":
+                    parameters.executionFrequency = Integer.parseInt(value);
+                    i++;
+                    break;
+                case "--filter":
+                    config.sampleInterval = Integer.parseInt(value);
+                    i++;
+                    break;
+                case "--profile":
+                    config.profile = true;
+                    break;
+                case "--differential":
+                    config.differentialSampling = true;
+                    break;
+                case "--lift":
+                    config.lift = true;
+                    break;
+                case "--target":
+                    config.routeTarget = Integer.parseInt(value);
+                    i++;
+                    break;
+                case "--record":
+                    record = new File(value);
+                    i++;
+                    break;
+                case "--lost-timeout":
+                    parameters.lostLineTimeout = Integer.parseInt(value);
+                    i++;
+                    break;
+                case "--start":
+                    String[] pose = value.split(",");
+                    startPose = new double[] { Double.parseDouble(pose[0]), Double.parseDouble(pose[1]),
+                            Math.toRadians(Double.parseDouble(pose[2])) };
+                    i++;
+                    break;
+                case "--telemetry":
+                    telemetryAddress = value;
+                    i++;
+                    break;
+                case "--marker":
+                    markers.add(value);
+                    i++;
+                    break;
+                case "--obstacle":
+                    String[] parts = value.split(",");
+                    obstacles.add(new double[] { Double.parseDouble(parts[0]), Double.parseDouble(parts[1]),
+                            Double.parseDouble(parts[2]) });
+                    i++;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        SimTrack track;
+        if ("oval".equals(trackName)) {
+            track = SimTrack.oval(1000, 300, 20);
+        } else if ("crossroads".equals(trackName)) {
+            track = SimTrack.crossroads(600, 300, 20);
+        } else {
+            track = SimTrack.fromImage(new File(trackName), cellSize);
+        }
+        if (startPose != null) {
+            track.setStart(startPose[0], startPose[1], startPose[2]);
+        }
+        for (String marker : markers) {
+            addMarker(track, marker);
+        }
+        parameters.recognizeMarkers = !markers.isEmpty();
+        parameters.adaptiveLevels = adaptive;
+        if (config.routeTarget >= 0) {
+            parameters.executionFrequency = Math.max(parameters.executionFrequency, ROUTE_FREQUENCY);
+        }
+        for (double[] obstacle : obstacles) {
+            track.addObstacle(obstacle[0], obstacle[1], obstacle[2]);
+        }
+
+        Socket socket = null;
+        if (telemetryAddress != null) {
+            String[] address = telemetryAddress.split(":");
+            socket = new Socket(address[0], Integer.parseInt(address[1]));
+        }
+
+        long start = System.nanoTime();
+        SimMetrics metrics;
+        try {
+            metrics = run(track, config, parameters, seconds * 1000, System.out, record,
+                    socket == null ? null : new BufferedOutputStream(socket.getOutputStream()));
+        } finally {
+            if (socket != null) {
+                socket.close();
+            }
+        }
+        double wallMillis = (System.nanoTime() - start) / 1e6;
+
+        System.out.print(metrics.report());
+        System.out.printf("Wall time:          %.0f ms (%.0fx real time)%n", wallMillis,
+                metrics.getTime() / Math.max(wallMillis, 1e-3));
+    }
+}
@@ -0,0 +1,328 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import javax.imageio.ImageIO;
+
+/**
+ * The {@code TelemetryReceiver} class receives the stream of a
+ * {@link TelemetryStreamer}, shows the ticks live and stores them as a flight
+ * log, so {@link FlightLogDecoder} and {@link TraceReplay} work on it. Frames
+ * with a wrong checksum are skipped and the receiver resynchronizes on the
+ * next sync word.
+ *
+ * Usage: {@code java TelemetryReceiver (--listen port | --connect host:port
+ * | <file> | -) [--out log] [--plot png] [--quiet]}. With {@code --listen}
+ * the receiver waits for the {@link Simulator} started with
+ * {@code --telemetry localhost:port}, the other sources read a stream
+ * forwarded from the brick.
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public final class TelemetryReceiver {
+    private static final String DEFAULT_LOG = "telemetry.dat";
+
+    private static final int PLOT_WIDTH = 1200;
+    private static final int PANEL_HEIGHT = 200;
+    private static final int MAX_READING = 100;
+    private static final int MAX_SPEED = 900;
+
+    // Private constructor to prevent instantiation
+    private TelemetryReceiver() {
+    }
+
+    /**
+     * Statistics of a received stream.
+     */
+    public static final class Statistics {
+        public int frequency;
+        public long frames;
+        public long records;
+        public long missing;
+        public long corrupt;
+        public long skippedBytes;
+
+        /**
+         * Formats the statistics as a multi-line report.
+         *
+         * @return the report
+         */
+        public String report() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("Frames:             ").append(frames).append('\n');
+            builder.append("Records:            ").append(records).append(" at ").append(frequency)
+                    .append(" Hz\n");
+            builder.append("Missing records:    ").append(missing).append('\n');
+            builder.append("Corrupt frames:     ").append(corrupt).append(", ").append(skippedBytes)
+                    .append(" bytes skipped\n");
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Receives a stream until it ends.
+     *
+     * @param in   the stream of the link
+     * @param log  the flight log to store the records in, may be null
+     * @param live the stream for one status line per second, may be null
+     * @return the statistics of the stream
+     * @throws IOException if the stream cannot be read or is not telemetry
+     */
+    public static Statistics receive(InputStream in, OutputStream log, PrintStream live) throws IOException {
+        Statistics statistics = new Statistics();
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+
+        byte[] header = new byte[FlightRecorder.HEADER_SIZE];
+        data.readFully(header);
+        ByteBuffer headerFields = ByteBuffer.wrap(header);
+        if (headerFields.getInt() != FlightRecorder.MAGIC) {
+            throw new IOException("The stream is not telemetry");
+        }
+        int version = headerFields.getShort() & 0xFFFF;
+        int recordSize = headerFields.getShort() & 0xFFFF;
+        FlightLogDecoder.checkFormat(version, recordSize);
+        statistics.frequency = headerFields.getShort() & 0xFFFF;
+        if (log != null) {
+            log.write(header);
+        }
+
+        byte[] frame = new byte[1 + TelemetryStreamer.MAX_BATCH * recordSize];
+        ByteBuffer fields = ByteBuffer.wrap(frame);
+        long expected = 0;
+        int previous = -1;
+        while (true) {
+            int value = data.read();
+            if (value < 0) {
+                break;
+            }
+            if (previous != (TelemetryStreamer.SYNC >>> 8) || value != (TelemetryStreamer.SYNC & 0xFF)) {
+                if (previous >= 0) {
+                    statistics.skippedBytes++;
+                }
+                previous = value;
+                continue;
+            }
+            previous = -1;
+
+            int count;
+            int checksum;
+            try {
+                count = data.readUnsignedByte();
+                frame[0] = (byte) count;
+                data.readFully(frame, 1, count * recordSize);
+                checksum = data.readUnsignedShort();
+            } catch (EOFException e) {
+                break;
+            }
+            if (checksum != TelemetryStreamer.checksum(frame, 0, 1 + count * recordSize)) {
+                statistics.corrupt++;
+                continue;
+            }
+            statistics.frames++;
+
+            for (int i = 0; i < count; i++) {
+                int offset = 1 + i * recordSize;
+                long sequence = fields.getInt(offset) & 0xFFFFFFFFL;
+                statistics.missing += Math.max(0, sequence - expected);
+                expected = sequence + 1;
+                statistics.records++;
+                if (live != null && statistics.frequency > 0 && sequence % statistics.frequency == 0) {
+                    live.println(statusLine(fields, offset, statistics));
+                }
+            }
+            if (log != null) {
+                log.write(frame, 1, count * recordSize);
+            }
+        }
+        if (log != null) {
+            log.flush();
+        }
+        return statistics;
+    }
+
+    /**
+     * Describes a record in one line.
+     */
+    private static String statusLine(ByteBuffer fields, int offset, Statistics statistics) {
+        long time = fields.getInt(offset + 4) & 0xFFFFFFFFL;
+        int left = fields.getShort(offset + 8);
+        int right = fields.getShort(offset + 10);
+        int center = fields.getShort(offset + 12);
+        int mode = fields.get(offset + 15) & 0xFF;
+        int action = fields.get(offset + 16) & 0xFF;
+        int leftSpeed = fields.getShort(offset + 18);
+        int rightSpeed = fields.getShort(offset + 20);
+        return String.format("%7.1f s  %-15s %-12s L %3d C %3d R %3d  %4d/%4d deg/s  missing %d", time / 1000.0,
+                LineFollower.modeName(mode), FlightLogDecoder.actionName(action), left, center, right, leftSpeed,
+                rightSpeed, statistics.missing);
+    }
+
+    /**
+     * Plots the readings and the wheel speeds of a flight log.
+     *
+     * @param log   the flight log
+     * @param image the PNG file to write
+     * @throws IOException if the log cannot be read or the image not written
+     */
+    public static void plot(File log, File image) throws IOException {
+        Trace trace = Trace.fromFlightLog(log);
+        TraceReplay.Decisions decisions = trace.getRecorded();
+        int ticks = trace.size();
+
+        BufferedImage plot = new BufferedImage(PLOT_WIDTH, 2 * PANEL_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = plot.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, PLOT_WIDTH, 2 * PANEL_HEIGHT);
+        graphics.setColor(Color.LIGHT_GRAY);
+        graphics.drawLine(0, PANEL_HEIGHT, PLOT_WIDTH, PANEL_HEIGHT);
+        graphics.drawLine(0, PANEL_HEIGHT + PANEL_HEIGHT / 2, PLOT_WIDTH, PANEL_HEIGHT + PANEL_HEIGHT / 2);
+
+        // Ticks outside of line following are shaded
+        graphics.setColor(new Color(255, 230, 200));
+        for (int i = 0; i < ticks; i++) {
+            if (decisions.mode(i) != LineFollower.MODE_FOLLOWING) {
+                int x = (int) ((long) i * PLOT_WIDTH / ticks);
+                graphics.drawLine(x, 0, x, 2 * PANEL_HEIGHT);
+            }
+        }
+
+        graphics.setStroke(new BasicStroke(1f));
+        Color[] colors = { Color.BLUE, Color.RED, Color.BLACK };
+        for (int series = 0; series < 5; series++) {
+            graphics.setColor(colors[series % 3]);
+            int lastX = -1;
+            int lastY = 0;
+            for (int i = 0; i < ticks; i++) {
+                int x = (int) ((long) i * PLOT_WIDTH / ticks);
+                int y;
+                switch (series) {
+                    case 0:
+                        y = readingY(trace.left(i));
+                        break;
+                    case 1:
+                        y = readingY(trace.right(i));
+                        break;
+                    case 2:
+                        y = readingY(trace.center(i));
+                        break;
+                    case 3:
+                        y = speedY(decisions.leftSpeed(i));
+                        break;
+                    default:
+                        y = speedY(decisions.rightSpeed(i));
+                        break;
+                }
+                if (lastX >= 0) {
+                    graphics.drawLine(lastX, lastY, x, y);
+                }
+                lastX = x;
+                lastY = y;
+            }
+        }
+
+        graphics.setColor(Color.DARK_GRAY);
+        graphics.drawString("readings: left blue, right red, center black", 5, 15);
+        graphics.drawString("wheel speeds: left blue, right red, -" + MAX_SPEED + ".." + MAX_SPEED + " deg/s", 5,
+                PANEL_HEIGHT + 15);
+        graphics.dispose();
+        ImageIO.write(plot, "png", image);
+    }
+
+    private static int readingY(int reading) {
+        int clamped = Math.max(0, Math.min(MAX_READING, reading));
+        return PANEL_HEIGHT - 1 - clamped * (PANEL_HEIGHT - 1) / MAX_READING;
+    }
+
+    private static int speedY(int speed) {
+        int clamped = Math.max(-MAX_SPEED, Math.min(MAX_SPEED, speed));
+        return PANEL_HEIGHT + PANEL_HEIGHT / 2 - clamped * (PANEL_HEIGHT / 2 - 1) / MAX_SPEED;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String source = null;
+        File logFile = new File(DEFAULT_LOG);
+        File plotFile = null;
+        boolean quiet = false;
+
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : "";
+            switch (args[i]) {
+                case "--listen":
+                case "--connect":
+                    source = args[i] + " " + value;
+                    i++;
+                    break;
+                case "--out":
+                    logFile = new File(value);
+                    i++;
+                    break;
+                case "--plot":
+                    plotFile = new File(value);
+                    i++;
+                    break;
+                case "--quiet":
+                    quiet = true;
+                    break;
+                default:
+                    source = args[i];
+                    break;
+            }
+        }
+        if (source == null) {
+            System.err.println("Usage: java TelemetryReceiver (--listen port | --connect host:port | <file> | -)"
+                    + " [--out log] [--plot png] [--quiet]");
+            System.exit(2);
+        }
+
+        Socket socket = null;
+        InputStream in;
+        if (source.startsWith("--listen ")) {
+            try (ServerSocket server = new ServerSocket(Integer.parseInt(source.substring(9)))) {
+                System.err.println("Waiting on port " + server.getLocalPort());
+                socket = server.accept();
+            }
+            in = socket.getInputStream();
+        } else if (source.startsWith("--connect ")) {
+            String[] address = source.substring(10).split(":");
+            socket = new Socket(address[0], Integer.parseInt(address[1]));
+            in = socket.getInputStream();
+        } else {
+            in = "-".equals(source) ? System.in : new FileInputStream(source);
+        }
+
+        Statistics statistics;
+        try (OutputStream log = new BufferedOutputStream(new FileOutputStream(logFile))) {
+            statistics = receive(in, log, quiet ? null : System.out);
+        } finally {
+            in.close();
+            if (socket != null) {
+                socket.close();
+            }
+        }
+
+        System.out.print(statistics.report());
+        System.out.println("Stored in " + logFile);
+        if (plotFile != null) {
+            plot(logFile, plotFile);
+            System.out.println("Plotted to " + plotFile);
+        }
+    }
+}
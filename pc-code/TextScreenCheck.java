@@ -0,0 +1,88 @@
+/**
+ * The {@code TextScreenCheck} class verifies that a frame of appended
+ * messages on a {@link TextScreen} leaves no rows of a taller frame before
+ * it on the display, the way the {@link DisplayService} renders the status.
+ * The process exits with status 1 if a stale row is found.
+ * 
+ * Usage: {@code java TextScreenCheck}
+ * 
+ * @author leonweimann
+ * @version 1.0
+ */
+public final class TextScreenCheck {
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 8;
+
+    // Private constructor to prevent instantiation
+    private TextScreenCheck() {
+    }
+
+    public static void main(String[] args) {
+        final char[][] display = new char[HEIGHT][WIDTH];
+        for (char[] row : display) {
+            java.util.Arrays.fill(row, ' ');
+        }
+        TextScreen screen = new TextScreen(WIDTH, HEIGHT, new TextScreen.Output() {
+            @Override
+            public void drawChar(char c, int x, int y) {
+                display[y][x] = c;
+            }
+        });
+
+        boolean failed = false;
+        failed |= !checkFrame(screen, display, "L:50 C:30 R:50", "FORWARD LIKE GOD SAYS");
+        failed |= !checkFrame(screen, display, "L:50 C:30 R:50", "LEFT");
+        failed |= !checkFrame(screen, display, "L:50 C:30 R:50\nSEARCH", null);
+        failed |= !checkFrame(screen, display, "L:50 C:30 R:50", "FORWARD LIKE GOD SAYS");
+        screen.display("Calibration\ndone", true);
+        failed |= !checkFrame(screen, display, "L:50 C:30 R:50", "LEFT");
+
+        if (failed) {
+            System.out.println("FAILED: a shorter frame shows rows of an earlier one");
+            System.exit(1);
+        }
+        System.out.println("OK: every frame shows only its own rows");
+    }
+
+    /**
+     * Renders one frame like the display service and compares the display
+     * with the layout of the frame.
+     */
+    private static boolean checkFrame(TextScreen screen, char[][] display, String status, String label) {
+        screen.resetAppendedItems();
+        screen.append(status, false, 1);
+        if (label != null) {
+            screen.append(label, true, 2);
+        }
+        screen.finishAppendedItems();
+
+        String[] expected = new String[HEIGHT];
+        int rows = 0;
+        for (String line : screen.layout(status, false)) {
+            expected[rows++] = line;
+        }
+        if (label != null) {
+            for (String line : screen.layout(label, true)) {
+                if (rows < HEIGHT) {
+                    expected[rows++] = line;
+                }
+            }
+        }
+
+        boolean ok = true;
+        for (int y = 0; y < HEIGHT; y++) {
+            String line = expected[y] == null ? "" : expected[y];
+            StringBuilder wanted = new StringBuilder(line);
+            while (wanted.length() < WIDTH) {
+                wanted.append(' ');
+            }
+            String shown = new String(display[y]);
+            if (!shown.equals(wanted.toString())) {
+                System.out.println("Frame \"" + label + "\", row " + y + ": shows \"" + shown + "\", expected \""
+                        + wanted + "\"");
+                ok = false;
+            }
+        }
+        return ok;
+    }
+}
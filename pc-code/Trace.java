@@ -0,0 +1,289 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The {@code Trace} class holds a recorded sequence of sensor samples in
+ * primitive arrays. Traces are read from flight logs of the
+ * {@link FlightRecorder} or from CSV files with the columns {@code time},
+ * {@code left}, {@code right}, {@code center} and optionally
+ * {@code touched}, {@code left_angle} and {@code right_angle}, so the CSV output of the {@link FlightLogDecoder} can be
+ * edited and read back.
+ *
+ * Flight logs also contain the decisions the robot made. They are kept, so a
+ * replay can be compared with the recording.
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public class Trace {
+    private int size;
+    private long[] time;
+    private int[] left;
+    private int[] right;
+    private int[] center;
+    private boolean[] touched;
+    private int[] leftAngle;
+    private int[] rightAngle;
+    private boolean hasAngles;
+
+    private TraceReplay.Decisions recorded;
+
+    /**
+     * Constructs an empty trace.
+     *
+     * @param capacity the initial capacity
+     */
+    public Trace(int capacity) {
+        capacity = Math.max(16, capacity);
+        time = new long[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        center = new int[capacity];
+        touched = new boolean[capacity];
+        leftAngle = new int[capacity];
+        rightAngle = new int[capacity];
+    }
+
+    /**
+     * Appends a sample.
+     *
+     * @param timestamp the time of the sample in milliseconds
+     * @param l         the left reading
+     * @param r         the right reading
+     * @param c         the center reading
+     * @param touch     whether the touch sensor was pressed
+     */
+    public void add(long timestamp, int l, int r, int c, boolean touch) {
+        add(timestamp, l, r, c, touch, 0, 0);
+    }
+
+    /**
+     * Appends a sample with the wheel angles. A trace holds wheel angles if
+     * any sample was added with this method.
+     *
+     * @param timestamp the time of the sample in milliseconds
+     * @param l         the left reading
+     * @param r         the right reading
+     * @param c         the center reading
+     * @param touch     whether the touch sensor was pressed
+     * @param la        the angle of the left wheel in degrees
+     * @param ra        the angle of the right wheel in degrees
+     */
+    public void addWithAngles(long timestamp, int l, int r, int c, boolean touch, int la, int ra) {
+        add(timestamp, l, r, c, touch, la, ra);
+        hasAngles = true;
+    }
+
+    private void add(long timestamp, int l, int r, int c, boolean touch, int la, int ra) {
+        if (size == time.length) {
+            int capacity = size * 2;
+            time = Arrays.copyOf(time, capacity);
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            center = Arrays.copyOf(center, capacity);
+            touched = Arrays.copyOf(touched, capacity);
+            leftAngle = Arrays.copyOf(leftAngle, capacity);
+            rightAngle = Arrays.copyOf(rightAngle, capacity);
+        }
+        time[size] = timestamp;
+        left[size] = l;
+        right[size] = r;
+        center[size] = c;
+        touched[size] = touch;
+        leftAngle[size] = la;
+        rightAngle[size] = ra;
+        size++;
+    }
+
+    /**
+     * Reads a trace from a file. Files starting with the magic number of the
+     * {@link FlightRecorder} are read as flight logs, all others as CSV.
+     *
+     * @param file the file
+     * @return the trace
+     * @throws IOException if the file cannot be read or has a wrong format
+     */
+    public static Trace read(File file) throws IOException {
+        int magic;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            magic = in.readInt();
+        } catch (EOFException e) {
+            magic = 0;
+        }
+        return magic == FlightRecorder.MAGIC ? fromFlightLog(file) : fromCsv(file);
+    }
+
+    /**
+     * Reads the samples and the recorded decisions of a flight log.
+     *
+     * @param file the flight log
+     * @return the trace
+     * @throws IOException if the file cannot be read or is not a flight log
+     */
+    public static Trace fromFlightLog(File file) throws IOException {
+        Trace trace = new Trace((int) (file.length() / FlightRecorder.RECORD_SIZE));
+        TraceReplay.Decisions recorded = new TraceReplay.Decisions(trace.time.length);
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FlightRecorder.MAGIC) {
+                throw new IOException(file + " is not a flight log");
+            }
+            int version = in.readUnsignedShort();
+            int recordSize = in.readUnsignedShort();
+            FlightLogDecoder.checkFormat(version, recordSize);
+            in.readUnsignedShort(); // Tick rate
+
+            byte[] record = new byte[recordSize];
+            ByteBuffer fields = ByteBuffer.wrap(record);
+            while (true) {
+                try {
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+                fields.rewind();
+                fields.getInt(); // Sequence number
+                long timestamp = fields.getInt() & 0xFFFFFFFFL;
+                int l = fields.getShort();
+                int r = fields.getShort();
+                int c = fields.getShort();
+                fields.get(); // State, derived again by the replay
+                int mode = fields.get() & 0xFF;
+                int action = fields.get() & 0xFF;
+                int flags = fields.get() & 0xFF;
+                int leftSpeed = fields.getShort();
+                int rightSpeed = fields.getShort();
+                boolean touch = (flags & FlightRecorder.FLAG_TOUCHED) != 0;
+
+                if (version >= 2) {
+                    fields.getInt(); // Lateness and duration
+                    trace.addWithAngles(timestamp, l, r, c, touch, fields.getInt(), fields.getInt());
+                } else {
+                    trace.add(timestamp, l, r, c, touch);
+                }
+                recorded.add(mode, action, leftSpeed, rightSpeed);
+            }
+        }
+        trace.recorded = recorded;
+        return trace;
+    }
+
+    /**
+     * Reads the samples of a CSV file with a header line.
+     *
+     * @param file the CSV file
+     * @return the trace
+     * @throws IOException if the file cannot be read or misses a column
+     */
+    public static Trace fromCsv(File file) throws IOException {
+        Trace trace = new Trace(1024);
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IOException(file + " is empty");
+            }
+            String[] columns = header.split(",");
+            int timeColumn = column(columns, "time");
+            int leftColumn = column(columns, "left");
+            int rightColumn = column(columns, "right");
+            int centerColumn = column(columns, "center");
+            int touchedColumn = Arrays.asList(columns).indexOf("touched");
+            int leftAngleColumn = Arrays.asList(columns).indexOf("left_angle");
+            int rightAngleColumn = Arrays.asList(columns).indexOf("right_angle");
+
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] values = line.split(",");
+                try {
+                    boolean touch = touchedColumn >= 0 && ("true".equals(values[touchedColumn])
+                            || "1".equals(values[touchedColumn]));
+                    long timestamp = Long.parseLong(values[timeColumn]);
+                    int l = Integer.parseInt(values[leftColumn]);
+                    int r = Integer.parseInt(values[rightColumn]);
+                    int c = Integer.parseInt(values[centerColumn]);
+                    if (leftAngleColumn >= 0 && rightAngleColumn >= 0 && rightAngleColumn < values.length
+                            && !values[leftAngleColumn].isEmpty()) {
+                        trace.addWithAngles(timestamp, l, r, c, touch, Integer.parseInt(values[leftAngleColumn]),
+                                Integer.parseInt(values[rightAngleColumn]));
+                    } else {
+                        trace.add(timestamp, l, r, c, touch);
+                    }
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    throw new IOException(file + ":" + lineNumber + ": malformed sample", e);
+                }
+            }
+        }
+        return trace;
+    }
+
+    private static int column(String[] columns, String name) throws IOException {
+        int index = Arrays.asList(columns).indexOf(name);
+        if (index < 0) {
+            throw new IOException("Missing column: " + name);
+        }
+        return index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long time(int index) {
+        return time[index];
+    }
+
+    public int left(int index) {
+        return left[index];
+    }
+
+    public int right(int index) {
+        return right[index];
+    }
+
+    public int center(int index) {
+        return center[index];
+    }
+
+    public boolean touched(int index) {
+        return touched[index];
+    }
+
+    public int leftAngle(int index) {
+        return leftAngle[index];
+    }
+
+    public int rightAngle(int index) {
+        return rightAngle[index];
+    }
+
+    /**
+     * Checks if the trace holds the wheel angles of the samples.
+     *
+     * @return true for flight logs of version 2 and CSV files with angles
+     */
+    public boolean hasAngles() {
+        return hasAngles;
+    }
+
+    /**
+     * Returns the decisions stored in a flight log.
+     *
+     * @return the recorded decisions, or null if the trace has none
+     */
+    public TraceReplay.Decisions getRecorded() {
+        return recorded;
+    }
+}
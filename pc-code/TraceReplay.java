@@ -0,0 +1,465 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The {@code TraceReplay} class feeds a recorded {@link Trace} through the
+ * unchanged {@link LineFollower} on the desktop. Every sample is one control
+ * tick, the replay does not wait for the recorded time. The decisions of every
+ * tick and optionally the motor command stream are recorded, so two replays
+ * or a replay and the decisions stored in a flight log can be compared tick
+ * by tick.
+ *
+ * Usage: {@code java TraceReplay <trace> [--set name=value]...
+ * [--candidate name=value]... [--commands file] [--repeat n]
+ * [--max-diffs n]}. Names are the fields of {@link ControlParameters}.
+ * {@code --set} changes the baseline, {@code --candidate} replays the trace a
+ * second time with additional changes and compares both replays. Without
+ * {@code --candidate} the baseline is compared with the decisions stored in a
+ * flight log. The exit status is 1 if decisions differ.
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public final class TraceReplay {
+    // Motor commands in the command stream
+    public static final int COMMAND_SET_SPEED = 0;
+    public static final int COMMAND_FORWARD = 1;
+    public static final int COMMAND_BACKWARD = 2;
+    public static final int COMMAND_STOP = 3;
+
+    private static final String[] COMMAND_NAMES = { "setSpeed", "forward", "backward", "stop" };
+    private static final String[] MOTOR_NAMES = { "left", "right" };
+
+    // Private constructor to prevent instantiation
+    private TraceReplay() {
+    }
+
+    /**
+     * The decisions of the line follower, one entry per tick.
+     */
+    public static final class Decisions {
+        private int size;
+        private int[] mode;
+        private int[] action;
+        private int[] leftSpeed;
+        private int[] rightSpeed;
+
+        public Decisions(int capacity) {
+            capacity = Math.max(16, capacity);
+            mode = new int[capacity];
+            action = new int[capacity];
+            leftSpeed = new int[capacity];
+            rightSpeed = new int[capacity];
+        }
+
+        /**
+         * Appends the decisions of one tick.
+         *
+         * @param m     the mode of the line follower
+         * @param a     the action of the control status
+         * @param left  the speed of the left wheel
+         * @param right the speed of the right wheel
+         */
+        public void add(int m, int a, int left, int right) {
+            if (size == mode.length) {
+                int capacity = size * 2;
+                mode = Arrays.copyOf(mode, capacity);
+                action = Arrays.copyOf(action, capacity);
+                leftSpeed = Arrays.copyOf(leftSpeed, capacity);
+                rightSpeed = Arrays.copyOf(rightSpeed, capacity);
+            }
+            mode[size] = m;
+            action[size] = a;
+            leftSpeed[size] = left;
+            rightSpeed[size] = right;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int mode(int tick) {
+            return mode[tick];
+        }
+
+        public int leftSpeed(int tick) {
+            return leftSpeed[tick];
+        }
+
+        public int rightSpeed(int tick) {
+            return rightSpeed[tick];
+        }
+
+        /**
+         * Checks if the decisions of a tick are the same in both sequences.
+         *
+         * @param other the other decisions
+         * @param tick  the tick index
+         * @return true if mode, action and wheel speeds are equal
+         */
+        public boolean sameAs(Decisions other, int tick) {
+            return mode[tick] == other.mode[tick] && action[tick] == other.action[tick]
+                    && leftSpeed[tick] == other.leftSpeed[tick] && rightSpeed[tick] == other.rightSpeed[tick];
+        }
+
+        /**
+         * Returns the decisions of a tick as text.
+         *
+         * @param tick the tick index
+         * @return the description
+         */
+        public String describe(int tick) {
+            return LineFollower.modeName(mode[tick]) + "/" + FlightLogDecoder.actionName(action[tick]) + " "
+                    + leftSpeed[tick] + "," + rightSpeed[tick];
+        }
+    }
+
+    /**
+     * The motor commands issued during a replay.
+     */
+    public static final class Commands {
+        private int size;
+        private int[] tick = new int[1024];
+        private byte[] motor = new byte[1024];
+        private byte[] command = new byte[1024];
+        private int[] speed = new int[1024];
+
+        void add(int t, int m, int c, int s) {
+            if (size == tick.length) {
+                int capacity = size * 2;
+                tick = Arrays.copyOf(tick, capacity);
+                motor = Arrays.copyOf(motor, capacity);
+                command = Arrays.copyOf(command, capacity);
+                speed = Arrays.copyOf(speed, capacity);
+            }
+            tick[size] = t;
+            motor[size] = (byte) m;
+            command[size] = (byte) c;
+            speed[size] = s;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Writes the commands as CSV.
+         *
+         * @param trace the replayed trace for the timestamps
+         * @param out   the output
+         */
+        public void writeCsv(Trace trace, PrintWriter out) {
+            out.println("tick,time,motor,command,speed");
+            for (int i = 0; i < size; i++) {
+                out.println(tick[i] + "," + trace.time(tick[i]) + "," + MOTOR_NAMES[motor[i]] + ","
+                        + COMMAND_NAMES[command[i]] + "," + (command[i] == COMMAND_SET_SPEED ? speed[i] : ""));
+            }
+        }
+    }
+
+    /**
+     * Sensor, clock and motor stand-ins that return the samples of the trace.
+     * The motors return the recorded wheel angles. For traces without angles
+     * the motors are ideal and their tacho counts follow the commanded speeds.
+     */
+    private static final class Player implements Clock, BumpSensor, StatusDisplay {
+        private final Trace trace;
+        private final Commands commands;
+        private int index;
+        private int action;
+
+        private final int[] speeds = new int[2];
+        private final int[] directions = new int[2];
+        private final double[] tachoCounts = new double[2];
+
+        final LineSensor left = new LineSensor() {
+            @Override
+            public int getLightValue() {
+                return trace.left(index);
+            }
+        };
+
+        final LineSensor right = new LineSensor() {
+            @Override
+            public int getLightValue() {
+                return trace.right(index);
+            }
+        };
+
+        final LineSensor center = new LineSensor() {
+            @Override
+            public int getLightValue() {
+                return trace.center(index);
+            }
+        };
+
+        Player(Trace trace, Commands commands) {
+            this.trace = trace;
+            this.commands = commands;
+        }
+
+        DriveMotor motor(final int id) {
+            return new DriveMotor() {
+                @Override
+                public void setSpeed(int speed) {
+                    speeds[id] = Math.abs(speed);
+                    command(id, COMMAND_SET_SPEED, speed);
+                }
+
+                @Override
+                public void forward() {
+                    directions[id] = 1;
+                    command(id, COMMAND_FORWARD, 0);
+                }
+
+                @Override
+                public void backward() {
+                    directions[id] = -1;
+                    command(id, COMMAND_BACKWARD, 0);
+                }
+
+                @Override
+                public void stop() {
+                    directions[id] = 0;
+                    command(id, COMMAND_STOP, 0);
+                }
+
+                @Override
+                public int getTachoCount() {
+                    if (trace.hasAngles()) {
+                        // The line follower mounts the motors reversed
+                        return -(id == 0 ? trace.leftAngle(index) : trace.rightAngle(index));
+                    }
+                    return (int) Math.round(tachoCounts[id]);
+                }
+            };
+        }
+
+        /**
+         * Moves to a sample and turns the motors for the time in between.
+         */
+        void seek(int newIndex) {
+            long elapsed = trace.time(newIndex) - trace.time(index);
+            for (int i = 0; i < tachoCounts.length; i++) {
+                tachoCounts[i] += directions[i] * speeds[i] * elapsed / 1000.0;
+            }
+            index = newIndex;
+        }
+
+        private void command(int motor, int command, int speed) {
+            if (commands != null) {
+                commands.add(index, motor, command, speed);
+            }
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return trace.time(index);
+        }
+
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleep(long millis) {
+            // The replay runs as fast as possible
+        }
+
+        @Override
+        public boolean isPressed() {
+            return trace.touched(index);
+        }
+
+        @Override
+        public void publish(ControlStatus status) {
+            action = status.action;
+        }
+    }
+
+    /**
+     * Replays a trace. The replay ends with the trace or when the line follower
+     * finishes.
+     *
+     * @param trace      the trace
+     * @param parameters the parameters of the line follower
+     * @param commands   receives the motor commands, may be null
+     * @return the decisions of every replayed tick
+     */
+    public static Decisions replay(Trace trace, ControlParameters parameters, Commands commands) {
+        Player player = new Player(trace, commands);
+        LineFollower follower = new LineFollower(player.left, player.right, player.center, player.motor(0),
+                player.motor(1), player, player, player, parameters);
+        Drivetrain drivetrain = follower.getDrivetrain();
+
+        Decisions decisions = new Decisions(trace.size());
+        for (int i = 0; i < trace.size() && !follower.isFinished(); i++) {
+            player.seek(i);
+            follower.controlTick();
+            decisions.add(follower.getMode(), player.action, drivetrain.getLeftVelocity(),
+                    drivetrain.getRightVelocity());
+        }
+        return decisions;
+    }
+
+    /**
+     * Compares two decision sequences and prints the ticks that differ.
+     *
+     * @param trace    the replayed trace
+     * @param baseline the first decisions
+     * @param other    the second decisions
+     * @param maxDiffs the maximum number of differences to print
+     * @param out      the output
+     * @return the number of ticks that differ
+     */
+    public static int diff(Trace trace, Decisions baseline, Decisions other, int maxDiffs, PrintWriter out) {
+        int common = Math.min(baseline.size(), other.size());
+        int differences = 0;
+        for (int i = 0; i < common; i++) {
+            if (!baseline.sameAs(other, i)) {
+                if (differences < maxDiffs) {
+                    out.printf("tick %d at %d ms (L %d R %d C %d%s): %s -> %s%n", i, trace.time(i), trace.left(i),
+                            trace.right(i), trace.center(i), trace.touched(i) ? " touched" : "",
+                            baseline.describe(i), other.describe(i));
+                }
+                differences++;
+            }
+        }
+        differences += Math.abs(baseline.size() - other.size());
+        if (baseline.size() != other.size()) {
+            out.printf("Replays end after %d and %d ticks%n", baseline.size(), other.size());
+        }
+        return differences;
+    }
+
+    /**
+     * Sets a public int field of the parameters.
+     *
+     * @param parameters the parameters to change
+     * @param assignment the change as {@code name=value}
+     */
+    static void set(ControlParameters parameters, String assignment) {
+        int separator = assignment.indexOf('=');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Expected name=value: " + assignment);
+        }
+        String name = assignment.substring(0, separator);
+        try {
+            Field field = ControlParameters.class.getField(name);
+            field.setInt(parameters, Integer.parseInt(assignment.substring(separator + 1)));
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Unknown parameter: " + name, e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java TraceReplay <trace> [--set name=value]... [--candidate name=value]..."
+                    + " [--commands file] [--repeat n] [--max-diffs n]");
+            System.exit(2);
+        }
+
+        Trace trace = Trace.read(new File(args[0]));
+        ControlParameters baseline = new ControlParameters();
+        ControlParameters candidate = null;
+        List<String> baselineChanges = new ArrayList<>();
+        List<String> candidateChanges = new ArrayList<>();
+        File commandFile = null;
+        int repeat = 1;
+        int maxDiffs = 20;
+
+        for (int i = 1; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : "";
+            switch (args[i]) {
+                case "--set":
+                    baselineChanges.add(value);
+                    i++;
+                    break;
+                case "--candidate":
+                    candidateChanges.add(value);
+                    i++;
+                    break;
+                case "--commands":
+                    commandFile = new File(value);
+                    i++;
+                    break;
+                case "--repeat":
+                    repeat = Integer.parseInt(value);
+                    i++;
+                    break;
+                case "--max-diffs":
+                    maxDiffs = Integer.parseInt(value);
+                    i++;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        for (String change : baselineChanges) {
+            set(baseline, change);
+        }
+        if (!candidateChanges.isEmpty()) {
+            candidate = new ControlParameters();
+            for (String change : baselineChanges) {
+                set(candidate, change);
+            }
+            for (String change : candidateChanges) {
+                set(candidate, change);
+            }
+        }
+
+        Commands commands = new Commands();
+        Decisions decisions = replay(trace, baseline, commands);
+
+        long samples = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < repeat; i++) {
+            samples += replay(trace, baseline, null).size();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("Replayed %d of %d samples, %d motor commands%n", decisions.size(), trace.size(),
+                commands.size());
+        System.out.printf("Replay speed: %.0f samples/s%n", samples / Math.max(seconds, 1e-9));
+
+        if (commandFile != null) {
+            try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(commandFile)))) {
+                commands.writeCsv(trace, out);
+            }
+        }
+
+        Decisions other = null;
+        String comparison = null;
+        if (candidate != null) {
+            other = replay(trace, candidate, null);
+            comparison = "baseline -> candidate";
+        } else if (trace.getRecorded() != null) {
+            // Compare what the robot did with what the current code does
+            other = decisions;
+            decisions = trace.getRecorded();
+            comparison = "recording -> replay";
+        }
+
+        if (other != null) {
+            PrintWriter out = new PrintWriter(System.out);
+            out.println("Decision changes (" + comparison + "):");
+            int differences = diff(trace, decisions, other, maxDiffs, out);
+            out.println(differences + " of " + Math.max(decisions.size(), other.size()) + " ticks differ");
+            out.flush();
+            if (differences > 0) {
+                System.exit(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,364 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The {@code Tuner} class searches the parameters of the line follower on the
+ * simulated track instead of on the floor. It runs the unchanged control
+ * logic for every combination of a grid of parameter values, on a number of
+ * noise seeds, and ranks the combinations by a score in milliseconds per lap:
+ *
+ * <pre>
+ * score = mean lap time + loss penalty * line losses per lap + off-line time per lap
+ * </pre>
+ *
+ * A combination that completes no lap counts twice the run duration as its
+ * lap time. The runs are independent, so they are spread over all cores
+ * with a fork/join pool: the grid is split in halves until a task evaluates a
+ * single combination.
+ *
+ * Usage: {@code java Tuner [--steering bang-bang|pid] [--seconds N]
+ * [--seeds n] [--noise sigma] [--threads n] [--top n] [--loss-penalty ms]
+ * [--set name=value]... [--vary name=v1,v2,...]...}. Names are the fields of
+ * {@link ControlParameters}. Without {@code --vary} the tuner sweeps the
+ * knobs of the selected steering.
+ *
+ * @author leonweimann
+ * @version 1.0
+ */
+public final class Tuner {
+    private static final int DEFAULT_SECONDS = 60;
+    private static final int DEFAULT_SEEDS = 2;
+    private static final int DEFAULT_TOP = 10;
+    private static final int DEFAULT_LOSS_PENALTY = 100;
+
+    // Default grids of the bang-bang steering
+    private static final String[] BANG_BANG_GRID = {
+            "executionFrequency=5,10,20,50",
+            "defaultSpeed=150,200,300",
+            "blackThreshold=30,32,34",
+            "fluctuationBuffer=3,5,8",
+            "maxDifference=10,15,20",
+            "rotationSpeed=100,150,200" };
+
+    // Default grids of the PID steering
+    private static final String[] PID_GRID = {
+            "executionFrequency=20,50",
+            "pidSpeed=300,400,600,900",
+            "pidKp=250,350,500",
+            "pidKd=300,600,900" };
+
+    // Private constructor to prevent instantiation
+    private Tuner() {
+    }
+
+    /**
+     * A grid of parameter values. Combination {@code i} takes the values of
+     * the digits of {@code i} in the mixed radix of the value counts.
+     */
+    public static final class Grid {
+        private final List<String> names = new ArrayList<>();
+        private final List<int[]> values = new ArrayList<>();
+
+        /**
+         * Adds a parameter to the grid.
+         *
+         * @param variation the name and the values, like
+         *                  {@code defaultSpeed=150,200,300}
+         */
+        public void add(String variation) {
+            int separator = variation.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected name=v1,v2,...: " + variation);
+            }
+            String[] parts = variation.substring(separator + 1).split(",");
+            int[] parsed = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                parsed[i] = Integer.parseInt(parts[i].trim());
+            }
+            names.add(variation.substring(0, separator));
+            values.add(parsed);
+        }
+
+        /**
+         * Returns the number of combinations.
+         *
+         * @return the product of the value counts
+         */
+        public int size() {
+            int size = 1;
+            for (int[] parameterValues : values) {
+                size *= parameterValues.length;
+            }
+            return size;
+        }
+
+        /**
+         * Sets the values of a combination.
+         *
+         * @param parameters  the parameters to change
+         * @param combination the index of the combination
+         */
+        public void apply(ControlParameters parameters, int combination) {
+            for (int i = 0; i < names.size(); i++) {
+                int[] parameterValues = values.get(i);
+                TraceReplay.set(parameters, names.get(i) + "=" + parameterValues[combination % parameterValues.length]);
+                combination /= parameterValues.length;
+            }
+        }
+
+        /**
+         * Describes the values of a combination.
+         *
+         * @param combination the index of the combination
+         * @return the assignments separated by spaces
+         */
+        public String describe(int combination) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < names.size(); i++) {
+                int[] parameterValues = values.get(i);
+                if (i > 0) {
+                    builder.append(' ');
+                }
+                builder.append(names.get(i)).append('=').append(parameterValues[combination % parameterValues.length]);
+                combination /= parameterValues.length;
+            }
+            return builder.toString();
+        }
+
+        /**
+         * Describes the values of a combination as Java assignments to a
+         * {@code parameters} variable, ready to paste into {@code Main}.
+         *
+         * @param combination the index of the combination
+         * @return one assignment per line
+         */
+        public String toJava(int combination) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < names.size(); i++) {
+                int[] parameterValues = values.get(i);
+                builder.append("parameters.").append(names.get(i)).append(" = ")
+                        .append(parameterValues[combination % parameterValues.length]).append(";\n");
+                combination /= parameterValues.length;
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * The averaged figures of a combination over all seeds.
+     */
+    public static final class Result {
+        public double score;
+        public double lapTime;
+        public double laps;
+        public double losses;
+        public double recoveryTime;
+    }
+
+    /**
+     * Evaluates a range of combinations, split in halves down to single
+     * combinations.
+     */
+    private static final class Sweep extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Settings settings;
+        private final Result[] results;
+        private final int from;
+        private final int to;
+
+        Sweep(Settings settings, Result[] results, int from, int to) {
+            this.settings = settings;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                results[from] = evaluate(settings, from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Sweep(settings, results, from, middle), new Sweep(settings, results, middle, to));
+        }
+    }
+
+    /**
+     * The settings of a sweep, shared read-only by all tasks.
+     */
+    public static final class Settings {
+        public SimTrack track;
+        public String steering = "bang-bang";
+        public final List<String> assignments = new ArrayList<>();
+        public final Grid grid = new Grid();
+        public long duration = DEFAULT_SECONDS * 1000L;
+        public int seeds = DEFAULT_SEEDS;
+        public double noise = new SimConfig().noise;
+        public int lossPenalty = DEFAULT_LOSS_PENALTY;
+
+        /**
+         * Creates the parameters of a combination.
+         *
+         * @param combination the index of the combination
+         * @return the parameters
+         */
+        public ControlParameters parameters(int combination) {
+            ControlParameters parameters = "pid".equals(steering)
+                    ? ControlParameters.pid(new ControlParameters().pidSpeed)
+                    : new ControlParameters();
+            for (String assignment : assignments) {
+                TraceReplay.set(parameters, assignment);
+            }
+            grid.apply(parameters, combination);
+            return parameters;
+        }
+    }
+
+    /**
+     * Runs one combination on every seed and averages its figures.
+     *
+     * @param settings    the settings of the sweep
+     * @param combination the index of the combination
+     * @return the averaged figures
+     */
+    public static Result evaluate(Settings settings, int combination) {
+        Result result = new Result();
+        for (int seed = 1; seed <= settings.seeds; seed++) {
+            SimConfig config = new SimConfig();
+            config.seed = seed;
+            config.noise = settings.noise;
+            SimMetrics metrics = Simulator.run(settings.track, config, settings.parameters(combination),
+                    settings.duration, null);
+
+            int laps = metrics.getLapTimes().size();
+            double lapTime = laps > 0 ? metrics.getMeanLapTime() : 2 * settings.duration;
+            result.score += lapTime
+                    + (settings.lossPenalty * metrics.getExcursions() + metrics.getOffLineTime()) / Math.max(1, laps);
+            result.lapTime += lapTime;
+            result.laps += laps;
+            result.losses += metrics.getExcursions();
+            result.recoveryTime += Math.max(0, metrics.getMeanReacquisitionTime());
+        }
+        result.score /= settings.seeds;
+        result.lapTime /= settings.seeds;
+        result.laps /= settings.seeds;
+        result.losses /= settings.seeds;
+        result.recoveryTime /= settings.seeds;
+        return result;
+    }
+
+    /**
+     * Evaluates every combination of the grid in parallel.
+     *
+     * @param settings the settings of the sweep
+     * @param threads  the number of worker threads
+     * @return the figures of every combination, indexed like the grid
+     */
+    public static Result[] sweep(Settings settings, int threads) {
+        Result[] results = new Result[settings.grid.size()];
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new Sweep(settings, results, 0, results.length));
+        } finally {
+            pool.shutdown();
+        }
+        return results;
+    }
+
+    public static void main(String[] args) {
+        Settings settings = new Settings();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int top = DEFAULT_TOP;
+        boolean varied = false;
+
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : "";
+            switch (args[i]) {
+                case "--steering":
+                    settings.steering = value;
+                    i++;
+                    break;
+                case "--seconds":
+                    settings.duration = Long.parseLong(value) * 1000;
+                    i++;
+                    break;
+                case "--seeds":
+                    settings.seeds = Integer.parseInt(value);
+                    i++;
+                    break;
+                case "--noise":
+                    settings.noise = Double.parseDouble(value);
+                    i++;
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    i++;
+                    break;
+                case "--top":
+                    top = Integer.parseInt(value);
+                    i++;
+                    break;
+                case "--loss-penalty":
+                    settings.lossPenalty = Integer.parseInt(value);
+                    i++;
+                    break;
+                case "--set":
+                    settings.assignments.add(value);
+                    i++;
+                    break;
+                case "--vary":
+                    settings.grid.add(value);
+                    varied = true;
+                    i++;
+                    break;
+                default:
+                    System.err.println("Usage: java Tuner [--steering bang-bang|pid] [--seconds N] [--seeds n]"
+                            + " [--noise sigma] [--threads n] [--top n] [--loss-penalty ms]"
+                            + " [--set name=value]... [--vary name=v1,v2,...]...");
+                    System.exit(2);
+            }
+        }
+        if (!varied) {
+            for (String variation : "pid".equals(settings.steering) ? PID_GRID : BANG_BANG_GRID) {
+                settings.grid.add(variation);
+            }
+        }
+        settings.track = SimTrack.oval(1000, 300, 20);
+
+        int size = settings.grid.size();
+        System.out.printf("Evaluating %d combinations on %d seeds with %d threads%n", size, settings.seeds,
+                threads);
+        long start = System.nanoTime();
+        Result[] results = sweep(settings, threads);
+        long wall = (System.nanoTime() - start) / 1000000;
+
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        final Result[] ranked = results;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(ranked[a].score, ranked[b].score);
+            }
+        });
+
+        System.out.printf("%9s %8s %6s %7s %9s  %s%n", "score", "lap ms", "laps", "losses", "recovery", "parameters");
+        for (int i = 0; i < Math.min(top, size); i++) {
+            Result result = results[order[i]];
+            System.out.printf("%9.0f %8.0f %6.1f %7.1f %7.0f ms  %s%n", result.score, result.lapTime, result.laps,
+                    result.losses, result.recoveryTime, settings.grid.describe(order[i]));
+        }
+        System.out.printf("Wall time: %d ms for %d simulated runs%n", wall, (long) size * settings.seeds);
+        System.out.println();
+        System.out.println("Best configuration:");
+        System.out.print(settings.grid.toJava(order[0]));
+    }
+}